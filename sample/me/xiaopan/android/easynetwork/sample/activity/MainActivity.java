@@ -18,6 +18,8 @@ package me.xiaopan.android.easynetwork.sample.activity;
 import me.xiaopan.android.easynetwork.R;
 import me.xiaopan.android.easynetwork.sample.adapter.ActivityAdapter;
 import me.xiaopan.android.easynetwork.sample.beans.ActivityItem;
+import me.xiaopan.android.easynetwork.sample.check.CacheAllocationActivity;
+import me.xiaopan.android.easynetwork.sample.check.CoalescingCheckActivity;
 import android.app.ListActivity;
 import android.os.Bundle;
 
@@ -33,6 +35,8 @@ public class MainActivity extends ListActivity {
 			, new ActivityItem(getString(R.string.activityTitle_string), StringActivity.class)
 			, new ActivityItem(getString(R.string.activityTitle_json), JsonActivity.class)
 			, new ActivityItem(getString(R.string.activityTitle_requestObject), RequestObjectActivity.class)
+			, new ActivityItem(getString(R.string.activityTitle_coalescingCheck), CoalescingCheckActivity.class)
+			, new ActivityItem(getString(R.string.activityTitle_cacheAllocation), CacheAllocationActivity.class)
 		));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.sample.check;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import me.xiaopan.android.easynetwork.http.ByteBufferEntity;
+import me.xiaopan.android.easynetwork.http.HttpUtils;
+
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+
+import android.os.Debug;
+
+/**
+ * 自检：读取一次磁盘缓存命中的响应体平均要分配多少内存
+ * <br>分别对比原来的InputStreamEntity + BufferedHttpEntity + EntityUtils和现在的ByteBufferEntity + HttpUtils，响应体为2M
+ */
+public class CacheAllocationActivity extends CheckActivity {
+	private static final int BODY_LENGTH = 2 * 1024 * 1024;	//响应体长度
+	private static final int WARM_UP_HITS = 2;	//预热次数，不计入结果
+	private static final int HITS = 10;	//统计的命中次数
+	private static final String CHARSET = "UTF-8";
+
+	@Override
+	protected String runCheck() throws Exception {
+		File file = File.createTempFile("allocation", ".cache", getCacheDir());
+		try{
+			byte[] body = new byte[BODY_LENGTH];
+			Arrays.fill(body, (byte) 'a');
+			FileOutputStream fileOutputStream = new FileOutputStream(file);
+			try{
+				fileOutputStream.write(body);
+			}finally{
+				fileOutputStream.close();
+			}
+			body = null;
+
+			StringBuilder report = new StringBuilder();
+			report.append("响应体：").append(BODY_LENGTH / 1024).append("KB，统计").append(HITS).append("次命中的平均值\n\n");
+			Debug.startAllocCounting();
+			try{
+				append(report, "byte[]，原来", measure(file, false, false));
+				append(report, "byte[]，现在", measure(file, true, false));
+				append(report, "String，原来", measure(file, false, true));
+				append(report, "String，现在", measure(file, true, true));
+			}finally{
+				Debug.stopAllocCounting();
+			}
+			return report.toString();
+		}finally{
+			file.delete();
+		}
+	}
+
+	/**
+	 * 统计读取一次缓存文件平均分配的内存
+	 * @param file 缓存文件
+	 * @param byteBuffer true：ByteBufferEntity + HttpUtils；false：InputStreamEntity + BufferedHttpEntity + EntityUtils
+	 * @param string 是否读取成字符串
+	 * @return [平均分配的字节数, 平均分配的对象数]
+	 */
+	private long[] measure(File file, boolean byteBuffer, boolean string) throws IOException {
+		for(int w = 0; w < WARM_UP_HITS; w++){
+			hit(file, byteBuffer, string);
+		}
+		long size = 0;
+		long count = 0;
+		for(int w = 0; w < HITS; w++){
+			Debug.resetThreadAllocSize();
+			Debug.resetThreadAllocCount();
+			hit(file, byteBuffer, string);
+			size += Debug.getThreadAllocSize();
+			count += Debug.getThreadAllocCount();
+		}
+		return new long[]{size / HITS, count / HITS};
+	}
+
+	/**
+	 * 模拟一次磁盘缓存命中，打开缓存文件并按照处理器的方式读取响应体
+	 */
+	private Object hit(File file, boolean byteBuffer, boolean string) throws IOException {
+		FileInputStream fileInputStream = new FileInputStream(file);
+		try{
+			if(byteBuffer){
+				ByteBufferEntity entity = ByteBufferEntity.map(fileInputStream, 0, file.length(), null);
+				return string ? HttpUtils.toString(entity, CHARSET) : HttpUtils.toByteArray(entity);
+			}else{
+				InputStreamEntity entity = new InputStreamEntity(new BufferedInputStream(fileInputStream), file.length());
+				return string ? EntityUtils.toString(new BufferedHttpEntity(entity), CHARSET) : EntityUtils.toByteArray(new BufferedHttpEntity(entity));
+			}
+		}finally{
+			fileInputStream.close();
+		}
+	}
+
+	private void append(StringBuilder report, String title, long[] result) {
+		report.append(title).append("：");
+		if(result[0] > 0){
+			report.append(result[0] / 1024).append("KB");
+			if(result[1] > 0){
+				report.append("，").append(result[1]).append("个对象");
+			}
+		}else{
+			report.append("当前虚拟机不支持统计");
+		}
+		report.append('\n');
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.sample.check;
+
+import me.xiaopan.android.easynetwork.R;
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * 自检，在后台线程中执行runCheck()并显示结果
+ */
+public abstract class CheckActivity extends Activity {
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_text);
+		findViewById(R.id.loading).setVisibility(View.VISIBLE);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				String result;
+				try{
+					result = runCheck();
+				}catch(Throwable throwable){
+					throwable.printStackTrace();
+					result = "自检出错：" + throwable;
+				}
+				final String finalResult = result;
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						((TextView) findViewById(R.id.text1)).setText(finalResult);
+						findViewById(R.id.loading).setVisibility(View.GONE);
+					}
+				});
+			}
+		}).start();
+	}
+
+	/**
+	 * 执行自检，在后台线程中执行
+	 * @return 自检结果
+	 */
+	protected abstract String runCheck() throws Exception;
+}
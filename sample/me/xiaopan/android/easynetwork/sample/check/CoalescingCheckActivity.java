@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.sample.check;
+
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import me.xiaopan.android.easynetwork.http.Configuration;
+import me.xiaopan.android.easynetwork.http.EasyHttpClient;
+import me.xiaopan.android.easynetwork.http.RequestHandle;
+import me.xiaopan.android.easynetwork.http.StringHttpResponseHandler;
+import me.xiaopan.android.easynetwork.sample.util.LocalHttpServer;
+
+/**
+ * 自检：合并请求的领头者取消之后，还在等待的跟随者依然要收到真正的响应或者异常
+ * <br>分别检查正常响应、响应体不完整以及服务器没有响应三种情况，领头者自己不应该收到任何回调
+ */
+public class CoalescingCheckActivity extends CheckActivity {
+	private static final long RESPONSE_DELAY = 500;	//服务器的响应延迟，保证跟随者能合并到领头者上
+
+	@Override
+	protected String runCheck() throws Exception {
+		LocalHttpServer server = new LocalHttpServer(new LocalHttpServer.Responder() {
+			@Override
+			public void respond(String path, OutputStream outputStream) throws Exception {
+				Thread.sleep(RESPONSE_DELAY);
+				if(path.startsWith("/ok")){
+					LocalHttpServer.writeResponse(outputStream, "ok".getBytes("UTF-8"), 2);
+				}else if(path.startsWith("/truncated")){
+					LocalHttpServer.writeResponse(outputStream, "partial".getBytes("UTF-8"), 100);
+				}
+				// 其它路径什么都不写，客户端会收到NoHttpResponseException
+			}
+		});
+		Configuration configuration = EasyHttpClient.getInstance().getConfiguration();
+		int maxRetries = configuration.getMaxRetries();
+		boolean requestCoalescing = configuration.isRequestCoalescing();
+		configuration.setMaxRetries(0);
+		configuration.setRequestCoalescing(true);
+		StringBuilder report = new StringBuilder();
+		try{
+			long time = System.currentTimeMillis();
+			Callback warmUpCallback = new Callback();
+			EasyHttpClient.getInstance().get(this, server.getUrl("/ok?warm=" + time), warmUpCallback);
+			warmUpCallback.latch.await(30, TimeUnit.SECONDS);
+			check(report, "正常响应", server.getUrl("/ok?t=" + time), "成功：ok");
+			check(report, "响应体不完整", server.getUrl("/truncated?t=" + time), "失败：org.apache.http.ConnectionClosedException");
+			check(report, "服务器没有响应", server.getUrl("/drop?t=" + time), "失败：org.apache.http.NoHttpResponseException");
+		}finally{
+			configuration.setMaxRetries(maxRetries);
+			configuration.setRequestCoalescing(requestCoalescing);
+			server.close();
+		}
+		return report.toString();
+	}
+
+	/**
+	 * 发出领头者和跟随者，取消领头者，检查跟随者收到的结果
+	 * @param report 报告
+	 * @param title 情况说明
+	 * @param url 请求地址
+	 * @param expected 跟随者应当收到的结果的前缀
+	 */
+	private void check(StringBuilder report, String title, String url, String expected) throws InterruptedException {
+		Callback leaderCallback = new Callback();
+		Callback followerCallback = new Callback();
+		RequestHandle leaderHandle = EasyHttpClient.getInstance().get(this, url, leaderCallback);
+		Thread.sleep(RESPONSE_DELAY / 5);
+		EasyHttpClient.getInstance().get(this, url, followerCallback);
+		Thread.sleep(RESPONSE_DELAY / 10);
+		leaderHandle.cancel(true);
+
+		boolean finished = followerCallback.latch.await(30, TimeUnit.SECONDS);
+		Thread.sleep(RESPONSE_DELAY);
+		boolean passed = finished && followerCallback.result.startsWith(expected) && leaderCallback.result == null;
+		report.append(title).append("：").append(passed ? "通过" : "不通过").append('\n');
+		report.append("    跟随者：").append(finished ? followerCallback.result : "超时").append('\n');
+		report.append("    领头者：").append(leaderCallback.result != null ? leaderCallback.result : "没有回调").append("\n\n");
+	}
+
+	private static class Callback extends StringHttpResponseHandler {
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile String result;
+
+		@Override
+		public void onStart() {
+		}
+
+		@Override
+		public void onSuccess(String responseContent, boolean isCache, boolean isRefreshCacheAndCallback) {
+			result = "成功：" + responseContent;
+			latch.countDown();
+		}
+
+		@Override
+		public void onFailure(Throwable throwable) {
+			result = "失败：" + throwable;
+			latch.countDown();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.sample.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 本地Http服务器，只用于自检，每个连接只处理一个请求，由Responder决定如何响应
+ */
+public class LocalHttpServer {
+	private final ServerSocket serverSocket;
+	private final Responder responder;
+
+	public LocalHttpServer(Responder responder) throws IOException {
+		this.responder = responder;
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(!serverSocket.isClosed()){
+					try{
+						final Socket socket = serverSocket.accept();
+						new Thread(new Runnable() {
+							@Override
+							public void run() {
+								handle(socket);
+							}
+						}).start();
+					}catch(IOException exception){
+						return;
+					}
+				}
+			}
+		}, "LocalHttpServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 获取请求地址
+	 * @param path 路径，以/开头
+	 * @return 请求地址
+	 */
+	public String getUrl(String path){
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+	}
+
+	/**
+	 * 关闭服务器
+	 */
+	public void close(){
+		try{
+			serverSocket.close();
+		}catch(IOException exception){
+			exception.printStackTrace();
+		}
+	}
+
+	private void handle(Socket socket){
+		try{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			String requestLine = reader.readLine();
+			String line;
+			while((line = reader.readLine()) != null && line.length() > 0){
+				// 请求头用不到，跳过
+			}
+			if(requestLine != null){
+				responder.respond(requestLine.split(" ")[1], socket.getOutputStream());
+			}
+		}catch(Exception exception){
+			exception.printStackTrace();
+		}finally{
+			try{
+				socket.close();
+			}catch(IOException exception){
+				exception.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * 写出响应，写完之后连接会被关闭
+	 * @param outputStream 输出流
+	 * @param body 响应体
+	 * @param contentLength 声明的响应体长度，大于body的长度的话客户端读取时会失败
+	 */
+	public static void writeResponse(OutputStream outputStream, byte[] body, int contentLength) throws IOException {
+		String head = "HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=UTF-8\r\nContent-Length: " + contentLength + "\r\nCache-Control: max-age=3600\r\nConnection: close\r\n\r\n";
+		outputStream.write(head.getBytes("UTF-8"));
+		outputStream.write(body);
+		outputStream.flush();
+	}
+
+	/**
+	 * 响应者
+	 */
+	public interface Responder {
+		/**
+		 * 响应请求，什么都不写的话客户端会收到NoHttpResponseException
+		 * @param path 请求路径，包括参数
+		 * @param outputStream 输出流
+		 */
+		void respond(String path, OutputStream outputStream) throws Exception;
+	}
+}
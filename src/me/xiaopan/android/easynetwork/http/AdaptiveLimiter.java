@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 自适应并发限制，按主机根据观察到的往返时间（从发出请求到收到响应头）以及错误自动调整同时执行的最大请求数，使用AIMD（加性增、乘性减）算法：
+ * <br>每个主机记录最近一段时间内最短的往返时间作为基准，请求成功并且往返时间没有超过基准的若干倍时，如果并发已经用到限制的一半以上就慢慢调大（每个请求加1/限制，相当于每一轮加1）；
+ * 发生了超时、连接失败等错误，服务器返回了429、5xx，或者往返时间超过了基准的若干倍（说明已经开始排队）时按比例调小，每一轮最多调小一次
+ * <br>这样在很快的Wi-Fi下限制会逐渐增大，在拥塞的2G网络下会迅速减小，避免请求在网络中排队导致全部超时
+ * <br>值得注意的是你必须通过其Builder来创建AdaptiveLimiter，并且限制再大也不会超过请求调度器的线程数量
+ */
+public class AdaptiveLimiter {
+    private static final int MAX_HOSTS = 256;   //最多记录的主机数，超出时丢弃最久没有请求的
+    private static final int RTT_WINDOW_SAMPLES = 50;   //每收集这么多个样本换一次基准往返时间的窗口，让基准可以随网络变化而变大
+
+    private int initialLimit = 4;   //初始限制
+    private int minLimit = 1;   //最小限制
+    private int maxLimit = 10;  //最大限制
+    private float rttTolerance = 2.0f;  //往返时间超过基准的多少倍视为拥塞
+    private float backoffRatio = 0.8f;  //拥塞时限制乘以的比例
+    private final Map<String, HostLimit> hostLimits = new LinkedHashMap<String, HostLimit>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HostLimit> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    private AdaptiveLimiter(){}
+
+    /**
+     * 获取指定主机当前的限制
+     * @param host 主机名
+     * @return 当前的限制，没有请求过的主机返回初始限制
+     */
+    public synchronized int getLimit(String host) {
+        HostLimit hostLimit = hostLimits.get(host);
+        return hostLimit != null ? (int) hostLimit.limit : initialLimit;
+    }
+
+    /**
+     * 获取所有主机当前的限制
+     * @return 主机名和限制
+     */
+    public synchronized Map<String, Integer> getLimits() {
+        Map<String, Integer> limits = new HashMap<String, Integer>(hostLimits.size());
+        for(Map.Entry<String, HostLimit> entry : hostLimits.entrySet()){
+            limits.put(entry.getKey(), (int) entry.getValue().limit);
+        }
+        return limits;
+    }
+
+    /**
+     * 获取指定主机的基准往返时间
+     * @param host 主机名
+     * @return 基准往返时间，单位毫秒，-1：还没有成功的请求
+     */
+    public synchronized long getBaselineRtt(String host) {
+        HostLimit hostLimit = hostLimits.get(host);
+        return hostLimit != null ? hostLimit.getBaselineRtt() : -1;
+    }
+
+    /**
+     * 重置所有主机的限制
+     */
+    public synchronized void reset() {
+        hostLimits.clear();
+    }
+
+    /**
+     * 记录一个请求的结果并调整限制
+     * @param host 主机名
+     * @param rtt 往返时间，单位毫秒
+     * @param dropped 是否发生了错误或者服务器表示已经过载
+     * @param inflight 发出请求时该主机正在执行的请求数
+     * @return 限制是否变大了，变大了的话需要唤醒暂存的请求
+     */
+    synchronized boolean onSample(String host, long rtt, boolean dropped, int inflight) {
+        HostLimit hostLimit = hostLimits.get(host);
+        if(hostLimit == null){
+            hostLimit = new HostLimit(initialLimit);
+            hostLimits.put(host, hostLimit);
+        }
+        long now = System.currentTimeMillis();
+        int oldLimit = (int) hostLimit.limit;
+        long baselineRtt = hostLimit.getBaselineRtt();
+        if(!dropped){
+            hostLimit.addRtt(rtt);
+        }
+
+        if(dropped || (baselineRtt > 0 && rtt > baselineRtt * rttTolerance)){
+            /* 在上次调小之前发出的请求反映的是调小之前的情况，不再重复调小 */
+            if(now - rtt >= hostLimit.lastDecreaseTime){
+                hostLimit.limit = Math.max(minLimit, hostLimit.limit * backoffRatio);
+                hostLimit.lastDecreaseTime = now;
+            }
+        }else if(inflight * 2 >= hostLimit.limit){
+            /* 并发没有用到限制的一半说明限制不是瓶颈，不需要调大 */
+            hostLimit.limit = Math.min(maxLimit, hostLimit.limit + 1 / hostLimit.limit);
+        }
+        return (int) hostLimit.limit > oldLimit;
+    }
+
+    /**
+     * 获取最小限制
+     * @return 最小限制
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * 获取最大限制
+     * @return 最大限制
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * 单个主机的限制
+     */
+    private static class HostLimit {
+        private double limit;   //当前的限制，取整后使用
+        private long lastDecreaseTime;  //上次调小的时间
+        private long previousMinRtt = -1;   //上一个窗口内最短的往返时间
+        private long currentMinRtt = -1;    //当前窗口内最短的往返时间
+        private int currentSamples; //当前窗口内的样本数
+
+        private HostLimit(int initialLimit) {
+            this.limit = initialLimit;
+        }
+
+        private void addRtt(long rtt) {
+            if(currentMinRtt < 0 || rtt < currentMinRtt){
+                currentMinRtt = rtt;
+            }
+            if(++currentSamples >= RTT_WINDOW_SAMPLES){
+                previousMinRtt = currentMinRtt;
+                currentMinRtt = -1;
+                currentSamples = 0;
+            }
+        }
+
+        /**
+         * 基准往返时间取最近两个窗口内最短的，至少1毫秒
+         */
+        private long getBaselineRtt() {
+            long baselineRtt = previousMinRtt;
+            if(currentMinRtt >= 0 && (baselineRtt < 0 || currentMinRtt < baselineRtt)){
+                baselineRtt = currentMinRtt;
+            }
+            return baselineRtt >= 0 ? Math.max(1, baselineRtt) : -1;
+        }
+    }
+
+    public static class Builder{
+        private AdaptiveLimiter adaptiveLimiter;
+
+        public Builder() {
+            adaptiveLimiter = new AdaptiveLimiter();
+        }
+
+        /**
+         * 设置初始限制，默认4
+         * @param initialLimit 初始限制
+         */
+        public Builder setInitialLimit(int initialLimit) {
+            if(initialLimit <= 0){
+                throw new IllegalArgumentException("initialLimit 必须大于0");
+            }
+            adaptiveLimiter.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * 设置限制的范围，默认1到10
+         * @param minLimit 最小限制
+         * @param maxLimit 最大限制
+         */
+        public Builder setLimitRange(int minLimit, int maxLimit) {
+            if(minLimit <= 0 || maxLimit < minLimit){
+                throw new IllegalArgumentException("minLimit 必须大于0并且不能大于maxLimit");
+            }
+            adaptiveLimiter.minLimit = minLimit;
+            adaptiveLimiter.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * 设置往返时间超过基准的多少倍视为拥塞，默认2
+         * @param rttTolerance 倍数，必须大于1
+         */
+        public Builder setRttTolerance(float rttTolerance) {
+            if(rttTolerance <= 1){
+                throw new IllegalArgumentException("rttTolerance 必须大于1");
+            }
+            adaptiveLimiter.rttTolerance = rttTolerance;
+            return this;
+        }
+
+        /**
+         * 设置拥塞时限制乘以的比例，默认0.8
+         * @param backoffRatio 比例，0到1之间
+         */
+        public Builder setBackoffRatio(float backoffRatio) {
+            if(backoffRatio <= 0 || backoffRatio >= 1){
+                throw new IllegalArgumentException("backoffRatio 必须在0到1之间");
+            }
+            adaptiveLimiter.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * 创建
+         * @return
+         */
+        public AdaptiveLimiter create(){
+            adaptiveLimiter.initialLimit = Math.max(adaptiveLimiter.minLimit, Math.min(adaptiveLimiter.maxLimit, adaptiveLimiter.initialLimit));
+            return adaptiveLimiter;
+        }
+    }
+}
@@ -18,15 +18,13 @@ package me.xiaopan.android.easynetwork.http;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.entity.BufferedHttpEntity;
-import org.apache.http.util.EntityUtils;
 
 import android.os.Handler;
 
 /**
  * 默认的二进制Http响应处理器
  */
-public abstract class BinaryHttpResponseHandler extends HttpResponseHandler {
+public abstract class BinaryHttpResponseHandler extends HttpResponseHandler implements SharedResponseParser {
 
 	@Override
 	public void start(final Handler handler) {
@@ -40,16 +38,20 @@ public abstract class BinaryHttpResponseHandler extends HttpResponseHandler {
 
 	@Override
 	public void handleResponse(final Handler handler, final HttpResponse httpResponse, final boolean isCache, final boolean isRefreshCacheAndCallback) throws Throwable {
+		deliverResponse(handler, parseResponse(httpResponse), isCache, isRefreshCacheAndCallback);
+	}
+
+	@Override
+	public Object getParseKey() {
+		return getClass();
+	}
+
+	@Override
+	public Object parseResponse(final HttpResponse httpResponse) throws Throwable {
 		if(httpResponse.getStatusLine().getStatusCode() > 100 && httpResponse.getStatusLine().getStatusCode() < 300 ){
 			HttpEntity httpEntity = httpResponse.getEntity();
             if(httpEntity != null){
-                final byte[] data = EntityUtils.toByteArray(new BufferedHttpEntity(httpEntity));
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        onSuccess(data, isCache, isRefreshCacheAndCallback);
-                    }
-                });
+                return HttpUtils.toByteArray(httpEntity);
             }else{
                 throw new Exception("没有响应体");
             }
@@ -58,6 +60,16 @@ public abstract class BinaryHttpResponseHandler extends HttpResponseHandler {
         }
 	}
 
+	@Override
+	public void deliverResponse(final Handler handler, final Object responseObject, final boolean isCache, final boolean isRefreshCacheAndCallback) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                onSuccess((byte[]) responseObject, isCache, isRefreshCacheAndCallback);
+            }
+        });
+	}
+
 	@Override
 	public void exception(final Handler handler, final Throwable e) {
         handler.post(new Runnable() {
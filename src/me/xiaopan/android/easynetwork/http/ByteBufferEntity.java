@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.apache.http.Header;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * 直接包装ByteBuffer的响应实体，缓存的响应体通过它交给处理器，不用再复制一遍
+ * <br>磁盘缓存使用内存映射的文件，内存缓存直接包装缓存的字节数组，处理器可以通过{@link HttpUtils#toByteArray(org.apache.http.HttpEntity)}和{@link HttpUtils#toString(org.apache.http.HttpEntity, String)}一次性读取
+ */
+public class ByteBufferEntity extends AbstractHttpEntity {
+    private final ByteBuffer buffer;    //只读的响应体，position到limit之间的就是内容
+
+    /**
+     * 创建一个ByteBuffer响应实体
+     * @param buffer 响应体，会复制一个只读的视图，不会复制内容
+     * @param contentType 响应体类型
+     */
+    public ByteBufferEntity(ByteBuffer buffer, Header contentType) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        setContentType(contentType);
+    }
+
+    /**
+     * 将文件的一部分映射到内存，映射完成后文件就可以关闭了
+     * @param fileInputStream 文件输入流
+     * @param offset 开始位置
+     * @param length 长度
+     * @param contentType 响应体类型
+     * @return ByteBuffer响应实体
+     * @throws IOException 映射失败
+     */
+    public static ByteBufferEntity map(FileInputStream fileInputStream, long offset, long length, Header contentType) throws IOException {
+        return new ByteBufferEntity(fileInputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length), contentType);
+    }
+
+    /**
+     * 获取响应体的只读视图，多次调用互不影响
+     * @return 响应体的只读视图
+     */
+    public ByteBuffer getByteBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * 复制到一个大小刚好的字节数组中，只有这一次复制
+     * @return 响应体
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 直接从ByteBuffer解码成字符串，不需要中间的字节数组
+     * @param charset 编码
+     * @return 响应体字符串
+     */
+    public String toString(String charset) {
+        return Charset.forName(charset).decode(buffer.duplicate()).toString();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if(outputStream == null){
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        if(buffer.hasArray()){
+            outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }else{
+            ByteBuffer source = buffer.duplicate();
+            byte[] bytes = new byte[Math.min(8 * 1024, source.remaining())];
+            while(source.hasRemaining()){
+                int length = Math.min(bytes.length, source.remaining());
+                source.get(bytes, 0, length);
+                outputStream.write(bytes, 0, length);
+            }
+        }
+        outputStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public void consumeContent() {
+    }
+
+    /**
+     * 从ByteBuffer中读取数据的输入流
+     */
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if(!buffer.hasRemaining()){
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import me.xiaopan.android.easynetwork.http.enums.CacheCompression;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+/**
+ * 磁盘缓存条目，一个条目只对应一个文件，文件格式如下：
+ * <br>固定头（24字节）：魔数(int) + 版本(short) + 标记(short) + 响应时间(long) + 状态码(int) + 元数据长度(int)
+ * <br>元数据：状态描述 + 缓存KEY + 响应头数量(int) + 每个响应头的名字和值，字符串都以长度(int)加UTF-8字节的方式保存
+ * <br>响应体：元数据之后一直到文件末尾都是响应体，标记中记录了响应体是否经过压缩以及压缩方式
+ * <br>读取时只需打开一次文件顺序读取即可，响应体的位置也可以直接从固定头中算出来
+ */
+class CacheEntry {
+    static final int MAGIC = 0x45484331;    //"EHC1"
+    static final short VERSION = 1;
+    static final int FIXED_HEADER_LENGTH = 24;
+    static final short FLAG_GZIP = 0x1;    //响应体经过gzip压缩
+    static final short FLAG_DEFLATE = 0x2; //响应体经过deflate压缩
+    private static final short FLAG_COMPRESSION_MASK = FLAG_GZIP | FLAG_DEFLATE;
+    static final int MAX_META_LENGTH = 1024 * 1024;    //元数据的最大长度，超过的话就认为文件已经损坏，防止按照错误的长度分配内存
+    private static final String CHARSET = "UTF-8";
+
+    private final String key;   //缓存KEY，读取时可以用来校验
+    private final int statusCode;   //状态码
+    private final String reasonPhrase;  //状态描述
+    private final Header[] headers; //响应头
+    private final long responseTime;    //响应时间
+    private final short flags;  //标记，目前只用来记录压缩方式
+    private long bodyOffset;    //响应体在文件中的位置
+
+    CacheEntry(String key, int statusCode, String reasonPhrase, Header[] headers, long responseTime) {
+        this(key, statusCode, reasonPhrase, headers, responseTime, (short) 0);
+    }
+
+    private CacheEntry(String key, int statusCode, String reasonPhrase, Header[] headers, long responseTime, short flags) {
+        this.key = key != null ? key : "";
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase != null ? reasonPhrase : "";
+        this.headers = headers != null ? headers : new Header[0];
+        this.responseTime = responseTime;
+        this.flags = flags;
+    }
+
+    /**
+     * 复制一个使用指定压缩方式的缓存条目
+     * @param compression 压缩方式
+     * @return 新的缓存条目
+     */
+    CacheEntry withCompression(CacheCompression compression) {
+        short compressionFlag = compression == CacheCompression.GZIP ? FLAG_GZIP : (compression == CacheCompression.DEFLATE ? FLAG_DEFLATE : 0);
+        return new CacheEntry(key, statusCode, reasonPhrase, headers, responseTime, (short) ((flags & ~FLAG_COMPRESSION_MASK) | compressionFlag));
+    }
+
+    /**
+     * 写出固定头和元数据，之后紧接着写响应体即可
+     * @param outputStream 输出流
+     * @return 写出的字节数，也就是响应体在文件中的位置
+     * @throws IOException
+     */
+    long writeTo(OutputStream outputStream) throws IOException {
+        ByteArrayOutputStream metaBytes = new ByteArrayOutputStream(512);
+        DataOutputStream metaOutput = new DataOutputStream(metaBytes);
+        writeString(metaOutput, reasonPhrase);
+        writeString(metaOutput, key);
+        metaOutput.writeInt(headers.length);
+        for(Header header : headers){
+            writeString(metaOutput, header.getName());
+            writeString(metaOutput, header.getValue());
+        }
+        metaOutput.flush();
+        if(metaBytes.size() > MAX_META_LENGTH){
+            throw new IOException("元数据太长：" + metaBytes.size());
+        }
+
+        DataOutputStream dataOutput = new DataOutputStream(outputStream);
+        dataOutput.writeInt(MAGIC);
+        dataOutput.writeShort(VERSION);
+        dataOutput.writeShort(flags);
+        dataOutput.writeLong(responseTime);
+        dataOutput.writeInt(statusCode);
+        dataOutput.writeInt(metaBytes.size());
+        metaBytes.writeTo(dataOutput);
+        dataOutput.flush();
+        bodyOffset = FIXED_HEADER_LENGTH + metaBytes.size();
+        return bodyOffset;
+    }
+
+    /**
+     * 从输入流中读取固定头和元数据，读取完成后输入流正好位于响应体的开头
+     * @param inputStream 输入流
+     * @return 缓存条目
+     * @throws IOException 文件格式不正确或者版本不支持
+     */
+    static CacheEntry readFrom(InputStream inputStream) throws IOException {
+        DataInputStream dataInput = new DataInputStream(inputStream);
+        if(dataInput.readInt() != MAGIC){
+            throw new IOException("不是缓存文件");
+        }
+        short version = dataInput.readShort();
+        if(version != VERSION){
+            throw new IOException("不支持的缓存文件版本：" + version);
+        }
+        short flags = dataInput.readShort();
+        if((flags & FLAG_COMPRESSION_MASK) == FLAG_COMPRESSION_MASK){
+            throw new IOException("不支持的压缩方式：" + flags);
+        }
+        long responseTime = dataInput.readLong();
+        int statusCode = dataInput.readInt();
+        int metaLength = dataInput.readInt();
+        if(metaLength < 0 || metaLength > MAX_META_LENGTH){
+            throw new IOException("元数据长度异常：" + metaLength);
+        }
+
+        /* 先把元数据整个读出来，里面的每个长度都不能超出剩下的元数据，读完之后输入流正好位于响应体的开头 */
+        byte[] metaBytes = new byte[metaLength];
+        try{
+            dataInput.readFully(metaBytes);
+        }catch(EOFException exception){
+            throw new IOException("缓存文件不完整");
+        }
+        DataInputStream metaInput = new DataInputStream(new ByteArrayInputStream(metaBytes));
+        try{
+            String reasonPhrase = readString(metaInput);
+            String key = readString(metaInput);
+            int headerCount = metaInput.readInt();
+            if(headerCount < 0 || headerCount > metaInput.available() / 8){
+                throw new IOException("响应头数量异常：" + headerCount);
+            }
+            Header[] headers = new Header[headerCount];
+            for(int w = 0; w < headerCount; w++){
+                String headerName = readString(metaInput);
+                if(headerName == null){
+                    throw new IOException("响应头名称为空");
+                }
+                headers[w] = new BasicHeader(headerName, readString(metaInput));
+            }
+
+            CacheEntry cacheEntry = new CacheEntry(key, statusCode, reasonPhrase, headers, responseTime, flags);
+            cacheEntry.bodyOffset = FIXED_HEADER_LENGTH + metaLength;
+            return cacheEntry;
+        }catch(EOFException exception){
+            throw new IOException("元数据不完整");
+        }
+    }
+
+    private static void writeString(DataOutputStream dataOutput, String string) throws IOException {
+        if(string == null){
+            dataOutput.writeInt(-1);
+        }else{
+            byte[] bytes = string.getBytes(CHARSET);
+            dataOutput.writeInt(bytes.length);
+            dataOutput.write(bytes);
+        }
+    }
+
+    /**
+     * 从元数据中读取一个字符串，长度超出剩下的元数据的话就说明文件已经损坏
+     */
+    private static String readString(DataInputStream metaInput) throws IOException {
+        int length = metaInput.readInt();
+        if(length < 0){
+            return null;
+        }
+        if(length > metaInput.available()){
+            throw new IOException("字符串长度异常：" + length);
+        }
+        byte[] bytes = new byte[length];
+        metaInput.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * 转换成HttpResponse，不包括响应体
+     * @return HttpResponse
+     */
+    HttpResponse toHttpResponse() {
+        HttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), statusCode, reasonPhrase));
+        httpResponse.setHeaders(headers);
+        return httpResponse;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    Header[] getHeaders() {
+        return headers;
+    }
+
+    long getResponseTime() {
+        return responseTime;
+    }
+
+    long getBodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * 获取响应体的压缩方式
+     * @return 压缩方式
+     */
+    CacheCompression getCompression() {
+        switch(flags & FLAG_COMPRESSION_MASK){
+            case FLAG_GZIP : return CacheCompression.GZIP;
+            case FLAG_DEFLATE : return CacheCompression.DEFLATE;
+            default : return CacheCompression.NONE;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 缓存KEY策略，决定哪些请求共用同一个缓存
+ * <br>返回的是完整的缓存KEY，它会被保存在缓存文件中用来校验，缓存文件名则是它的哈希值，所以KEY的长度不受文件名的限制
+ * <br>可以通过ResponseCache.Builder.setCacheKeyStrategy()为某一类请求单独设置，也可以通过Configuration.setCacheKeyStrategy()修改默认的策略
+ */
+public interface CacheKeyStrategy {
+    /**
+     * 生成缓存KEY
+     * @param request 请求
+     * @return 缓存KEY，相同KEY的请求共用同一个缓存
+     */
+    public String getCacheKey(HttpUriRequest request);
+}
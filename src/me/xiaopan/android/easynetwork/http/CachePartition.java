@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import me.xiaopan.android.easynetwork.http.enums.EvictionPolicy;
+
+/**
+ * 缓存分区，ResponseCache.cacheDirectory指定的名字就是分区名
+ * <br>每个分区都是一个独立的磁盘缓存，有自己的大小限制、淘汰策略以及统计，互不影响，比如体积大的列表数据不会把体积小但是很重要的配置数据挤出去
+ */
+public class CachePartition {
+    private final String name;  //分区名
+    private final long maxSize; //最大字节数
+    private final int maxEntries;   //最大条目数
+    private final EvictionPolicy evictionPolicy;    //淘汰策略
+
+    /**
+     * 创建一个缓存分区
+     * @param name 分区名，只能包含字母、数字、下划线、中划线以及点
+     * @param maxSize 最大字节数
+     * @param maxEntries 最大条目数
+     * @param evictionPolicy 淘汰策略，为null时使用LRU
+     */
+    public CachePartition(String name, long maxSize, int maxEntries, EvictionPolicy evictionPolicy) {
+        if(!isValidName(name)){
+            throw new IllegalArgumentException("分区名不合法：" + name);
+        }
+        if(maxSize <= 0){
+            throw new IllegalArgumentException("maxSize 必须大于0");
+        }
+        if(maxEntries <= 0){
+            throw new IllegalArgumentException("maxEntries 必须大于0");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+        this.evictionPolicy = evictionPolicy != null ? evictionPolicy : EvictionPolicy.LRU;
+    }
+
+    /**
+     * 判断分区名是否合法，分区名会作为目录名使用，所以只能包含字母、数字、下划线、中划线以及点，并且不能是“.”或“..”
+     * @param name 分区名
+     * @return 是否合法
+     */
+    static boolean isValidName(String name) {
+        if(!GeneralUtils.isNotEmpty(name) || ".".equals(name) || "..".equals(name)){
+            return false;
+        }
+        for(int w = 0; w < name.length(); w++){
+            char c = name.charAt(w);
+            if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-' || c == '.')){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取分区名
+     * @return 分区名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取最大字节数
+     * @return 最大字节数
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 获取最大条目数
+     * @return 最大条目数
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * 获取淘汰策略
+     * @return 淘汰策略
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+}
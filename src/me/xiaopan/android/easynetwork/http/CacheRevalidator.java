@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 后台刷新缓存的登记处，保证同一个缓存KEY同一时间只有一个后台刷新
+ * <br>刷新进行中再次请求同一个KEY的会作为跟随者登记在这里，刷新结束后由执行刷新的请求把结果分发给它们
+ */
+class CacheRevalidator {
+    private final Map<String, List<HttpRequestRunnable>> revalidations = new HashMap<String, List<HttpRequestRunnable>>();
+
+    /**
+     * 登记一次后台刷新
+     * @param key 缓存KEY
+     * @param runnable 请求
+     * @return true：此KEY已经在刷新了，请求已作为跟随者登记，不需要再刷新；false：请求需要自己执行刷新，结束后必须调用{@link #finish(String)}
+     */
+    synchronized boolean join(String key, HttpRequestRunnable runnable) {
+        List<HttpRequestRunnable> followers = revalidations.get(key);
+        if(followers != null){
+            followers.add(runnable);
+            return true;
+        }else{
+            revalidations.put(key, new ArrayList<HttpRequestRunnable>(0));
+            return false;
+        }
+    }
+
+    /**
+     * 结束后台刷新
+     * @param key 缓存KEY
+     * @return 刷新期间登记的跟随者
+     */
+    synchronized List<HttpRequestRunnable> finish(String key) {
+        List<HttpRequestRunnable> followers = revalidations.remove(key);
+        return followers != null ? followers : new ArrayList<HttpRequestRunnable>(0);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.File;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.os.StatFs;
+import android.util.Log;
+
+/**
+ * 磁盘缓存清理器，定期在低优先级的后台线程中清理所有已经打开的磁盘缓存
+ * <br>过期的缓存只有再次请求同一个地址的时候才会被删除，只请求过一次的地址就会一直留着，所以需要定期清理：每轮先删除目录中不在索引里的孤立文件，然后分批检查索引，删除已经到了可删除时间的以及缓存文件已经丢失的条目
+ * <br>每批只检查少量条目，批与批之间会暂停一会儿，有前台请求的时候会先等待它们结束，不会和前台请求抢占磁盘
+ * <br>另外存储空间不足的时候每轮还会把缓存缩小到原来的一半
+ */
+class CacheSweeper implements Runnable {
+    private static final int BATCH_SIZE = 32;   //每批检查的条目数
+    private static final long BATCH_INTERVAL = 200; //批与批之间暂停的时间，单位毫秒
+    private static final long MAX_FOREGROUND_WAIT = 30 * 1000;  //每批最多为前台请求等待的时间，单位毫秒
+    private static final long MAX_INITIAL_DELAY = 60 * 1000;    //第一轮清理最多延迟的时间，单位毫秒，避开应用启动时的高峰
+
+    private final Configuration configuration;
+    private ScheduledThreadPoolExecutor executor;
+
+    CacheSweeper(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * 开始定期清理，已经开始了的话什么都不做
+     * @param interval 清理间隔，单位毫秒，小于等于0时不清理
+     */
+    synchronized void start(long interval) {
+        if(executor != null || interval <= 0){
+            return;
+        }
+        executor = new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory("EasyNetwork-sweeper"));
+        executor.scheduleWithFixedDelay(this, Math.min(interval, MAX_INITIAL_DELAY), interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定期清理，正在进行的清理会被中断
+     */
+    synchronized void stop() {
+        if(executor != null){
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 是否已经开始定期清理
+     * @return
+     */
+    synchronized boolean isStarted() {
+        return executor != null;
+    }
+
+    @Override
+    public void run() {
+        for(DiskCache diskCache : configuration.getOpenedDiskCaches()){
+            try{
+                sweep(diskCache);
+            }catch(InterruptedException exception){
+                Thread.currentThread().interrupt();
+                return;
+            }catch(RuntimeException exception){
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 清理一个磁盘缓存
+     * @param diskCache 磁盘缓存
+     * @throws InterruptedException 清理器已经停止
+     */
+    private void sweep(DiskCache diskCache) throws InterruptedException {
+        trimIfLowStorage(diskCache);
+
+        int oldSweepCount = diskCache.getSweepCount();
+        diskCache.beginSweep();
+        boolean hasMore = true;
+        while(hasMore){
+            configuration.getForegroundRequestTracker().awaitIdle(MAX_FOREGROUND_WAIT);
+            hasMore = diskCache.sweep(System.currentTimeMillis(), BATCH_SIZE);
+            if(hasMore){
+                Thread.sleep(BATCH_INTERVAL);
+            }
+        }
+
+        if(configuration.isDebugMode()){
+            Log.d(configuration.getLogTag(), "清理磁盘缓存 " + diskCache.getDirectory().getPath() + " 完成，删除了" + (diskCache.getSweepCount() - oldSweepCount) + "个过期的缓存");
+        }
+    }
+
+    /**
+     * 存储空间不足的时候将磁盘缓存缩小到原来的一半
+     * @param diskCache 磁盘缓存
+     */
+    private void trimIfLowStorage(DiskCache diskCache) {
+        long lowStorageThreshold = configuration.getLowStorageThreshold();
+        if(lowStorageThreshold <= 0){
+            return;
+        }
+        long availableBytes = getAvailableBytes(diskCache.getDirectory());
+        if(availableBytes >= 0 && availableBytes < lowStorageThreshold){
+            long oldSize = diskCache.size();
+            diskCache.trimToSize(oldSize / 2);
+            if(configuration.isDebugMode()){
+                Log.w(configuration.getLogTag(), "存储空间不足（剩余" + availableBytes + "字节），磁盘缓存 " + diskCache.getDirectory().getPath() + " 从" + oldSize + "字节缩小到" + diskCache.size() + "字节");
+            }
+        }
+    }
+
+    /**
+     * 获取目录所在存储的可用字节数
+     * @param directory 目录
+     * @return 可用字节数，-1：获取失败
+     */
+    static long getAvailableBytes(File directory) {
+        try{
+            StatFs statFs = new StatFs(directory.getPath());
+            return (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
+        }catch(IllegalArgumentException exception){
+            exception.printStackTrace();
+            return -1;
+        }
+    }
+}
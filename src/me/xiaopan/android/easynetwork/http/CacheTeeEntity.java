@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * 边读边缓存的响应实体，处理器从网络读取响应体的同时写入缓存文件，不用等到下载完成并写完文件才开始解析
+ * <br>只有响应体被完整读取之后才会提交缓存，读取出错或者没有读完就关闭的话缓存会被放弃；写缓存出错只会放弃缓存，不影响处理器继续读取
+ */
+class CacheTeeEntity extends HttpEntityWrapper {
+    private final DiskCache.Editor editor;  //缓存编辑器
+    private final Listener listener;    //监听器
+    private OutputStream cacheOutputStream; //缓存输出流，为null时说明已经不再写缓存了
+    private ByteArrayOutputStream memoryBuffer;    //同时留在内存中的响应体，为null时说明超出了内存缓存的限制
+    private final int memoryLimit;  //内存中最多保留的字节数
+    private TeeInputStream teeInputStream;
+    private boolean done;   //是否已经提交或者放弃
+
+    /**
+     * 创建一个边读边缓存的响应实体
+     * @param wrapped 网络响应实体
+     * @param editor 缓存编辑器
+     * @param cacheOutputStream 缓存输出流，已经写好了状态码以及响应头
+     * @param memoryLimit 内存中最多保留的字节数，小于0时不保留
+     * @param listener 监听器
+     */
+    CacheTeeEntity(HttpEntity wrapped, DiskCache.Editor editor, OutputStream cacheOutputStream, int memoryLimit, Listener listener) {
+        super(wrapped);
+        this.editor = editor;
+        this.cacheOutputStream = cacheOutputStream;
+        this.memoryLimit = memoryLimit;
+        this.listener = listener;
+        if(memoryLimit >= 0 && wrapped.getContentLength() <= memoryLimit){
+            memoryBuffer = new ByteArrayOutputStream(wrapped.getContentLength() > 0 ? (int) wrapped.getContentLength() : 1024);
+        }
+    }
+
+    @Override
+    public synchronized InputStream getContent() throws IOException {
+        if(teeInputStream == null){
+            teeInputStream = new TeeInputStream(wrappedEntity.getContent());
+        }
+        return teeInputStream;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !done;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        InputStream inputStream = getContent();
+        try{
+            byte[] buffer = new byte[8 * 1024];
+            int length;
+            while((length = inputStream.read(buffer)) != -1){
+                outputStream.write(buffer, 0, length);
+            }
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void consumeContent() throws IOException {
+        finish();
+    }
+
+    /**
+     * 处理器处理完之后调用，如果响应体还没有读完就继续读完并提交缓存，这样即使处理器只读了一部分（或者根本不需要回调处理器）缓存也是完整的
+     * @throws IOException 读取网络响应体失败
+     */
+    synchronized void finish() throws IOException {
+        if(done){
+            return;
+        }
+        InputStream inputStream = getContent();
+        try{
+            byte[] buffer = new byte[8 * 1024];
+            while(inputStream.read(buffer) != -1){}
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 放弃缓存，读取出错或者处理器出错时调用
+     */
+    synchronized void abort() {
+        if(done){
+            return;
+        }
+        done = true;
+        closeCacheOutputStream();
+        editor.abort();
+        memoryBuffer = null;
+        listener.onAbort();
+    }
+
+    /**
+     * 写缓存出错，放弃缓存但是处理器可以继续读取
+     */
+    private void abortCache(IOException exception) {
+        exception.printStackTrace();
+        abort();
+    }
+
+    /**
+     * 响应体已经读完，提交缓存
+     */
+    private synchronized void commit() {
+        if(done){
+            return;
+        }
+        try{
+            cacheOutputStream.flush();
+            cacheOutputStream.close();
+            cacheOutputStream = null;
+            editor.commit();
+        }catch(IOException exception){
+            abortCache(exception);
+            return;
+        }
+        done = true;
+        listener.onCommit(memoryBuffer != null ? memoryBuffer.toByteArray() : null);
+        memoryBuffer = null;
+    }
+
+    private void closeCacheOutputStream() {
+        if(cacheOutputStream != null){
+            try{
+                cacheOutputStream.close();
+            }catch(IOException exception){
+                exception.printStackTrace();
+            }
+            cacheOutputStream = null;
+        }
+    }
+
+    private synchronized void write(byte[] buffer, int offset, int length) {
+        if(done){
+            return;
+        }
+        try{
+            cacheOutputStream.write(buffer, offset, length);
+        }catch(IOException exception){
+            abortCache(exception);
+            return;
+        }
+        if(memoryBuffer != null){
+            if(memoryBuffer.size() + length <= memoryLimit){
+                memoryBuffer.write(buffer, offset, length);
+            }else{
+                memoryBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * 边读边写缓存的输入流
+     */
+    private class TeeInputStream extends InputStream {
+        private final InputStream inputStream;
+        private boolean eof;
+
+        private TeeInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            int length = read(bytes, 0, 1);
+            return length == -1 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int readLength;
+            try{
+                readLength = inputStream.read(buffer, offset, length);
+            }catch(IOException exception){
+                abort();
+                throw exception;
+            }
+            if(readLength == -1){
+                eof = true;
+                commit();
+            }else if(readLength > 0){
+                write(buffer, offset, readLength);
+            }
+            return readLength;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return inputStream.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!eof){
+                abort();
+            }
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 缓存监听器
+     */
+    interface Listener {
+        /**
+         * 缓存已提交
+         * @param body 响应体，只有没有超出内存限制的时候才有，否则为null
+         */
+        void onCommit(byte[] body);
+
+        /**
+         * 缓存已放弃
+         */
+        void onAbort();
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.xiaopan.android.easynetwork.http.enums.CircuitState;
+
+/**
+ * 熔断器，按主机统计最近一段时间内的失败率以及慢请求比例，超过阈值就打开，打开期间发往该主机的请求不访问网络直接以CircuitBreakerOpenException失败，
+ * 不用再等连接超时和重试，也就不会堆积线程和消耗电量；打开一段时间之后进入半开状态，只放行少量试探请求，都成功的话关闭，有一个失败或者太慢的话重新打开
+ * <br>服务器返回5xx或者发生异常都视为失败，取消的请求不计入统计
+ * <br>值得注意的是你必须通过其Builder来创建CircuitBreaker
+ */
+public class CircuitBreaker {
+    private static final int MAX_HOSTS = 256;   //最多统计的主机数，超出时丢弃最久没有请求的
+    private static final int BUCKET_COUNT = 10; //统计窗口分成多少段
+
+    private long window = 30 * 1000;    //统计窗口，单位毫秒
+    private int minimumRequests = 10;   //统计窗口内至少有这么多请求才会判断是否打开
+    private int failureRateThreshold = 50;  //失败率阈值，百分比
+    private long slowRequestDuration = 5 * 1000;    //超过这么久才收到响应的请求视为慢请求，单位毫秒
+    private int slowRequestRateThreshold = 80;  //慢请求比例阈值，百分比
+    private long openDuration = 15 * 1000;  //打开状态持续的时间，单位毫秒
+    private int halfOpenRequests = 3;   //半开状态下放行的试探请求数
+    private final Map<String, Circuit> circuits = new LinkedHashMap<String, Circuit>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Circuit> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    private CircuitBreaker(){}
+
+    /**
+     * 申请访问指定的主机
+     * @param host 主机名
+     * @return 许可的版本号，请求结束后需要传给record()或者release()
+     * @throws CircuitBreakerOpenException 熔断器是打开的，或者半开状态下试探请求已满
+     */
+    synchronized int acquire(String host) throws CircuitBreakerOpenException {
+        Circuit circuit = getCircuit(host);
+        long now = System.currentTimeMillis();
+        if(circuit.state == CircuitState.OPEN){
+            if(now < circuit.openedAt + openDuration){
+                throw new CircuitBreakerOpenException(host, CircuitState.OPEN, circuit.openedAt + openDuration);
+            }
+            circuit.transitionTo(CircuitState.HALF_OPEN, now);
+        }
+        if(circuit.state == CircuitState.HALF_OPEN){
+            if(circuit.halfOpenPermits >= halfOpenRequests){
+                throw new CircuitBreakerOpenException(host, CircuitState.HALF_OPEN, -1);
+            }
+            circuit.halfOpenPermits++;
+        }
+        return circuit.generation;
+    }
+
+    /**
+     * 记录请求结果
+     * @param host 主机名
+     * @param generation acquire()返回的版本号，熔断器的状态已经变了的话忽略本次结果
+     * @param failure 是否失败
+     * @param duration 从发出请求到收到响应（或者失败）的时间，单位毫秒
+     */
+    synchronized void record(String host, int generation, boolean failure, long duration) {
+        Circuit circuit = circuits.get(host);
+        if(circuit == null || circuit.generation != generation){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean slow = duration >= slowRequestDuration;
+        if(circuit.state == CircuitState.HALF_OPEN){
+            if(failure || slow){
+                circuit.transitionTo(CircuitState.OPEN, now);
+            }else if(++circuit.halfOpenSuccesses >= halfOpenRequests){
+                circuit.transitionTo(CircuitState.CLOSED, now);
+            }
+        }else if(circuit.state == CircuitState.CLOSED){
+            int bucket = circuit.getBucket(now, window / BUCKET_COUNT);
+            circuit.requestCounts[bucket]++;
+            if(failure){
+                circuit.failureCounts[bucket]++;
+            }
+            if(slow){
+                circuit.slowCounts[bucket]++;
+            }
+
+            int[] counts = circuit.sum(now, window);
+            if(counts[0] >= minimumRequests && (counts[1] * 100 >= failureRateThreshold * counts[0] || counts[2] * 100 >= slowRequestRateThreshold * counts[0])){
+                circuit.transitionTo(CircuitState.OPEN, now);
+            }
+        }
+    }
+
+    /**
+     * 请求被取消了，不计入统计，归还半开状态下的试探名额
+     * @param host 主机名
+     * @param generation acquire()返回的版本号
+     */
+    synchronized void release(String host, int generation) {
+        Circuit circuit = circuits.get(host);
+        if(circuit != null && circuit.generation == generation && circuit.state == CircuitState.HALF_OPEN && circuit.halfOpenPermits > 0){
+            circuit.halfOpenPermits--;
+        }
+    }
+
+    private Circuit getCircuit(String host) {
+        Circuit circuit = circuits.get(host);
+        if(circuit == null){
+            circuit = new Circuit();
+            circuits.put(host, circuit);
+        }
+        return circuit;
+    }
+
+    /**
+     * 获取指定主机的熔断器状态，打开状态到期了的话返回HALF_OPEN
+     * @param host 主机名
+     * @return 状态，没有请求过的主机返回CLOSED
+     */
+    public synchronized CircuitState getState(String host) {
+        Circuit circuit = circuits.get(host);
+        if(circuit == null){
+            return CircuitState.CLOSED;
+        }
+        if(circuit.state == CircuitState.OPEN && System.currentTimeMillis() >= circuit.openedAt + openDuration){
+            return CircuitState.HALF_OPEN;
+        }
+        return circuit.state;
+    }
+
+    /**
+     * 获取指定主机的统计信息
+     * @param host 主机名
+     * @return 统计信息，没有请求过的主机返回null
+     */
+    public synchronized Metrics getMetrics(String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit != null ? new Metrics(host, getState(host), circuit, circuit.sum(System.currentTimeMillis(), window), openDuration) : null;
+    }
+
+    /**
+     * 获取所有主机的统计信息
+     * @return 统计信息列表，按最近请求的时间排序，最久没有请求的在前面
+     */
+    public synchronized List<Metrics> getAllMetrics() {
+        long now = System.currentTimeMillis();
+        List<Metrics> metricsList = new ArrayList<Metrics>(circuits.size());
+        for(Map.Entry<String, Circuit> entry : circuits.entrySet()){
+            metricsList.add(new Metrics(entry.getKey(), getStateWithoutAccess(entry.getValue(), now), entry.getValue(), entry.getValue().sum(now, window), openDuration));
+        }
+        return metricsList;
+    }
+
+    private CircuitState getStateWithoutAccess(Circuit circuit, long now) {
+        return circuit.state == CircuitState.OPEN && now >= circuit.openedAt + openDuration ? CircuitState.HALF_OPEN : circuit.state;
+    }
+
+    /**
+     * 重置指定主机的熔断器，恢复为关闭状态并清空统计
+     * @param host 主机名
+     */
+    public synchronized void reset(String host) {
+        circuits.remove(host);
+    }
+
+    /**
+     * 重置所有主机的熔断器
+     */
+    public synchronized void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * 获取统计窗口
+     * @return 统计窗口，单位毫秒
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * 获取打开状态持续的时间
+     * @return 持续时间，单位毫秒
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * 单个主机的熔断器
+     */
+    private static class Circuit {
+        private CircuitState state = CircuitState.CLOSED;
+        private int generation; //版本号，每次改变状态都会加1，旧状态下发出的请求的结果会被忽略
+        private long openedAt;  //打开的时间
+        private int openCount;  //打开过的次数
+        private int halfOpenPermits;    //半开状态下已经放行的试探请求数
+        private int halfOpenSuccesses;  //半开状态下成功的试探请求数
+        private final long[] bucketTimes = new long[BUCKET_COUNT];  //每一段的开始时间
+        private final int[] requestCounts = new int[BUCKET_COUNT];  //每一段内的请求数
+        private final int[] failureCounts = new int[BUCKET_COUNT];  //每一段内的失败数
+        private final int[] slowCounts = new int[BUCKET_COUNT]; //每一段内的慢请求数
+
+        private void transitionTo(CircuitState newState, long now) {
+            state = newState;
+            generation++;
+            halfOpenPermits = 0;
+            halfOpenSuccesses = 0;
+            if(newState == CircuitState.OPEN){
+                openedAt = now;
+                openCount++;
+            }
+            for(int w = 0; w < BUCKET_COUNT; w++){
+                bucketTimes[w] = 0;
+                requestCounts[w] = 0;
+                failureCounts[w] = 0;
+                slowCounts[w] = 0;
+            }
+        }
+
+        /**
+         * 获取当前时间所在的段，过期的段会先清零
+         */
+        private int getBucket(long now, long bucketDuration) {
+            bucketDuration = Math.max(1, bucketDuration);
+            long bucketTime = now - now % bucketDuration;
+            int bucket = (int) ((now / bucketDuration) % BUCKET_COUNT);
+            if(bucketTimes[bucket] != bucketTime){
+                bucketTimes[bucket] = bucketTime;
+                requestCounts[bucket] = 0;
+                failureCounts[bucket] = 0;
+                slowCounts[bucket] = 0;
+            }
+            return bucket;
+        }
+
+        /**
+         * 统计窗口内的请求数、失败数以及慢请求数
+         */
+        private int[] sum(long now, long window) {
+            int[] counts = new int[3];
+            for(int w = 0; w < BUCKET_COUNT; w++){
+                if(now - bucketTimes[w] < window){
+                    counts[0] += requestCounts[w];
+                    counts[1] += failureCounts[w];
+                    counts[2] += slowCounts[w];
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * 单个主机的统计信息，是获取时的快照
+     */
+    public static class Metrics {
+        private final String host;
+        private final CircuitState state;
+        private final int requestCount;
+        private final int failureCount;
+        private final int slowRequestCount;
+        private final int openCount;
+        private final long openedAt;
+        private final long retryAt;
+
+        private Metrics(String host, CircuitState state, Circuit circuit, int[] counts, long openDuration) {
+            this.host = host;
+            this.state = state;
+            this.requestCount = counts[0];
+            this.failureCount = counts[1];
+            this.slowRequestCount = counts[2];
+            this.openCount = circuit.openCount;
+            this.openedAt = circuit.openCount > 0 ? circuit.openedAt : -1;
+            this.retryAt = state == CircuitState.OPEN ? circuit.openedAt + openDuration : -1;
+        }
+
+        /**
+         * 获取主机名
+         * @return 主机名
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * 获取熔断器的状态
+         * @return 状态
+         */
+        public CircuitState getState() {
+            return state;
+        }
+
+        /**
+         * 获取统计窗口内的请求数，只有关闭状态下才会统计
+         * @return 请求数
+         */
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        /**
+         * 获取统计窗口内的失败数
+         * @return 失败数
+         */
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        /**
+         * 获取统计窗口内的慢请求数
+         * @return 慢请求数
+         */
+        public int getSlowRequestCount() {
+            return slowRequestCount;
+        }
+
+        /**
+         * 获取统计窗口内的失败率
+         * @return 失败率，百分比，没有请求的话返回0
+         */
+        public int getFailureRate() {
+            return requestCount > 0 ? failureCount * 100 / requestCount : 0;
+        }
+
+        /**
+         * 获取统计窗口内的慢请求比例
+         * @return 慢请求比例，百分比，没有请求的话返回0
+         */
+        public int getSlowRequestRate() {
+            return requestCount > 0 ? slowRequestCount * 100 / requestCount : 0;
+        }
+
+        /**
+         * 获取打开过的次数
+         * @return 打开过的次数
+         */
+        public int getOpenCount() {
+            return openCount;
+        }
+
+        /**
+         * 获取最近一次打开的时间
+         * @return 打开的时间，-1：从来没有打开过
+         */
+        public long getOpenedAt() {
+            return openedAt;
+        }
+
+        /**
+         * 获取进入半开状态的时间
+         * @return 进入半开状态的时间，-1：不是打开状态
+         */
+        public long getRetryAt() {
+            return retryAt;
+        }
+
+        @Override
+        public String toString() {
+            return host + " " + state + " 请求数：" + requestCount + "，失败率：" + getFailureRate() + "%，慢请求比例：" + getSlowRequestRate() + "%，打开过" + openCount + "次";
+        }
+    }
+
+    public static class Builder{
+        private CircuitBreaker circuitBreaker;
+
+        public Builder() {
+            circuitBreaker = new CircuitBreaker();
+        }
+
+        /**
+         * 设置统计窗口，只统计最近这段时间内的请求，默认30秒
+         * @param window 统计窗口，单位毫秒
+         */
+        public Builder setWindow(long window) {
+            if(window < BUCKET_COUNT){
+                throw new IllegalArgumentException("window 不能小于" + BUCKET_COUNT);
+            }
+            circuitBreaker.window = window;
+            return this;
+        }
+
+        /**
+         * 设置最少请求数，统计窗口内至少有这么多请求才会判断是否打开，避免请求很少时一两次失败就打开，默认10
+         * @param minimumRequests 最少请求数
+         */
+        public Builder setMinimumRequests(int minimumRequests) {
+            if(minimumRequests <= 0){
+                throw new IllegalArgumentException("minimumRequests 必须大于0");
+            }
+            circuitBreaker.minimumRequests = minimumRequests;
+            return this;
+        }
+
+        /**
+         * 设置失败率阈值，统计窗口内的失败率达到此值就打开，默认50
+         * @param failureRateThreshold 失败率阈值，百分比，1到100之间
+         */
+        public Builder setFailureRateThreshold(int failureRateThreshold) {
+            if(failureRateThreshold <= 0 || failureRateThreshold > 100){
+                throw new IllegalArgumentException("failureRateThreshold 必须在1到100之间");
+            }
+            circuitBreaker.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * 设置慢请求的判断标准，超过这么久才收到响应（或者失败）的请求视为慢请求，默认5秒
+         * @param slowRequestDuration 时间，单位毫秒
+         */
+        public Builder setSlowRequestDuration(long slowRequestDuration) {
+            if(slowRequestDuration <= 0){
+                throw new IllegalArgumentException("slowRequestDuration 必须大于0");
+            }
+            circuitBreaker.slowRequestDuration = slowRequestDuration;
+            return this;
+        }
+
+        /**
+         * 设置慢请求比例阈值，统计窗口内的慢请求比例达到此值就打开，默认80
+         * @param slowRequestRateThreshold 慢请求比例阈值，百分比，1到100之间
+         */
+        public Builder setSlowRequestRateThreshold(int slowRequestRateThreshold) {
+            if(slowRequestRateThreshold <= 0 || slowRequestRateThreshold > 100){
+                throw new IllegalArgumentException("slowRequestRateThreshold 必须在1到100之间");
+            }
+            circuitBreaker.slowRequestRateThreshold = slowRequestRateThreshold;
+            return this;
+        }
+
+        /**
+         * 设置打开状态持续的时间，之后进入半开状态放行试探请求，默认15秒
+         * @param openDuration 持续时间，单位毫秒
+         */
+        public Builder setOpenDuration(long openDuration) {
+            if(openDuration <= 0){
+                throw new IllegalArgumentException("openDuration 必须大于0");
+            }
+            circuitBreaker.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * 设置半开状态下放行的试探请求数，都成功的话关闭，默认3
+         * @param halfOpenRequests 试探请求数
+         */
+        public Builder setHalfOpenRequests(int halfOpenRequests) {
+            if(halfOpenRequests <= 0){
+                throw new IllegalArgumentException("halfOpenRequests 必须大于0");
+            }
+            circuitBreaker.halfOpenRequests = halfOpenRequests;
+            return this;
+        }
+
+        /**
+         * 创建
+         * @return
+         */
+        public CircuitBreaker create(){
+            return circuitBreaker;
+        }
+    }
+}
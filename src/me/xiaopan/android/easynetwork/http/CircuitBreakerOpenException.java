@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.IOException;
+
+import me.xiaopan.android.easynetwork.http.enums.CircuitState;
+
+/**
+ * 熔断异常，目标主机最近失败率太高或者太慢，熔断器处于打开状态（或者半开状态下试探请求已满），本次没有访问网络直接失败
+ */
+public class CircuitBreakerOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final String host;  //主机名
+    private final CircuitState state;   //熔断器的状态
+    private final long retryAt; //熔断器进入半开状态的时间，到了这个时间才会放行试探请求，-1：已经是半开状态
+
+    CircuitBreakerOpenException(String host, CircuitState state, long retryAt) {
+        super(host + " 已熔断（" + state + "），" + (retryAt >= 0 ? Math.max(0, retryAt - System.currentTimeMillis()) + "毫秒内不再访问网络" : "正在等待试探请求的结果"));
+        this.host = host;
+        this.state = state;
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * 获取主机名
+     * @return 主机名
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 获取熔断器的状态
+     * @return OPEN或者HALF_OPEN
+     */
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * 获取熔断器进入半开状态的时间，到了这个时间才会放行试探请求
+     * @return 进入半开状态的时间，-1：已经是半开状态，正在等待试探请求的结果
+     */
+    public long getRetryAt() {
+        return retryAt;
+    }
+}
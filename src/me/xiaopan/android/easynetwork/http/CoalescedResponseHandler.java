@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BufferedHttpEntity;
+
+import android.os.Handler;
+
+/**
+ * 领头者的响应处理器，包装了领头者原来的处理器，第一次收到结果时把结果分发给所有的跟随者
+ * <br>多个处理器都要读取响应体，不能重复读取的响应体要先读到内存中；实现了SharedResponseParser并且getParseKey()相同的处理器只解析一次
+ * <br>子类重写了handleResponse()的话不共享解析结果，依然回调它自己的handleResponse()，保证合并与否处理器的行为都一样
+ */
+class CoalescedResponseHandler extends HttpResponseHandler {
+    private static final Map<Class<?>, Boolean> SHARED_PARSE_ALLOWED = new ConcurrentHashMap<Class<?>, Boolean>();  //每个处理器类是否可以共享解析结果
+    private final RequestCoalescer requestCoalescer;
+    private final String key;   //合并KEY
+    private final HttpRequestRunnable leader;   //领头者
+    private final HttpResponseHandler httpResponseHandler;  //领头者原来的处理器
+
+    CoalescedResponseHandler(RequestCoalescer requestCoalescer, String key, HttpRequestRunnable leader, HttpResponseHandler httpResponseHandler) {
+        this.requestCoalescer = requestCoalescer;
+        this.key = key;
+        this.leader = leader;
+        this.httpResponseHandler = httpResponseHandler;
+    }
+
+    @Override
+    public void start(Handler handler) {
+        httpResponseHandler.start(handler);
+    }
+
+    @Override
+    public boolean isCanCache(Handler handler, HttpResponse httpResponse) {
+        return httpResponseHandler.isCanCache(handler, httpResponse);
+    }
+
+    @Override
+    public void handleResponse(Handler handler, HttpResponse httpResponse, boolean isCache, boolean isRefreshCacheAndCallback) throws Throwable {
+        List<HttpRequestRunnable> followers = requestCoalescer.finish(key, leader);
+        if(followers.isEmpty()){
+            if(!leader.isCancelled()){
+                httpResponseHandler.handleResponse(handler, httpResponse, isCache, isRefreshCacheAndCallback);
+            }
+            return;
+        }
+
+        /* 读取响应体失败的话跟随者已经从登记处中移除了，不会再收到exception()，所以要在这里把异常分发给它们 */
+        if(httpResponse.getEntity() != null && !httpResponse.getEntity().isRepeatable()){
+            try{
+                httpResponse.setEntity(new BufferedHttpEntity(httpResponse.getEntity()));
+            }catch(Throwable throwable){
+                dispatchException(followers, throwable);
+                throw throwable;
+            }
+        }
+
+        Map<Object, Object> responseObjects = new HashMap<Object, Object>();
+        Map<Object, Throwable> parseThrowables = new HashMap<Object, Throwable>();
+        Throwable leaderThrowable = null;
+        List<HttpRequestRunnable> participants = new ArrayList<HttpRequestRunnable>(followers.size() + 1);
+        participants.add(leader);
+        participants.addAll(followers);
+        for(HttpRequestRunnable participant : participants){
+            if(participant.isCancelled()){
+                continue;
+            }
+            HttpResponseHandler participantHandler = participant == leader ? httpResponseHandler : participant.getHttpResponseHandler();
+            Handler participantMessageHandler = participant == leader ? handler : participant.getHandler();
+            try{
+                SharedResponseParser sharedResponseParser = isSharedParseAllowed(participantHandler) ? (SharedResponseParser) participantHandler : null;
+                Object parseKey = sharedResponseParser != null ? sharedResponseParser.getParseKey() : null;
+                if(parseKey == null){
+                    participantHandler.handleResponse(participantMessageHandler, httpResponse, isCache, isRefreshCacheAndCallback);
+                }else{
+                    if(!responseObjects.containsKey(parseKey) && !parseThrowables.containsKey(parseKey)){
+                        try{
+                            responseObjects.put(parseKey, sharedResponseParser.parseResponse(httpResponse));
+                        }catch(Throwable throwable){
+                            parseThrowables.put(parseKey, throwable);
+                        }
+                    }
+                    if(parseThrowables.containsKey(parseKey)){
+                        throw parseThrowables.get(parseKey);
+                    }
+                    sharedResponseParser.deliverResponse(participantMessageHandler, responseObjects.get(parseKey), isCache, isRefreshCacheAndCallback);
+                }
+            }catch(Throwable throwable){
+                if(participant == leader){
+                    leaderThrowable = throwable;
+                }else{
+                    throwable.printStackTrace();
+                    participantHandler.exception(participantMessageHandler, throwable);
+                }
+            }
+            if(participant != leader){
+                participant.finishRequest();
+            }
+        }
+        if(leaderThrowable != null){
+            throw leaderThrowable;
+        }
+    }
+
+    @Override
+    public void exception(Handler handler, Throwable e) {
+        dispatchException(requestCoalescer.finish(key, leader), e);
+        if(!leader.isCancelled()){
+            httpResponseHandler.exception(handler, e);
+        }
+    }
+
+    /**
+     * 把异常分发给跟随者
+     * @param followers 跟随者
+     * @param e 异常
+     */
+    private void dispatchException(List<HttpRequestRunnable> followers, Throwable e) {
+        for(HttpRequestRunnable follower : followers){
+            if(!follower.isCancelled()){
+                follower.getHttpResponseHandler().exception(follower.getHandler(), e);
+            }
+            follower.finishRequest();
+        }
+    }
+
+    /**
+     * 判断处理器是否可以共享解析结果，必须实现了SharedResponseParser，并且handleResponse()没有在parseResponse()所在的类之下被重写过
+     * <br>例如StringHttpResponseHandler的子类只重写了onSuccess()或者parseResponse()的话可以共享，重写了handleResponse()的话就不行，否则它的handleResponse()会被跳过
+     * @param httpResponseHandler 处理器
+     * @return 是否可以共享解析结果
+     */
+    private static boolean isSharedParseAllowed(HttpResponseHandler httpResponseHandler) {
+        if(!(httpResponseHandler instanceof SharedResponseParser)){
+            return false;
+        }
+        Class<?> handlerClass = httpResponseHandler.getClass();
+        Boolean allowed = SHARED_PARSE_ALLOWED.get(handlerClass);
+        if(allowed == null){
+            try{
+                Class<?> handleClass = handlerClass.getMethod("handleResponse", Handler.class, HttpResponse.class, boolean.class, boolean.class).getDeclaringClass();
+                Class<?> parseClass = handlerClass.getMethod("parseResponse", HttpResponse.class).getDeclaringClass();
+                allowed = handleClass.isAssignableFrom(parseClass);
+            }catch(NoSuchMethodException exception){
+                allowed = false;
+            }
+            SHARED_PARSE_ALLOWED.put(handlerClass, allowed);
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import me.xiaopan.android.easynetwork.http.enums.CacheCompression;
+
+import org.apache.http.Header;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * 压缩保存的缓存响应体，getContent()返回的是解压后的内容，处理器不需要做任何改变
+ * <br>如果调用者可以直接使用压缩的数据（例如原样转发或者自己解压），可以通过{@link #getCompressedContent()}或{@link #getCompressedByteBuffer()}直接获取，省去解压的开销
+ */
+public class CompressedEntity extends AbstractHttpEntity {
+    private final ByteBuffer buffer;    //只读的压缩数据
+    private final CacheCompression compression; //压缩方式
+
+    /**
+     * 创建一个压缩的响应实体
+     * @param buffer 压缩数据，会复制一个只读的视图，不会复制内容
+     * @param compression 压缩方式，不能是NONE
+     * @param contentType 响应体类型
+     */
+    public CompressedEntity(ByteBuffer buffer, CacheCompression compression, Header contentType) {
+        if(compression == null || compression == CacheCompression.NONE){
+            throw new IllegalArgumentException("compression 不能是 " + compression);
+        }
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.compression = compression;
+        setContentType(contentType);
+    }
+
+    /**
+     * 创建解压输入流
+     * @param inputStream 压缩数据输入流
+     * @param compression 压缩方式
+     * @return 解压后的输入流，压缩方式为NONE时直接返回原输入流
+     * @throws IOException gzip文件头不正确
+     */
+    static InputStream inflate(InputStream inputStream, CacheCompression compression) throws IOException {
+        switch(compression){
+            case GZIP : return new GZIPInputStream(inputStream, 8 * 1024);
+            case DEFLATE : return new InflaterInputStream(inputStream);
+            default : return inputStream;
+        }
+    }
+
+    /**
+     * 获取压缩方式
+     * @return 压缩方式
+     */
+    public CacheCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * 获取压缩数据的只读视图，多次调用互不影响
+     * @return 压缩数据
+     */
+    public ByteBuffer getCompressedByteBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * 获取压缩数据的输入流，不会解压
+     * @return 压缩数据的输入流
+     */
+    public InputStream getCompressedContent() {
+        return new ByteBufferEntity.ByteBufferInputStream(buffer.duplicate());
+    }
+
+    /**
+     * 获取压缩数据的长度
+     * @return 压缩数据的长度
+     */
+    public long getCompressedLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * 解压后的长度事先并不知道，所以始终返回-1
+     */
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return inflate(getCompressedContent(), compression);
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if(outputStream == null){
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        InputStream inputStream = getContent();
+        try{
+            byte[] bytes = new byte[8 * 1024];
+            int length;
+            while((length = inputStream.read(bytes)) != -1){
+                outputStream.write(bytes, 0, length);
+            }
+            outputStream.flush();
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public void consumeContent() {
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import me.xiaopan.android.easynetwork.http.enums.CacheCompression;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+
+/**
+ * 压缩写入缓存文件的输出流，缓存条目的固定头和元数据也由它来写
+ * <br>响应体的前threshold个字节会先放在内存中，达到阈值才决定压缩，写入压缩标记以及后面的数据；到关闭时都没有达到阈值的话就原样保存，不值得压缩
+ */
+class CompressingCacheOutputStream extends OutputStream {
+    private final OutputStream outputStream;    //缓存文件输出流
+    private final CacheEntry cacheEntry;    //未压缩的缓存条目
+    private final CacheCompression compression; //压缩方式
+    private final int threshold;    //压缩阈值
+    private ByteArrayOutputStream pendingBuffer;    //还没有决定是否压缩时暂存的响应体，决定之后为null
+    private OutputStream bodyOutputStream;  //响应体输出流，决定之后才有
+    private boolean closed; //是否已经关闭
+
+    /**
+     * 创建一个压缩写入缓存文件的输出流
+     * @param outputStream 缓存文件输出流
+     * @param cacheEntry 未压缩的缓存条目
+     * @param compression 压缩方式
+     * @param threshold 压缩阈值，响应体小于此值时不压缩
+     */
+    CompressingCacheOutputStream(OutputStream outputStream, CacheEntry cacheEntry, CacheCompression compression, int threshold) {
+        this.outputStream = outputStream;
+        this.cacheEntry = cacheEntry;
+        this.compression = compression;
+        this.threshold = Math.max(threshold, 0);
+        this.pendingBuffer = new ByteArrayOutputStream(Math.min(Math.max(this.threshold, 32), 8 * 1024));
+    }
+
+    /**
+     * 判断响应体是否值得压缩，图片、音视频以及压缩包这些本身已经压缩过的内容不压缩，已知长度小于阈值的也不压缩
+     * @param responseCache 响应缓存配置
+     * @param httpEntity 响应体
+     * @return 是否值得压缩
+     */
+    static boolean isCompressible(ResponseCache responseCache, HttpEntity httpEntity) {
+        if(responseCache.getCompression() == null || responseCache.getCompression() == CacheCompression.NONE){
+            return false;
+        }
+        if(httpEntity.getContentLength() >= 0 && httpEntity.getContentLength() < responseCache.getCompressionThreshold()){
+            return false;
+        }
+        Header contentType = httpEntity.getContentType();
+        if(contentType != null && contentType.getValue() != null){
+            String type = contentType.getValue().toLowerCase(Locale.US);
+            if(type.startsWith("image/") || type.startsWith("audio/") || type.startsWith("video/")
+                    || type.contains("zip") || type.contains("compressed") || type.startsWith("application/octet-stream")){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 决定是否压缩，写出固定头和元数据，然后写出暂存的响应体
+     */
+    private void decide(boolean compress) throws IOException {
+        CacheEntry entry = compress ? cacheEntry.withCompression(compression) : cacheEntry;
+        entry.writeTo(outputStream);
+        if(compress){
+            bodyOutputStream = compression == CacheCompression.GZIP ? new GZIPOutputStream(outputStream, 8 * 1024) : new DeflaterOutputStream(outputStream);
+        }else{
+            bodyOutputStream = outputStream;
+        }
+        pendingBuffer.writeTo(bodyOutputStream);
+        pendingBuffer = null;
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+        write(new byte[]{(byte) oneByte}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if(bodyOutputStream != null){
+            bodyOutputStream.write(buffer, offset, length);
+        }else{
+            pendingBuffer.write(buffer, offset, length);
+            if(pendingBuffer.size() >= threshold){
+                decide(true);
+            }
+        }
+    }
+
+    /**
+     * 还没有决定是否压缩的时候什么都不做
+     */
+    @Override
+    public void flush() throws IOException {
+        if(bodyOutputStream != null){
+            bodyOutputStream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try{
+            if(bodyOutputStream == null){
+                decide(false);
+            }
+            if(bodyOutputStream instanceof DeflaterOutputStream){
+                ((DeflaterOutputStream) bodyOutputStream).finish();
+            }
+            bodyOutputStream.flush();
+        }finally{
+            if(bodyOutputStream != null){
+                bodyOutputStream.close();
+            }else{
+                outputStream.close();
+            }
+        }
+    }
+}
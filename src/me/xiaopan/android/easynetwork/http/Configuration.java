@@ -16,9 +16,13 @@
 
 package me.xiaopan.android.easynetwork.http;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import me.xiaopan.android.easynetwork.http.interceptor.AddRequestHeaderRequestInterceptor;
@@ -37,28 +41,58 @@ import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.DefaultedHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.SyncBasicHttpContext;
 
+import android.content.Context;
 import android.os.Handler;
+import android.util.Log;
 
 /**
  * 配置
  */
 public class Configuration {
 	private int maxRetries = 5;	//最大重试次数
+	private long retryBaseDelay = 500;	//重试的基础退避时间，单位毫秒，每重试一次翻倍
+	private long retryMaxDelay = 30 * 1000;	//重试的最大退避时间，单位毫秒，Retry-After超过此值的话不再重试
+	private int retryBudgetPercent = 20;	//重试预算，最近10秒内的重试次数最多占请求次数的百分比
+	private final RetryHandler retryHandler = new RetryHandler(this);	//重试调度器
+	private long hedgeDelay;	//发出对冲请求之前的等待时间，单位毫秒，0：使用该主机最近请求的P95往返时间
+	private int hedgeBudgetPercent = 5;	//对冲预算，最近10秒内的对冲请求最多占请求次数的百分比
+	private final HedgeHandler hedgeHandler = new HedgeHandler(this);	//对冲调度器
 	private int connectionTimeout = 20000;	//连接超时时间
 	private int maxConnections = 10;	//最大连接数
+	private int maxRequestsPerHost = 5;	//每个主机同时执行的最大请求数
+	private final Map<String, Integer> hostLimits = new HashMap<String, Integer>();	//单独设置的主机或者路由的最大请求数
+	private AdaptiveLimiter adaptiveLimiter;	//自适应并发限制，为null时使用固定的maxRequestsPerHost
 	private int socketBufferSize = 8192;	//Socket缓存池大小
 	private boolean debugMode;
 	private String logTag = "EasyHttpClient";	//Log Tag
 	private String userAgent;
 	private String defaultCacheDirerctory;	//默认缓存目录
+	private long diskCacheMaxSize = 50 * 1024 * 1024;	//磁盘缓存最大字节数
+	private int diskCacheMaxEntries = 2000;	//磁盘缓存最大条目数
+	private DiskCache diskCache;	//磁盘缓存，也就是默认分区
+	private File diskCacheDirectory;	//磁盘缓存根目录，第一次使用时确定
+	private final Map<String, CachePartition> cachePartitions = new HashMap<String, CachePartition>();	//缓存分区配置
+	private final Map<String, DiskCache> partitionDiskCaches = new ConcurrentHashMap<String, DiskCache>();	//已经打开的缓存分区，读取时不用加锁
+	private final ConcurrentHashMap<String, Object> partitionOpenLocks = new ConcurrentHashMap<String, Object>();	//打开缓存分区时用的锁，每个分区一个，打开一个分区不会阻塞其它分区
+	private long cacheSweepInterval = 10 * 60 * 1000;	//磁盘缓存清理间隔，单位毫秒
+	private long lowStorageThreshold = 20 * 1024 * 1024;	//存储空间不足的阈值，单位字节
+	private final CacheSweeper cacheSweeper = new CacheSweeper(this);	//磁盘缓存清理器
+	private int memoryCacheMaxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 4 * 1024 * 1024);	//内存缓存最大字节数
+	private MemoryCache memoryCache;	//内存缓存
+	private CacheKeyStrategy cacheKeyStrategy = new DefaultCacheKeyStrategy.Builder().create();	//默认的缓存KEY策略
+	private NegativeCache negativeCache;	//负缓存，为null时不使用
+	private CircuitBreaker circuitBreaker;	//熔断器，为null时不使用
+	private RateLimiter rateLimiter;	//限流器，为null时不限流
 	private Handler handler = new Handler();
 	private CookieStore cookieStore;
 	private HttpContext httpContext;	//Http上下文
@@ -66,6 +100,12 @@ public class Configuration {
 	private DefaultHttpClient httpClient;
     private Map<String, String> headerMap = new HashMap<String, String>();	//请求头Map
 	private ThreadPoolExecutor threadPool;	//线程池
+	private ThreadPoolExecutor backgroundThreadPool;	//后台线程池，低优先级，用来执行后台刷新缓存等不着急的任务
+	private final CacheRevalidator cacheRevalidator = new CacheRevalidator();	//后台刷新缓存的登记处
+	private boolean requestCoalescing;	//是否合并相同的Get请求，默认关闭
+	private final RequestCoalescer requestCoalescer = new RequestCoalescer();	//合并请求的登记处
+	private ThreadPoolExecutor prefetchThreadPool;	//预取线程池，低优先级
+	private final ForegroundRequestTracker foregroundRequestTracker = new ForegroundRequestTracker();	//前台请求计数器，预取时会等待前台请求结束
     private AuthScope authScope;
     private Credentials credentials;
 	
@@ -94,6 +134,14 @@ public class Configuration {
 		this.httpContext = httpContext;
 	}
 
+	/**
+	 * 创建单个请求使用的Http上下文，读取属性时回落到共享的Http上下文（例如Cookie），写入的属性（例如请求是否已经发出）只属于这个请求
+	 * @return
+	 */
+	HttpContext newRequestContext() {
+		return new DefaultedHttpContext(new BasicHttpContext(), getHttpContext());
+	}
+
 	/**
 	 * 获取Http客户端
 	 * @return
@@ -116,7 +164,8 @@ public class Configuration {
 	        httpClient.addRequestInterceptor(new GzipProcessRequestInterceptor());
 	        httpClient.addRequestInterceptor(new AddRequestHeaderRequestInterceptor(getHeaderMap()));
 	        httpClient.addResponseInterceptor(new GzipProcessResponseInterceptor());
-	        httpClient.setHttpRequestRetryHandler(new RetryHandler(maxRetries));
+	        /* 重试由RetryHandler调度，HttpClient自己不再重试，否则会在工作线程中连续重试 */
+	        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
 	        if(sslSocketFactory != null){
 	    		httpClient.getConnectionManager().getSchemeRegistry().register(new Scheme("https", sslSocketFactory, 443));
 	    	}
@@ -192,6 +241,262 @@ public class Configuration {
 		this.defaultCacheDirerctory = defaultCacheDirerctory;
 	}
 
+	/**
+	 * 获取磁盘缓存最大字节数
+	 * @return
+	 */
+	public long getDiskCacheMaxSize() {
+		return diskCacheMaxSize;
+	}
+
+	/**
+	 * 设置磁盘缓存最大字节数，超出后会按照LRU算法删除最久没有使用的缓存
+	 * @param diskCacheMaxSize
+	 */
+	public synchronized void setDiskCacheMaxSize(long diskCacheMaxSize) {
+		this.diskCacheMaxSize = diskCacheMaxSize;
+		if(diskCache != null){
+			diskCache.setMaxSize(this.diskCacheMaxSize);
+		}
+	}
+
+	/**
+	 * 获取磁盘缓存最大条目数
+	 * @return
+	 */
+	public int getDiskCacheMaxEntries() {
+		return diskCacheMaxEntries;
+	}
+
+	/**
+	 * 设置磁盘缓存最大条目数，超出后会按照LRU算法删除最久没有使用的缓存
+	 * @param diskCacheMaxEntries
+	 */
+	public synchronized void setDiskCacheMaxEntries(int diskCacheMaxEntries) {
+		this.diskCacheMaxEntries = diskCacheMaxEntries;
+		if(diskCache != null){
+			diskCache.setMaxEntries(this.diskCacheMaxEntries);
+		}
+	}
+
+	/**
+	 * 获取磁盘缓存根目录，只在第一次调用时确定，默认是动态缓存目录下的easy_http_client目录，你可以通过setDefaultCacheDirerctory()来修改
+	 * @param context 上下文
+	 * @return 磁盘缓存根目录
+	 */
+	private synchronized File getDiskCacheDirectory(Context context) {
+		if(diskCacheDirectory == null){
+			if(GeneralUtils.isNotEmpty(defaultCacheDirerctory)){
+				diskCacheDirectory = new File(defaultCacheDirerctory);
+			}else{
+				diskCacheDirectory = new File(GeneralUtils.getDynamicCacheDir(context), "easy_http_client");
+			}
+		}
+		return diskCacheDirectory;
+	}
+
+	/**
+	 * 获取磁盘缓存（默认分区），第一次调用时才会打开，缓存目录默认是动态缓存目录下的easy_http_client目录，你可以通过setDefaultCacheDirerctory()来修改
+	 * @param context 上下文
+	 * @return 磁盘缓存，null：打开失败
+	 */
+	public synchronized DiskCache getDiskCache(Context context) {
+		if(diskCache == null){
+			try {
+				diskCache = DiskCache.open(getDiskCacheDirectory(context), diskCacheMaxSize, diskCacheMaxEntries);
+				cacheSweeper.start(cacheSweepInterval);
+			} catch (IOException e) {
+				e.printStackTrace();
+				if(debugMode){
+					Log.e(logTag, "打开磁盘缓存失败："+e.toString());
+				}
+			}
+		}
+		return diskCache;
+	}
+
+	/**
+	 * 获取缓存分区，第一次调用时才会打开，分区位于磁盘缓存根目录下的“partition_分区名”目录中
+	 * <br>通过addCachePartition()配置过的分区使用配置的大小限制和淘汰策略，没有配置过的使用默认分区的大小限制以及LRU
+	 * @param context 上下文
+	 * @param partitionName 分区名，为空时返回默认分区
+	 * @return 缓存分区，null：打开失败或者分区名不合法
+	 */
+	public DiskCache getDiskCache(Context context, String partitionName) {
+		if(!GeneralUtils.isNotEmpty(partitionName)){
+			return getDiskCache(context);
+		}
+
+		DiskCache partitionDiskCache = partitionDiskCaches.get(partitionName);
+		if(partitionDiskCache != null){
+			return partitionDiskCache;
+		}
+		if(!CachePartition.isValidName(partitionName)){
+			if(debugMode){
+				Log.e(logTag, "缓存分区名不合法："+partitionName);
+			}
+			return null;
+		}
+
+		Object openLock = partitionOpenLocks.get(partitionName);
+		if(openLock == null){
+			Object newOpenLock = new Object();
+			openLock = partitionOpenLocks.putIfAbsent(partitionName, newOpenLock);
+			if(openLock == null){
+				openLock = newOpenLock;
+			}
+		}
+
+		/* 打开分区要读取日志甚至扫描目录，比较耗时，所以只锁定当前分区，不能占着全局锁 */
+		synchronized (openLock) {
+			partitionDiskCache = partitionDiskCaches.get(partitionName);
+			if(partitionDiskCache != null){
+				return partitionDiskCache;
+			}
+
+			File directory;
+			CachePartition cachePartition;
+			long maxSize;
+			int maxEntries;
+			synchronized (this) {
+				directory = new File(getDiskCacheDirectory(context), "partition_" + partitionName);
+				cachePartition = cachePartitions.get(partitionName);
+				maxSize = diskCacheMaxSize;
+				maxEntries = diskCacheMaxEntries;
+			}
+			try {
+				if(cachePartition != null){
+					partitionDiskCache = DiskCache.open(directory, cachePartition.getMaxSize(), cachePartition.getMaxEntries(), cachePartition.getEvictionPolicy());
+				}else{
+					partitionDiskCache = DiskCache.open(directory, maxSize, maxEntries);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				if(debugMode){
+					Log.e(logTag, "打开缓存分区"+partitionName+"失败："+e.toString());
+				}
+				return null;
+			}
+
+			synchronized (this) {
+				/* 打开期间添加的分区配置没能作用到这个分区上，这里补上 */
+				CachePartition latestCachePartition = cachePartitions.get(partitionName);
+				if(latestCachePartition != null && latestCachePartition != cachePartition){
+					partitionDiskCache.setMaxSize(latestCachePartition.getMaxSize());
+					partitionDiskCache.setMaxEntries(latestCachePartition.getMaxEntries());
+				}
+				partitionDiskCaches.put(partitionName, partitionDiskCache);
+				cacheSweeper.start(cacheSweepInterval);
+			}
+		}
+		return partitionDiskCache;
+	}
+
+	/**
+	 * 获取所有已经打开的磁盘缓存，包括默认分区
+	 * @return 已经打开的磁盘缓存
+	 */
+	synchronized List<DiskCache> getOpenedDiskCaches() {
+		List<DiskCache> diskCaches = new ArrayList<DiskCache>(partitionDiskCaches.size() + 1);
+		if(diskCache != null){
+			diskCaches.add(diskCache);
+		}
+		diskCaches.addAll(partitionDiskCaches.values());
+		return diskCaches;
+	}
+
+	/**
+	 * 获取磁盘缓存清理间隔
+	 * @return 清理间隔，单位毫秒
+	 */
+	public synchronized long getCacheSweepInterval() {
+		return cacheSweepInterval;
+	}
+
+	/**
+	 * 设置磁盘缓存清理间隔，默认为10分钟，小于等于0时不清理；每轮清理会删除过期之后没有再被请求的缓存以及孤立的文件，存储空间不足时还会缩小缓存
+	 * @param cacheSweepInterval 清理间隔，单位毫秒
+	 */
+	public synchronized void setCacheSweepInterval(long cacheSweepInterval) {
+		this.cacheSweepInterval = cacheSweepInterval;
+		if(cacheSweeper.isStarted()){
+			cacheSweeper.stop();
+			cacheSweeper.start(cacheSweepInterval);
+		}
+	}
+
+	/**
+	 * 获取存储空间不足的阈值
+	 * @return 存储空间不足的阈值，单位字节
+	 */
+	public synchronized long getLowStorageThreshold() {
+		return lowStorageThreshold;
+	}
+
+	/**
+	 * 设置存储空间不足的阈值，默认为20M，清理磁盘缓存时如果可用空间小于此值就将缓存缩小到原来的一半，小于等于0时不检查
+	 * @param lowStorageThreshold 存储空间不足的阈值，单位字节
+	 */
+	public synchronized void setLowStorageThreshold(long lowStorageThreshold) {
+		this.lowStorageThreshold = lowStorageThreshold;
+	}
+
+	/**
+	 * 添加缓存分区配置，如果分区已经打开了的话大小限制会立即生效，但淘汰策略要等到下次打开才生效
+	 * @param cachePartition 缓存分区配置
+	 */
+	public synchronized void addCachePartition(CachePartition cachePartition) {
+		cachePartitions.put(cachePartition.getName(), cachePartition);
+		DiskCache partitionDiskCache = partitionDiskCaches.get(cachePartition.getName());
+		if(partitionDiskCache != null){
+			partitionDiskCache.setMaxSize(cachePartition.getMaxSize());
+			partitionDiskCache.setMaxEntries(cachePartition.getMaxEntries());
+		}
+	}
+
+	/**
+	 * 获取所有的缓存分区配置
+	 * @return 缓存分区配置
+	 */
+	public synchronized List<CachePartition> getCachePartitions() {
+		return new ArrayList<CachePartition>(cachePartitions.values());
+	}
+
+	/**
+	 * 获取内存缓存最大字节数
+	 * @return
+	 */
+	public int getMemoryCacheMaxSize() {
+		return memoryCacheMaxSize;
+	}
+
+	/**
+	 * 设置内存缓存最大字节数，小于等于0时不使用内存缓存，默认为可用内存的1/16，但不超过4M
+	 * @param memoryCacheMaxSize
+	 */
+	public synchronized void setMemoryCacheMaxSize(int memoryCacheMaxSize) {
+		this.memoryCacheMaxSize = memoryCacheMaxSize;
+		if(memoryCache != null){
+			if(this.memoryCacheMaxSize > 0){
+				memoryCache.setMaxSize(this.memoryCacheMaxSize);
+			}else{
+				memoryCache.clear();
+				memoryCache = null;
+			}
+		}
+	}
+
+	/**
+	 * 获取内存缓存，你可以通过它来查看命中次数和未命中次数
+	 * @return 内存缓存，null：不使用内存缓存
+	 */
+	public synchronized MemoryCache getMemoryCache() {
+		if(memoryCache == null && memoryCacheMaxSize > 0){
+			memoryCache = new MemoryCache(memoryCacheMaxSize);
+		}
+		return memoryCache;
+	}
+
 	/**
 	 * 获取最大重置次数
 	 * @return
@@ -201,14 +506,122 @@ public class Configuration {
 	}
 
 	/**
-	 * 设置最大重置次数
+	 * 设置最大重置次数，重试之前的退避时间在定时器中等待，不占用线程，默认为5
 	 * @param maxRetries
 	 */
 	public void setMaxRetries(int maxRetries) {
 		this.maxRetries = maxRetries;
-		if(httpClient != null){
-			httpClient.setHttpRequestRetryHandler(new RetryHandler(this.maxRetries));
+	}
+
+	/**
+	 * 获取重试的基础退避时间，单位毫秒
+	 * @return
+	 */
+	public long getRetryBaseDelay() {
+		return retryBaseDelay;
+	}
+
+	/**
+	 * 设置重试的基础退避时间，单位毫秒，第n次重试之前会在0到min(retryMaxDelay, retryBaseDelay * 2^n)之间随机等待一段时间，默认为500
+	 * @param retryBaseDelay
+	 */
+	public void setRetryBaseDelay(long retryBaseDelay) {
+		if(retryBaseDelay <= 0){
+			throw new IllegalArgumentException("retryBaseDelay必须大于0");
+		}
+		this.retryBaseDelay = retryBaseDelay;
+	}
+
+	/**
+	 * 获取重试的最大退避时间，单位毫秒
+	 * @return
+	 */
+	public long getRetryMaxDelay() {
+		return retryMaxDelay;
+	}
+
+	/**
+	 * 设置重试的最大退避时间，单位毫秒，服务器返回的Retry-After超过此值的话不再重试，默认为30秒
+	 * @param retryMaxDelay
+	 */
+	public void setRetryMaxDelay(long retryMaxDelay) {
+		if(retryMaxDelay <= 0){
+			throw new IllegalArgumentException("retryMaxDelay必须大于0");
+		}
+		this.retryMaxDelay = retryMaxDelay;
+	}
+
+	/**
+	 * 获取重试预算
+	 * @return
+	 */
+	public int getRetryBudgetPercent() {
+		return retryBudgetPercent;
+	}
+
+	/**
+	 * 设置重试预算，最近10秒内的重试次数最多占请求次数的百分比，超出之后失败的请求不再重试，防止服务器出问题时形成重试风暴；请求很少的时候始终允许少量重试，默认为20
+	 * @param retryBudgetPercent
+	 */
+	public void setRetryBudgetPercent(int retryBudgetPercent) {
+		if(retryBudgetPercent < 0){
+			throw new IllegalArgumentException("retryBudgetPercent不能小于0");
+		}
+		this.retryBudgetPercent = retryBudgetPercent;
+	}
+
+	/**
+	 * 获取重试调度器
+	 * @return
+	 */
+	RetryHandler getRetryHandler() {
+		return retryHandler;
+	}
+
+	/**
+	 * 获取发出对冲请求之前的等待时间
+	 * @return
+	 */
+	public long getHedgeDelay() {
+		return hedgeDelay;
+	}
+
+	/**
+	 * 设置发出对冲请求之前的等待时间，单位毫秒，延迟敏感的请求过了这么久还没有收到响应的话再发一个相同的请求；默认为0，使用该主机最近请求的P95往返时间，样本不够时不对冲
+	 * @param hedgeDelay
+	 */
+	public void setHedgeDelay(long hedgeDelay) {
+		if(hedgeDelay < 0){
+			throw new IllegalArgumentException("hedgeDelay不能小于0");
+		}
+		this.hedgeDelay = hedgeDelay;
+	}
+
+	/**
+	 * 获取对冲预算
+	 * @return
+	 */
+	public int getHedgeBudgetPercent() {
+		return hedgeBudgetPercent;
+	}
+
+	/**
+	 * 设置对冲预算，最近10秒内的对冲请求最多占请求次数的百分比，超出之后不再对冲，防止对冲请求给服务器增加太多负担，默认为5
+	 * @param hedgeBudgetPercent
+	 */
+	public void setHedgeBudgetPercent(int hedgeBudgetPercent) {
+		if(hedgeBudgetPercent < 0){
+			throw new IllegalArgumentException("hedgeBudgetPercent不能小于0");
 		}
+		this.hedgeBudgetPercent = hedgeBudgetPercent;
+	}
+
+	/**
+	 * 获取对冲调度器
+	 * @return
+	 */
+	HedgeHandler getHedgeHandler() {
+		return hedgeHandler;
 	}
 
 	/**
@@ -237,12 +650,77 @@ public class Configuration {
 	}
 
 	/**
-	 * 设置最大连接数
+	 * 设置最大连接数，线程池是请求调度器（RequestDispatcher）的话同时调整它的线程数量，执行对冲请求的线程数也随之调整
 	 * @param maxConnections
 	 */
-	public void setMaxConnections(int maxConnections) {
+	public synchronized void setMaxConnections(int maxConnections) {
+		if(maxConnections <= 0){
+			throw new IllegalArgumentException("maxConnections 必须大于0");
+		}
 		this.maxConnections = maxConnections;
 		GeneralUtils.setMaxConnections(httpClient, this.maxConnections);
+		if(threadPool instanceof RequestDispatcher){
+			threadPool.setMaximumPoolSize(maxConnections);
+		}
+		hedgeHandler.setMaxConnections(maxConnections);
+	}
+
+	/**
+	 * 获取每个主机同时执行的最大请求数
+	 * @return
+	 */
+	public synchronized int getMaxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+
+	/**
+	 * 设置每个主机同时执行的最大请求数，默认为5，超出的请求会暂存在请求调度器中，不占用线程，避免一个很慢的主机占满所有的线程和连接
+	 * @param maxRequestsPerHost
+	 */
+	public synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+		if(maxRequestsPerHost <= 0){
+			throw new IllegalArgumentException("maxRequestsPerHost 必须大于0");
+		}
+		this.maxRequestsPerHost = maxRequestsPerHost;
+		if(threadPool instanceof RequestDispatcher){
+			((RequestDispatcher) threadPool).setMaxRequestsPerHost(maxRequestsPerHost);
+		}
+	}
+
+	/**
+	 * 单独设置某个主机或者路由同时执行的最大请求数，例如给图片服务器设置更小的限制，路由的限制优先于主机的限制
+	 * @param hostOrRoute 主机（例如img.example.com）或者路由（例如https://img.example.com:443，必须带端口）
+	 * @param maxRequests 最大请求数，小于等于0时取消单独的设置
+	 */
+	public synchronized void setHostLimit(String hostOrRoute, int maxRequests) {
+		if(maxRequests > 0){
+			hostLimits.put(hostOrRoute, maxRequests);
+		}else{
+			hostLimits.remove(hostOrRoute);
+		}
+		if(threadPool instanceof RequestDispatcher){
+			((RequestDispatcher) threadPool).setHostLimit(hostOrRoute, maxRequests);
+		}
+	}
+
+	/**
+	 * 获取自适应并发限制
+	 * @return
+	 */
+	public synchronized AdaptiveLimiter getAdaptiveLimiter() {
+		return adaptiveLimiter;
+	}
+
+	/**
+	 * 设置自适应并发限制，设置后没有单独设置限制的主机会根据往返时间以及错误自动调整同时执行的最大请求数，maxRequestsPerHost不再起作用，默认为null不使用
+	 * <br>限制再大也不会超过线程数量（也就是maxConnections），想要更大的并发的话需要同时调大maxConnections
+	 * @param adaptiveLimiter
+	 */
+	public synchronized void setAdaptiveLimiter(AdaptiveLimiter adaptiveLimiter) {
+		this.adaptiveLimiter = adaptiveLimiter;
+		if(threadPool instanceof RequestDispatcher){
+			((RequestDispatcher) threadPool).setAdaptiveLimiter(adaptiveLimiter);
+		}
 	}
 
 	/**
@@ -358,23 +836,171 @@ public class Configuration {
     }
 
     /**
-     * 获取线程池
+     * 获取线程池，默认是一个线程数量和最大连接数一致的请求调度器（RequestDispatcher），排队的请求按优先级执行，并且会限制每个主机同时执行的请求数
      * @return
      */
-    public ThreadPoolExecutor getThreadPool() {
+    public synchronized ThreadPoolExecutor getThreadPool() {
         if(threadPool == null){
-            threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+            RequestDispatcher requestDispatcher = new RequestDispatcher(maxConnections, maxRequestsPerHost);
+            for(Map.Entry<String, Integer> entry : hostLimits.entrySet()){
+                requestDispatcher.setHostLimit(entry.getKey(), entry.getValue());
+            }
+            requestDispatcher.setAdaptiveLimiter(adaptiveLimiter);
+            threadPool = requestDispatcher;
         }
         return threadPool;
     }
     
 	/**
-	 * 设置线程池
+	 * 设置线程池，如果不是RequestDispatcher的话请求的优先级将不起作用
 	 * @param threadPool
 	 */
-	public void setThreadPool(ThreadPoolExecutor threadPool) {
+	public synchronized void setThreadPool(ThreadPoolExecutor threadPool) {
 		this.threadPool = threadPool;
 	}
+
+	/**
+	 * 获取后台线程池，默认最多两个低优先级线程，空闲60秒后回收
+	 * @return
+	 */
+	public synchronized ThreadPoolExecutor getBackgroundThreadPool() {
+		if(backgroundThreadPool == null){
+			backgroundThreadPool = ElasticQueue.newThreadPool(2, new BackgroundThreadFactory("EasyNetwork-background"));
+		}
+		return backgroundThreadPool;
+	}
+
+	/**
+	 * 设置后台线程池，线程池不是RequestDispatcher的时候用来执行后台刷新缓存等不着急的任务
+	 * @param backgroundThreadPool
+	 */
+	public synchronized void setBackgroundThreadPool(ThreadPoolExecutor backgroundThreadPool) {
+		this.backgroundThreadPool = backgroundThreadPool;
+	}
+
+	/**
+	 * 获取预取线程池，默认最多两个低优先级线程，空闲60秒后回收
+	 * @return
+	 */
+	public synchronized ThreadPoolExecutor getPrefetchThreadPool() {
+		if(prefetchThreadPool == null){
+			prefetchThreadPool = ElasticQueue.newThreadPool(2, new BackgroundThreadFactory("EasyNetwork-prefetch"));
+		}
+		return prefetchThreadPool;
+	}
+
+	/**
+	 * 设置预取线程池，线程数量决定了同时进行的预取请求数量，建议使用低优先级的线程
+	 * @param prefetchThreadPool
+	 */
+	public synchronized void setPrefetchThreadPool(ThreadPoolExecutor prefetchThreadPool) {
+		this.prefetchThreadPool = prefetchThreadPool;
+	}
+
+	/**
+	 * 获取前台请求计数器
+	 * @return
+	 */
+	ForegroundRequestTracker getForegroundRequestTracker() {
+		return foregroundRequestTracker;
+	}
+
+	/**
+	 * 获取默认的缓存KEY策略
+	 * @return
+	 */
+	public CacheKeyStrategy getCacheKeyStrategy() {
+		return cacheKeyStrategy;
+	}
+
+	/**
+	 * 设置默认的缓存KEY策略，ResponseCache没有指定缓存KEY策略的时候使用，默认只规范化请求地址，为null时恢复默认
+	 * @param cacheKeyStrategy
+	 */
+	public void setCacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
+		this.cacheKeyStrategy = cacheKeyStrategy != null ? cacheKeyStrategy : new DefaultCacheKeyStrategy.Builder().create();
+	}
+
+	/**
+	 * 获取负缓存
+	 * @return 负缓存，为null时不使用
+	 */
+	public NegativeCache getNegativeCache() {
+		return negativeCache;
+	}
+
+	/**
+	 * 设置负缓存，设置后最近失败的请求（或者主机）在有效期内会直接以NegativeCacheException失败，不再访问网络，默认为null不使用
+	 * @param negativeCache
+	 */
+	public void setNegativeCache(NegativeCache negativeCache) {
+		this.negativeCache = negativeCache;
+	}
+
+	/**
+	 * 获取熔断器
+	 * @return
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * 设置熔断器，设置后失败率太高或者太慢的主机会被熔断，熔断期间发往该主机的请求会直接以CircuitBreakerOpenException失败，不再访问网络，默认为null不使用
+	 * @param circuitBreaker
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * 获取限流器
+	 * @return
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * 设置限流器，设置后发出请求之前要先从令牌桶中拿到令牌，令牌不够的请求会在定时器中等待，不占用线程，等待时间超过最大等待时间的话直接以RateLimitExceededException失败；
+	 * 令牌桶可以是全局的、按主机的或者按请求类上的RateLimit注解，默认为null不限流
+	 * @param rateLimiter
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * 判断是否合并相同的Get请求
+	 * @return
+	 */
+	public boolean isRequestCoalescing() {
+		return requestCoalescing;
+	}
+
+	/**
+	 * 设置是否合并相同的Get请求，默认为false；开启后执行中再次发起相同的Get请求（请求地址、缓存配置以及请求头都相同）的话不会再访问网络，而是等待正在执行的请求并共享其结果，相同类型的处理器只解析一次响应体，注意此时多个处理器收到的是同一个解析结果对象，请不要修改它
+	 * @param requestCoalescing
+	 */
+	public void setRequestCoalescing(boolean requestCoalescing) {
+		this.requestCoalescing = requestCoalescing;
+	}
+
+	/**
+	 * 获取合并请求的登记处
+	 * @return
+	 */
+	RequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+
+	/**
+	 * 获取后台刷新缓存的登记处
+	 * @return
+	 */
+	CacheRevalidator getCacheRevalidator() {
+		return cacheRevalidator;
+	}
     
 	/**
 	 * 判断是否开启调试模式
@@ -455,7 +1081,61 @@ public class Configuration {
 		}
 
 		/**
-		 * 设置最大重置次数
+		 * 设置磁盘缓存最大字节数，超出后会按照LRU算法删除最久没有使用的缓存
+		 * @param diskCacheMaxSize
+		 */
+		public Builder setDiskCacheMaxSize(long diskCacheMaxSize) {
+			configuration.setDiskCacheMaxSize(diskCacheMaxSize);
+			return this;
+		}
+
+		/**
+		 * 设置磁盘缓存最大条目数，超出后会按照LRU算法删除最久没有使用的缓存
+		 * @param diskCacheMaxEntries
+		 */
+		public Builder setDiskCacheMaxEntries(int diskCacheMaxEntries) {
+			configuration.setDiskCacheMaxEntries(diskCacheMaxEntries);
+			return this;
+		}
+
+		/**
+		 * 添加缓存分区配置，ResponseCache.cacheDirectory指定的就是分区名
+		 * @param cachePartition 缓存分区配置
+		 */
+		public Builder addCachePartition(CachePartition cachePartition) {
+			configuration.addCachePartition(cachePartition);
+			return this;
+		}
+
+		/**
+		 * 设置磁盘缓存清理间隔，默认为10分钟，小于等于0时不清理；每轮清理会删除过期之后没有再被请求的缓存以及孤立的文件，存储空间不足时还会缩小缓存
+		 * @param cacheSweepInterval 清理间隔，单位毫秒
+		 */
+		public Builder setCacheSweepInterval(long cacheSweepInterval) {
+			configuration.setCacheSweepInterval(cacheSweepInterval);
+			return this;
+		}
+
+		/**
+		 * 设置存储空间不足的阈值，默认为20M，清理磁盘缓存时如果可用空间小于此值就将缓存缩小到原来的一半，小于等于0时不检查
+		 * @param lowStorageThreshold 存储空间不足的阈值，单位字节
+		 */
+		public Builder setLowStorageThreshold(long lowStorageThreshold) {
+			configuration.setLowStorageThreshold(lowStorageThreshold);
+			return this;
+		}
+
+		/**
+		 * 设置内存缓存最大字节数，小于等于0时不使用内存缓存，默认为可用内存的1/16，但不超过4M
+		 * @param memoryCacheMaxSize
+		 */
+		public Builder setMemoryCacheMaxSize(int memoryCacheMaxSize) {
+			configuration.setMemoryCacheMaxSize(memoryCacheMaxSize);
+			return this;
+		}
+
+		/**
+		 * 设置最大重置次数，重试之前的退避时间在定时器中等待，不占用线程，默认为5
 		 * @param maxRetries
 		 */
 		public Builder setMaxRetries(int maxRetries) {
@@ -463,6 +1143,51 @@ public class Configuration {
 			return this;
 		}
 
+		/**
+		 * 设置重试的基础退避时间，单位毫秒，第n次重试之前会在0到min(retryMaxDelay, retryBaseDelay * 2^n)之间随机等待一段时间，默认为500
+		 * @param retryBaseDelay
+		 */
+		public Builder setRetryBaseDelay(long retryBaseDelay) {
+			configuration.setRetryBaseDelay(retryBaseDelay);
+			return this;
+		}
+
+		/**
+		 * 设置重试的最大退避时间，单位毫秒，服务器返回的Retry-After超过此值的话不再重试，默认为30秒
+		 * @param retryMaxDelay
+		 */
+		public Builder setRetryMaxDelay(long retryMaxDelay) {
+			configuration.setRetryMaxDelay(retryMaxDelay);
+			return this;
+		}
+
+		/**
+		 * 设置重试预算，最近10秒内的重试次数最多占请求次数的百分比，超出之后失败的请求不再重试，防止服务器出问题时形成重试风暴；请求很少的时候始终允许少量重试，默认为20
+		 * @param retryBudgetPercent
+		 */
+		public Builder setRetryBudgetPercent(int retryBudgetPercent) {
+			configuration.setRetryBudgetPercent(retryBudgetPercent);
+			return this;
+		}
+
+		/**
+		 * 设置发出对冲请求之前的等待时间，单位毫秒，延迟敏感的请求过了这么久还没有收到响应的话再发一个相同的请求；默认为0，使用该主机最近请求的P95往返时间，样本不够时不对冲
+		 * @param hedgeDelay
+		 */
+		public Builder setHedgeDelay(long hedgeDelay) {
+			configuration.setHedgeDelay(hedgeDelay);
+			return this;
+		}
+
+		/**
+		 * 设置对冲预算，最近10秒内的对冲请求最多占请求次数的百分比，超出之后不再对冲，防止对冲请求给服务器增加太多负担，默认为5
+		 * @param hedgeBudgetPercent
+		 */
+		public Builder setHedgeBudgetPercent(int hedgeBudgetPercent) {
+			configuration.setHedgeBudgetPercent(hedgeBudgetPercent);
+			return this;
+		}
+
 		/**
 		 * 设置连接超时间，单位毫秒
 		 * @param connectionTimeout
@@ -549,7 +1274,7 @@ public class Configuration {
 	    }
 
 		/**
-		 * 设置线程池
+		 * 设置线程池，如果不是RequestDispatcher的话请求的优先级将不起作用
 		 * @param threadPool
 		 */
 		public Builder setThreadPool(ThreadPoolExecutor threadPool) {
@@ -557,6 +1282,99 @@ public class Configuration {
 			return this;
 		}
 
+		/**
+		 * 设置后台线程池，线程池不是RequestDispatcher的时候用来执行后台刷新缓存等不着急的任务
+		 * @param backgroundThreadPool
+		 */
+		public Builder setBackgroundThreadPool(ThreadPoolExecutor backgroundThreadPool) {
+			configuration.setBackgroundThreadPool(backgroundThreadPool);
+			return this;
+		}
+
+		/**
+		 * 设置预取线程池，线程数量决定了同时进行的预取请求数量，建议使用低优先级的线程
+		 * @param prefetchThreadPool
+		 */
+		public Builder setPrefetchThreadPool(ThreadPoolExecutor prefetchThreadPool) {
+			configuration.setPrefetchThreadPool(prefetchThreadPool);
+			return this;
+		}
+
+		/**
+		 * 设置默认的缓存KEY策略，ResponseCache没有指定缓存KEY策略的时候使用，默认只规范化请求地址
+		 * @param cacheKeyStrategy
+		 */
+		public Builder setCacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
+			configuration.setCacheKeyStrategy(cacheKeyStrategy);
+			return this;
+		}
+
+		/**
+		 * 设置负缓存，设置后最近失败的请求（或者主机）在有效期内会直接以NegativeCacheException失败，不再访问网络，默认为null不使用
+		 * @param negativeCache
+		 */
+		public Builder setNegativeCache(NegativeCache negativeCache) {
+			configuration.setNegativeCache(negativeCache);
+			return this;
+		}
+
+		/**
+		 * 设置熔断器，设置后失败率太高或者太慢的主机会被熔断，熔断期间发往该主机的请求会直接以CircuitBreakerOpenException失败，不再访问网络，默认为null不使用
+		 * @param circuitBreaker
+		 */
+		public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+			configuration.setCircuitBreaker(circuitBreaker);
+			return this;
+		}
+
+		/**
+		 * 设置限流器，设置后发出请求之前要先从令牌桶中拿到令牌，令牌不够的请求会在定时器中等待，不占用线程，等待时间超过最大等待时间的话直接以RateLimitExceededException失败；
+		 * 令牌桶可以是全局的、按主机的或者按请求类上的RateLimit注解，默认为null不限流
+		 * @param rateLimiter
+		 */
+		public Builder setRateLimiter(RateLimiter rateLimiter) {
+			configuration.setRateLimiter(rateLimiter);
+			return this;
+		}
+
+		/**
+		 * 设置每个主机同时执行的最大请求数，默认为5，超出的请求会暂存在请求调度器中，不占用线程，避免一个很慢的主机占满所有的线程和连接
+		 * @param maxRequestsPerHost
+		 */
+		public Builder setMaxRequestsPerHost(int maxRequestsPerHost) {
+			configuration.setMaxRequestsPerHost(maxRequestsPerHost);
+			return this;
+		}
+
+		/**
+		 * 单独设置某个主机或者路由同时执行的最大请求数，例如给图片服务器设置更小的限制，路由的限制优先于主机的限制
+		 * @param hostOrRoute 主机（例如img.example.com）或者路由（例如https://img.example.com:443，必须带端口）
+		 * @param maxRequests 最大请求数
+		 */
+		public Builder setHostLimit(String hostOrRoute, int maxRequests) {
+			configuration.setHostLimit(hostOrRoute, maxRequests);
+			return this;
+		}
+
+		/**
+		 * 设置自适应并发限制，设置后没有单独设置限制的主机会根据往返时间以及错误自动调整同时执行的最大请求数，maxRequestsPerHost不再起作用，默认为null不使用
+		 * <br>限制再大也不会超过线程数量（也就是maxConnections），想要更大的并发的话需要同时调大maxConnections
+		 * @param adaptiveLimiter
+		 */
+		public Builder setAdaptiveLimiter(AdaptiveLimiter adaptiveLimiter) {
+			configuration.setAdaptiveLimiter(adaptiveLimiter);
+			return this;
+		}
+
+		/**
+		 * 设置是否合并相同的Get请求，默认为false；开启后执行中再次发起相同的Get请求（请求地址、缓存配置以及请求头都相同）的话不会再访问网络，而是等待正在执行的请求并共享其结果，相同类型的处理器只解析一次响应体，注意此时多个处理器收到的是同一个解析结果对象，请不要修改它
+		 * @param requestCoalescing
+		 */
+		public Builder setRequestCoalescing(boolean requestCoalescing) {
+			configuration.setRequestCoalescing(requestCoalescing);
+			return this;
+		}
+
 		/**
 		 * 设置是否开启调试模式，开启调试模式后会在控制台输出LOG
 		 * @param debugMode 
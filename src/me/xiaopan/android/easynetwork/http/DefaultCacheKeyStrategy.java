@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 默认的缓存KEY策略，会先规范化请求地址：协议和主机名转成小写、去掉默认端口以及锚点
+ * <br>另外还可以忽略指定的参数（例如时间戳、随机数这种每次请求都不一样的参数）、将参数按名字排序，以及把指定的请求头（相当于Vary）加入KEY中
+ * <br>值得注意的是你必须通过其Builder来创建DefaultCacheKeyStrategy
+ */
+public class DefaultCacheKeyStrategy implements CacheKeyStrategy {
+    private static final Comparator<String> PARAM_NAME_COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(String lhs, String rhs) {
+            return getParamName(lhs).compareTo(getParamName(rhs));
+        }
+    };
+
+    private Set<String> ignoredParams;  //忽略的参数名
+    private boolean sortParams; //是否将参数按名字排序
+    private String[] varyHeaders;   //需要加入KEY中的请求头名
+
+    private DefaultCacheKeyStrategy(){}
+
+    @Override
+    public String getCacheKey(HttpUriRequest request) {
+        URI uri = request.getURI();
+        StringBuilder builder = new StringBuilder(128);
+        if(uri.isOpaque() || uri.getRawAuthority() == null){
+            builder.append(uri.toString());
+            int fragmentIndex = builder.indexOf("#");
+            if(fragmentIndex != -1){
+                builder.setLength(fragmentIndex);
+            }
+        }else{
+            String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.US) : null;
+            if(scheme != null){
+                builder.append(scheme).append("://");
+            }else{
+                builder.append("//");
+            }
+            if(uri.getRawUserInfo() != null){
+                builder.append(uri.getRawUserInfo()).append('@');
+            }
+            if(uri.getHost() != null){
+                builder.append(uri.getHost().toLowerCase(Locale.US));
+                int port = uri.getPort();
+                if(port != -1 && !(port == 80 && "http".equals(scheme)) && !(port == 443 && "https".equals(scheme))){
+                    builder.append(':').append(port);
+                }
+            }else{
+                builder.append(uri.getRawAuthority());
+            }
+            String path = uri.getRawPath();
+            builder.append(path != null && path.length() > 0 ? path : "/");
+            appendQuery(builder, uri.getRawQuery());
+        }
+
+        if(varyHeaders != null){
+            for(String headerName : varyHeaders){
+                builder.append('\n').append(headerName.toLowerCase(Locale.US)).append(':');
+                Header[] headers = request.getHeaders(headerName);
+                for(int w = 0; w < headers.length; w++){
+                    if(w > 0){
+                        builder.append(',');
+                    }
+                    builder.append(headers[w].getValue());
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 追加查询参数，去掉忽略的参数，需要的话按名字排序，排序是稳定的，同名参数保持原来的顺序
+     */
+    private void appendQuery(StringBuilder builder, String rawQuery) {
+        if(rawQuery == null || rawQuery.length() == 0){
+            return;
+        }
+        if(ignoredParams == null && !sortParams){
+            builder.append('?').append(rawQuery);
+            return;
+        }
+
+        List<String> params = new ArrayList<String>();
+        for(String param : GeneralUtils.split(rawQuery, '&')){
+            if(param.length() > 0 && (ignoredParams == null || !ignoredParams.contains(getParamName(param)))){
+                params.add(param);
+            }
+        }
+        if(params.isEmpty()){
+            return;
+        }
+        if(sortParams){
+            Collections.sort(params, PARAM_NAME_COMPARATOR);
+        }
+        builder.append('?');
+        for(int w = 0; w < params.size(); w++){
+            if(w > 0){
+                builder.append('&');
+            }
+            builder.append(params.get(w));
+        }
+    }
+
+    /**
+     * 获取解码后的参数名
+     */
+    private static String getParamName(String param) {
+        int index = param.indexOf('=');
+        String name = index != -1 ? param.substring(0, index) : param;
+        if(name.indexOf('%') == -1 && name.indexOf('+') == -1){
+            return name;
+        }
+        try{
+            return URLDecoder.decode(name, "UTF-8");
+        }catch(UnsupportedEncodingException exception){
+            return name;
+        }catch(IllegalArgumentException exception){
+            return name;
+        }
+    }
+
+    /**
+     * 获取忽略的参数名
+     * @return 忽略的参数名，没有时为null
+     */
+    public Set<String> getIgnoredParams() {
+        return ignoredParams;
+    }
+
+    /**
+     * 是否将参数按名字排序
+     * @return
+     */
+    public boolean isSortParams() {
+        return sortParams;
+    }
+
+    /**
+     * 获取需要加入KEY中的请求头名
+     * @return 请求头名，没有时为null
+     */
+    public String[] getVaryHeaders() {
+        return varyHeaders;
+    }
+
+    /**
+     * DefaultCacheKeyStrategy构建器
+     */
+    public static class Builder{
+        private DefaultCacheKeyStrategy strategy;
+
+        public Builder() {
+            strategy = new DefaultCacheKeyStrategy();
+        }
+
+        /**
+         * 添加忽略的参数，例如时间戳、随机数这种每次请求都不一样、但不影响响应内容的参数
+         * @param paramNames 参数名
+         * @return
+         */
+        public Builder addIgnoredParams(String... paramNames) {
+            if(paramNames != null && paramNames.length > 0){
+                if(strategy.ignoredParams == null){
+                    strategy.ignoredParams = new HashSet<String>();
+                }
+                for(String paramName : paramNames){
+                    if(GeneralUtils.isNotEmpty(paramName)){
+                        strategy.ignoredParams.add(paramName);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 设置是否将参数按名字排序，开启后参数顺序不同的请求会共用同一个缓存
+         * @param sortParams
+         * @return
+         */
+        public Builder setSortParams(boolean sortParams) {
+            strategy.sortParams = sortParams;
+            return this;
+        }
+
+        /**
+         * 添加需要加入KEY中的请求头，例如Accept-Language，请求头不同的请求会使用不同的缓存
+         * @param headerNames 请求头名
+         * @return
+         */
+        public Builder addVaryHeaders(String... headerNames) {
+            if(headerNames != null && headerNames.length > 0){
+                List<String> names = new ArrayList<String>();
+                if(strategy.varyHeaders != null){
+                    names.addAll(Arrays.asList(strategy.varyHeaders));
+                }
+                for(String headerName : headerNames){
+                    if(GeneralUtils.isNotEmpty(headerName)){
+                        names.add(headerName);
+                    }
+                }
+                strategy.varyHeaders = names.toArray(new String[names.size()]);
+            }
+            return this;
+        }
+
+        /**
+         * 创建并返回DefaultCacheKeyStrategy
+         * @return
+         */
+        public DefaultCacheKeyStrategy create(){
+            return strategy;
+        }
+    }
+}
@@ -0,0 +1,904 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import me.xiaopan.android.easynetwork.http.enums.EvictionPolicy;
+
+/**
+ * 磁盘缓存，按照LRU（或者FIFO）算法管理缓存文件，同时限制缓存的总大小和总数量
+ * <br>缓存的每一次变化都会追加到日志文件中，启动的时候只需读取日志文件就能恢复缓存索引，而不用去检查每一个缓存文件
+ * <br>索引中保存了每个条目的大小、响应时间、过期时间以及最后访问时间，判断是否命中以及是否过期都不需要访问文件系统
+ * <br>超出限制时的清理工作会在单独的线程中进行，不会阻塞请求线程，多个线程同时使用也是安全的
+ * <br>每个条目只有一个缓存文件，文件格式见{@link CacheEntry}，旧版本留下的.entity和.headers文件无法换算成现在的缓存KEY，会在后台删除
+ * <br>编辑时先写临时文件，提交时再重命名为正式文件，编辑期间旧的缓存依然可以读取；开始编辑时会在日志中记录DIRTY，进程中途退出留下的临时文件会在下次打开时清除
+ * <br>索引中还保存了条目可以直接删除的时间，过期之后没有再被请求的条目由{@link CacheSweeper}分批清理
+ */
+public class DiskCache {
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String MAGIC = "me.xiaopan.android.easynetwork.DiskCache";
+    static final String VERSION = "3";
+    static final String ENTRY_FILE_SUFFIX = ".cache";
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+    static final String LEGACY_ENTITY_FILE_SUFFIX = ".entity";
+    static final String LEGACY_HEADERS_FILE_SUFFIX = ".headers";
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File directory;    //缓存目录
+    private final File journalFile;  //日志文件
+    private final File journalFileTemp;  //重建日志时使用的临时文件
+    private long maxSize;   //最大字节数
+    private int maxEntries; //最大条目数
+    private long size;  //当前字节数
+    private int redundantOpCount;   //日志中冗余的记录数，超过一定数量就重建日志
+    private Writer journalWriter;
+    private final EvictionPolicy evictionPolicy;    //淘汰策略
+    private final LinkedHashMap<String, Entry> lruEntries;  //缓存索引，按照淘汰顺序排列，最先淘汰的在最前面
+    private int hitCount;   //命中次数
+    private int missCount;  //未命中次数
+    private int evictionCount;  //因为超出限制而被淘汰的次数
+    private int sweepCount; //因为过期或者文件丢失而被清理的次数
+    private List<Entry> sweepEntries;   //本轮需要检查的条目，开始清理时从索引复制一份，分批检查
+    private int sweepPosition;  //本轮已经检查到的位置
+    private final ThreadPoolExecutor cleanupExecutor = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    private final Runnable cleanupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (DiskCache.this) {
+                if(journalWriter == null){
+                    return;
+                }
+                try{
+                    trimToSize();
+                    if(isJournalRebuildRequired()){
+                        rebuildJournal();
+                        redundantOpCount = 0;
+                    }
+                }catch(IOException exception){
+                    exception.printStackTrace();
+                }
+            }
+        }
+    };
+    private final Runnable deleteLegacyFilesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deleteLegacyFiles();
+        }
+    };
+
+    private DiskCache(File directory, long maxSize, int maxEntries, EvictionPolicy evictionPolicy) {
+        this.directory = directory;
+        this.evictionPolicy = evictionPolicy;
+        this.lruEntries = new LinkedHashMap<String, Entry>(0, 0.75f, evictionPolicy == EvictionPolicy.LRU);
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.journalFileTemp = new File(directory, JOURNAL_FILE_TEMP);
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 打开磁盘缓存，如果日志文件存在就从日志中恢复缓存索引，否则就扫描一次缓存目录来重建索引
+     * @param directory 缓存目录
+     * @param maxSize 最大字节数
+     * @param maxEntries 最大条目数
+     * @return 磁盘缓存
+     * @throws IOException 创建缓存目录或者写日志失败
+     */
+    public static DiskCache open(File directory, long maxSize, int maxEntries) throws IOException {
+        return open(directory, maxSize, maxEntries, EvictionPolicy.LRU);
+    }
+
+    /**
+     * 打开磁盘缓存，如果日志文件存在就从日志中恢复缓存索引，否则就扫描一次缓存目录来重建索引
+     * @param directory 缓存目录
+     * @param maxSize 最大字节数
+     * @param maxEntries 最大条目数
+     * @param evictionPolicy 淘汰策略
+     * @return 磁盘缓存
+     * @throws IOException 创建缓存目录或者写日志失败
+     */
+    public static DiskCache open(File directory, long maxSize, int maxEntries, EvictionPolicy evictionPolicy) throws IOException {
+        if(maxSize <= 0){
+            throw new IllegalArgumentException("maxSize 必须大于0");
+        }
+        if(maxEntries <= 0){
+            throw new IllegalArgumentException("maxEntries 必须大于0");
+        }
+        if(!directory.exists() && !directory.mkdirs()){
+            throw new IOException("创建缓存目录 " + directory.getPath() + " 失败");
+        }
+
+        DiskCache diskCache = new DiskCache(directory, maxSize, maxEntries, evictionPolicy != null ? evictionPolicy : EvictionPolicy.LRU);
+        diskCache.deleteTempFiles();
+        if(diskCache.journalFile.exists()){
+            try{
+                diskCache.readJournal();
+                diskCache.journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(diskCache.journalFile, true), "US-ASCII"));
+                return diskCache;
+            }catch(IOException exception){
+                exception.printStackTrace();
+                diskCache.lruEntries.clear();
+                diskCache.size = 0;
+            }
+        }
+
+        boolean hasLegacyFiles = diskCache.rebuildFromDirectory();
+        diskCache.rebuildJournal();
+        if(hasLegacyFiles){
+            diskCache.cleanupExecutor.execute(diskCache.deleteLegacyFilesRunnable);
+        }
+        return diskCache;
+    }
+
+    /**
+     * 删除上次没有提交或放弃就中断的编辑留下的临时文件，这些编辑在日志中只有DIRTY记录，对应的旧缓存（如果有的话）依然完整
+     */
+    private void deleteTempFiles() {
+        File[] files = directory.listFiles();
+        if(files == null){
+            return;
+        }
+        for(File file : files){
+            if(file.isFile() && file.getName().endsWith(TEMP_FILE_SUFFIX)){
+                deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * 读取日志文件，恢复缓存索引
+     */
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "US-ASCII"));
+        try{
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            if(!MAGIC.equals(magic) || !VERSION.equals(version)){
+                throw new IOException("日志头异常：" + magic + ", " + version);
+            }
+
+            int lineCount = 0;
+            String line;
+            while((line = reader.readLine()) != null){
+                readJournalLine(line);
+                lineCount++;
+            }
+            redundantOpCount = lineCount - lruEntries.size();
+        }finally{
+            reader.close();
+        }
+    }
+
+    /**
+     * 解析一行日志
+     */
+    private void readJournalLine(String line) throws IOException {
+        String[] parts = GeneralUtils.split(line, ' ');
+        if(parts.length < 2){
+            throw new IOException("无法解析的日志：" + line);
+        }
+
+        String key = parts[1];
+        if(REMOVE.equals(parts[0]) && parts.length == 2){
+            Entry entry = lruEntries.remove(key);
+            if(entry != null){
+                size -= entry.length;
+            }
+        }else if(CLEAN.equals(parts[0]) && (parts.length == 6 || parts.length == 7)){
+            Entry entry = lruEntries.get(key);
+            if(entry == null){
+                entry = new Entry(key);
+                lruEntries.put(key, entry);
+            }else{
+                size -= entry.length;
+            }
+            try{
+                entry.length = Long.parseLong(parts[2]);
+                entry.responseTime = Long.parseLong(parts[3]);
+                entry.expiresAt = Long.parseLong(parts[4]);
+                entry.lastAccessTime = Long.parseLong(parts[5]);
+                entry.discardAt = parts.length == 7 ? Long.parseLong(parts[6]) : -1;
+                entry.readable = true;
+            }catch(NumberFormatException exception){
+                throw new IOException("无法解析的日志：" + line);
+            }
+            size += entry.length;
+        }else if(READ.equals(parts[0]) && parts.length == 3){
+            Entry entry = lruEntries.get(key);
+            if(entry != null){
+                try{
+                    entry.lastAccessTime = Long.parseLong(parts[2]);
+                }catch(NumberFormatException exception){
+                    throw new IOException("无法解析的日志：" + line);
+                }
+            }
+        }else if(DIRTY.equals(parts[0]) && parts.length == 2){
+            lruEntries.get(key);
+        }else{
+            throw new IOException("无法解析的日志：" + line);
+        }
+    }
+
+    /**
+     * 在没有日志文件或者日志版本不对的时候扫描缓存目录重建索引，此时只知道文件大小，响应时间和过期时间要等到下次读取或写入时才知道
+     * @return 是否存在旧版本的缓存文件需要删除
+     */
+    private boolean rebuildFromDirectory() {
+        File[] files = directory.listFiles();
+        if(files == null){
+            return false;
+        }
+
+        boolean hasLegacyFiles = false;
+        for(File file : files){
+            String fileName = file.getName();
+            if(!file.isFile()){
+                continue;
+            }
+            if(fileName.endsWith(ENTRY_FILE_SUFFIX)){
+                Entry entry = new Entry(fileName.substring(0, fileName.length() - ENTRY_FILE_SUFFIX.length()));
+                entry.length = file.length();
+                entry.readable = true;
+                lruEntries.put(entry.key, entry);
+                size += entry.length;
+            }else if(fileName.endsWith(LEGACY_ENTITY_FILE_SUFFIX) || fileName.endsWith(LEGACY_HEADERS_FILE_SUFFIX)){
+                hasLegacyFiles = true;
+            }
+        }
+        return hasLegacyFiles;
+    }
+
+    /**
+     * 删除旧版本留下的.entity和.headers文件
+     * <br>旧版本的文件名是URL的MD5，文件中也没有保存URL，无法换算成现在的缓存KEY，转换过来也永远不会被命中，所以直接删除
+     */
+    private void deleteLegacyFiles() {
+        File[] files = directory.listFiles();
+        if(files == null){
+            return;
+        }
+        for(File file : files){
+            String fileName = file.getName();
+            if(file.isFile() && (fileName.endsWith(LEGACY_ENTITY_FILE_SUFFIX) || fileName.endsWith(LEGACY_HEADERS_FILE_SUFFIX))){
+                deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * 重建日志文件，只保留当前每个条目的最新状态
+     */
+    private synchronized void rebuildJournal() throws IOException {
+        if(journalWriter != null){
+            journalWriter.close();
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTemp), "US-ASCII"));
+        try{
+            writer.write(MAGIC);
+            writer.write("\n");
+            writer.write(VERSION);
+            writer.write("\n");
+            for(Entry entry : lruEntries.values()){
+                if(entry.readable){
+                    writer.write(getCleanLine(entry));
+                }
+                if(entry.currentEditor != null){
+                    writer.write(DIRTY + ' ' + entry.key + '\n');
+                }
+            }
+        }finally{
+            writer.close();
+        }
+
+        if(journalFile.exists() && !journalFile.delete()){
+            throw new IOException("删除旧的日志文件失败");
+        }
+        if(!journalFileTemp.renameTo(journalFile)){
+            throw new IOException("重命名日志文件失败");
+        }
+        journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "US-ASCII"));
+    }
+
+    /**
+     * 获取缓存条目，同时会将此条目标记为最近使用，正在编辑的条目依然可以读取到编辑前的版本
+     * @param key 缓存KEY
+     * @return 缓存条目，null：不存在或者还没有提交过
+     */
+    public synchronized Entry get(String key) {
+        checkNotClosed();
+        Entry entry = lruEntries.get(key);
+        if(entry == null || !entry.readable){
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        entry.lastAccessTime = System.currentTimeMillis();
+
+        redundantOpCount++;
+        try{
+            journalWriter.append(READ + ' ' + key + ' ' + entry.lastAccessTime + '\n');
+        }catch(IOException exception){
+            exception.printStackTrace();
+        }
+        if(isJournalRebuildRequired()){
+            cleanupExecutor.execute(cleanupRunnable);
+        }
+        return entry;
+    }
+
+    /**
+     * 编辑缓存条目，编辑器写的是临时文件，提交之前不影响读取旧的版本
+     * @param key 缓存KEY
+     * @return 编辑器，null：此条目正在被别的线程编辑
+     */
+    public synchronized Editor edit(String key) {
+        checkNotClosed();
+        Entry entry = lruEntries.get(key);
+        if(entry == null){
+            entry = new Entry(key);
+            lruEntries.put(key, entry);
+        }else if(entry.currentEditor != null){
+            return null;
+        }
+
+        Editor editor = new Editor(entry);
+        entry.currentEditor = editor;
+        try{
+            journalWriter.write(DIRTY + ' ' + key + '\n');
+            journalWriter.flush();
+        }catch(IOException exception){
+            exception.printStackTrace();
+        }
+        return editor;
+    }
+
+    /**
+     * 完成编辑
+     * @param editor 编辑器
+     * @param success true：提交；false：放弃
+     */
+    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+        Entry entry = editor.entry;
+        if(entry.currentEditor != editor){
+            throw new IllegalStateException("编辑器已经失效");
+        }
+        entry.currentEditor = null;
+
+        if(journalWriter == null){
+            return;
+        }
+
+        /* 提交时将临时文件重命名为正式文件，正在读取旧文件的请求不受影响；放弃时只删除临时文件，旧的版本保持不变 */
+        File tempFile = entry.getTempFile();
+        long newLength = tempFile.length();
+        if(success && tempFile.exists() && tempFile.renameTo(entry.getFile())){
+            size = size - entry.length + newLength;
+            entry.length = newLength;
+            entry.responseTime = editor.responseTime;
+            entry.expiresAt = editor.expiresAt;
+            entry.discardAt = editor.discardAt;
+            entry.lastAccessTime = System.currentTimeMillis();
+            entry.readable = true;
+            redundantOpCount++;
+            journalWriter.write(getCleanLine(entry));
+        }else{
+            deleteIfExists(tempFile);
+            redundantOpCount++;
+            if(entry.readable){
+                journalWriter.write(getCleanLine(entry));
+            }else{
+                lruEntries.remove(entry.key);
+                journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+            }
+        }
+        journalWriter.flush();
+
+        if(size > maxSize || lruEntries.size() > maxEntries || isJournalRebuildRequired()){
+            cleanupExecutor.execute(cleanupRunnable);
+        }
+    }
+
+    private static String getCleanLine(Entry entry) {
+        return CLEAN + ' ' + entry.key + ' ' + entry.length + ' ' + entry.responseTime + ' ' + entry.expiresAt + ' ' + entry.lastAccessTime + ' ' + entry.discardAt + '\n';
+    }
+
+    /**
+     * 删除缓存条目，正在编辑的条目不能删除
+     * @param key 缓存KEY
+     * @return 是否删除成功
+     */
+    public synchronized boolean remove(String key) {
+        checkNotClosed();
+        Entry entry = lruEntries.get(key);
+        if(entry == null || entry.currentEditor != null){
+            return false;
+        }
+
+        boolean deleted = deleteIfExists(entry.getFile());
+        size -= entry.length;
+        entry.readable = false;
+        lruEntries.remove(key);
+        redundantOpCount++;
+        try{
+            journalWriter.append(REMOVE + ' ' + key + '\n');
+        }catch(IOException exception){
+            exception.printStackTrace();
+        }
+        if(isJournalRebuildRequired()){
+            cleanupExecutor.execute(cleanupRunnable);
+        }
+        return deleted;
+    }
+
+    /**
+     * 按照淘汰策略删除条目，直到总大小和总数量都不超过限制
+     */
+    private synchronized void trimToSize() {
+        trimToSize(maxSize, maxEntries);
+    }
+
+    /**
+     * 按照淘汰策略删除条目，直到总字节数不超过给定的大小，存储空间紧张的时候可以用来单独清理某个缓存
+     * @param targetSize 给定的大小
+     */
+    public synchronized void trimToSize(long targetSize) {
+        checkNotClosed();
+        trimToSize(targetSize, maxEntries);
+    }
+
+    private synchronized void trimToSize(long targetSize, int targetEntries) {
+        if(size <= targetSize && lruEntries.size() <= targetEntries){
+            return;
+        }
+
+        List<String> evictKeys = new ArrayList<String>();
+        long newSize = size;
+        int newCount = lruEntries.size();
+        Iterator<Map.Entry<String, Entry>> iterator = lruEntries.entrySet().iterator();
+        while((newSize > targetSize || newCount > targetEntries) && iterator.hasNext()){
+            Entry entry = iterator.next().getValue();
+            if(entry.currentEditor == null){
+                evictKeys.add(entry.key);
+                newSize -= entry.length;
+                newCount--;
+            }
+        }
+        for(String key : evictKeys){
+            if(remove(key)){
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * 开始新一轮清理，复制一份当前的索引留给{@link #sweep(long, int)}分批检查，同时删除目录中不在索引里的孤立文件
+     */
+    synchronized void beginSweep() {
+        checkNotClosed();
+        sweepEntries = new ArrayList<Entry>(lruEntries.values());
+        sweepPosition = 0;
+
+        File[] files = directory.listFiles();
+        if(files == null){
+            return;
+        }
+        /* lruEntries按访问顺序排列时get()会改变LRU顺序，所以复制一份普通的HashMap来查找 */
+        Map<String, Entry> entries = new HashMap<String, Entry>(lruEntries);
+        for(File file : files){
+            String fileName = file.getName();
+            if(!file.isFile()){
+                continue;
+            }
+            String key;
+            if(fileName.endsWith(ENTRY_FILE_SUFFIX + TEMP_FILE_SUFFIX)){
+                key = fileName.substring(0, fileName.length() - ENTRY_FILE_SUFFIX.length() - TEMP_FILE_SUFFIX.length());
+                Entry entry = entries.get(key);
+                if(entry == null || entry.currentEditor == null){
+                    deleteIfExists(file);
+                }
+            }else if(fileName.endsWith(ENTRY_FILE_SUFFIX)){
+                key = fileName.substring(0, fileName.length() - ENTRY_FILE_SUFFIX.length());
+                if(!entries.containsKey(key)){
+                    deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 检查下一批条目，删除已经到了可删除时间的以及缓存文件已经丢失的条目，正在编辑的跳过
+     * @param now 当前时间
+     * @param batchSize 本批最多检查的条目数
+     * @return 本轮是否还有没检查的条目
+     */
+    synchronized boolean sweep(long now, int batchSize) {
+        checkNotClosed();
+        if(sweepEntries == null){
+            return false;
+        }
+        int end = Math.min(sweepPosition + batchSize, sweepEntries.size());
+        for(; sweepPosition < end; sweepPosition++){
+            Entry entry = sweepEntries.get(sweepPosition);
+            /* 删除或者放弃之后entry就不可读了，同一个KEY之后再写入的是新的entry，所以这里不会误删 */
+            if(!entry.readable || entry.currentEditor != null){
+                continue;
+            }
+            if((entry.discardAt >= 0 && now >= entry.discardAt) || !entry.getFile().exists()){
+                remove(entry.key);
+                sweepCount++;
+            }
+        }
+        if(sweepPosition >= sweepEntries.size()){
+            sweepEntries = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 清空缓存，正在编辑的条目除外
+     */
+    public synchronized void clear() {
+        checkNotClosed();
+        for(Entry entry : new ArrayList<Entry>(lruEntries.values())){
+            if(entry.currentEditor == null){
+                remove(entry.key);
+            }
+        }
+    }
+
+    /**
+     * 判断是否需要重建日志，当冗余记录过多的时候就需要重建
+     */
+    private boolean isJournalRebuildRequired() {
+        return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= lruEntries.size();
+    }
+
+    /**
+     * 将日志写入磁盘
+     */
+    public synchronized void flush() throws IOException {
+        checkNotClosed();
+        trimToSize();
+        journalWriter.flush();
+    }
+
+    /**
+     * 关闭磁盘缓存，关闭后就不能再使用了
+     */
+    public synchronized void close() throws IOException {
+        if(journalWriter == null){
+            return;
+        }
+        for(Entry entry : new ArrayList<Entry>(lruEntries.values())){
+            if(entry.currentEditor != null){
+                entry.currentEditor.abort();
+            }
+        }
+        trimToSize();
+        journalWriter.close();
+        journalWriter = null;
+        cleanupExecutor.shutdown();
+    }
+
+    private void checkNotClosed() {
+        if(journalWriter == null){
+            throw new IllegalStateException("磁盘缓存已经关闭");
+        }
+    }
+
+    private static boolean deleteIfExists(File file) {
+        return !file.exists() || file.delete();
+    }
+
+    /**
+     * 获取缓存目录
+     * @return 缓存目录
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 获取当前的总字节数
+     * @return 当前的总字节数
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * 获取当前的条目数
+     * @return 当前的条目数
+     */
+    public synchronized int getEntryCount() {
+        return lruEntries.size();
+    }
+
+    /**
+     * 获取淘汰策略
+     * @return 淘汰策略
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * 获取命中次数
+     * @return 命中次数
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数
+     * @return 未命中次数
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取因为超出限制而被淘汰的次数
+     * @return 被淘汰的次数
+     */
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 获取因为过期或者缓存文件丢失而被清理的次数
+     * @return 被清理的次数
+     */
+    public synchronized int getSweepCount() {
+        return sweepCount;
+    }
+
+    /**
+     * 获取最大字节数
+     * @return 最大字节数
+     */
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 设置最大字节数，如果当前已经超出限制的话会在后台清理
+     * @param maxSize 最大字节数
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        cleanupExecutor.execute(cleanupRunnable);
+    }
+
+    /**
+     * 获取最大条目数
+     * @return 最大条目数
+     */
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * 设置最大条目数，如果当前已经超出限制的话会在后台清理
+     * @param maxEntries 最大条目数
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        cleanupExecutor.execute(cleanupRunnable);
+    }
+
+    /**
+     * 缓存条目
+     */
+    public final class Entry {
+        private final String key;   //缓存KEY
+        private final File file;    //缓存文件
+        private long length;    //缓存文件的字节数
+        private long responseTime = -1;  //响应时间，-1：未知
+        private long expiresAt = -1; //按照Http缓存语义计算出的过期时间，-1：未知
+        private long discardAt = -1; //可以直接删除的时间，-1：未知或者永远不会自动删除
+        private long lastAccessTime;    //最后访问时间
+        private boolean readable;   //是否已经提交过，提交过才能读取
+        private Editor currentEditor;   //当前的编辑器，不为null的时候说明正在被编辑
+
+        private Entry(String key) {
+            this.key = key;
+            this.file = new File(directory, key + ENTRY_FILE_SUFFIX);
+        }
+
+        /**
+         * 获取缓存KEY
+         * @return 缓存KEY
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 获取缓存文件，包含状态码、响应头以及响应体
+         * @return 缓存文件
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * 获取缓存文件的字节数
+         * @return 缓存文件的字节数
+         */
+        public long getLength() {
+            synchronized (DiskCache.this) {
+                return length;
+            }
+        }
+
+        /**
+         * 获取响应时间
+         * @return 响应时间，-1：未知（从目录重建索引之后还没有读取或写入过）
+         */
+        public long getResponseTime() {
+            synchronized (DiskCache.this) {
+                return responseTime;
+            }
+        }
+
+        /**
+         * 获取按照Http缓存语义计算出的过期时间
+         * @return 过期时间，-1：未知（从目录重建索引之后还没有读取或写入过）
+         */
+        public long getExpiresAt() {
+            synchronized (DiskCache.this) {
+                return expiresAt;
+            }
+        }
+
+        /**
+         * 获取可以直接删除的时间，到了这个时间缓存就不会再被使用了
+         * @return 可以直接删除的时间，-1：未知或者永远不会自动删除
+         */
+        public long getDiscardAt() {
+            synchronized (DiskCache.this) {
+                return discardAt;
+            }
+        }
+
+        /**
+         * 获取最后访问时间
+         * @return 最后访问时间
+         */
+        public long getLastAccessTime() {
+            synchronized (DiskCache.this) {
+                return lastAccessTime;
+            }
+        }
+
+        /**
+         * 获取编辑时使用的临时文件
+         * @return 临时文件
+         */
+        File getTempFile() {
+            return new File(directory, key + ENTRY_FILE_SUFFIX + TEMP_FILE_SUFFIX);
+        }
+    }
+
+    /**
+     * 缓存条目编辑器，写完文件后必须调用commit()或abort()
+     */
+    public final class Editor {
+        private final Entry entry;
+        private boolean done;
+        private long responseTime = -1;  //提交后的响应时间
+        private long expiresAt = -1; //提交后的过期时间
+        private long discardAt = -1; //提交后的可删除时间
+
+        private Editor(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * 获取要写入的临时文件，提交时会重命名为正式的缓存文件
+         * @return 临时文件
+         */
+        public File getFile() {
+            return entry.getTempFile();
+        }
+
+        /**
+         * 获取已经提交的缓存文件，用来在旧的版本上修改
+         * @return 已经提交的缓存文件，null：还没有提交过
+         */
+        public File getCleanFile() {
+            synchronized (DiskCache.this) {
+                return entry.readable ? entry.getFile() : null;
+            }
+        }
+
+        /**
+         * 设置要写入索引的响应时间和过期时间，提交时生效
+         * @param responseTime 响应时间，-1：未知
+         * @param expiresAt 按照Http缓存语义计算出的过期时间，-1：未知
+         */
+        public void setMetadata(long responseTime, long expiresAt) {
+            setMetadata(responseTime, expiresAt, -1);
+        }
+
+        /**
+         * 设置要写入索引的响应时间、过期时间以及可删除时间，提交时生效
+         * @param responseTime 响应时间，-1：未知
+         * @param expiresAt 按照Http缓存语义计算出的过期时间，-1：未知
+         * @param discardAt 可以直接删除的时间，到了这个时间缓存就不会再被使用了，后台清理时会删除，-1：永远不会自动删除
+         */
+        public void setMetadata(long responseTime, long expiresAt, long discardAt) {
+            synchronized (DiskCache.this) {
+                this.responseTime = responseTime;
+                this.expiresAt = expiresAt;
+                this.discardAt = discardAt;
+            }
+        }
+
+        /**
+         * 提交，临时文件会被重命名为正式的缓存文件，提交之后新的版本就可以读取了
+         * @throws IOException 写日志失败
+         */
+        public void commit() throws IOException {
+            if(!done){
+                done = true;
+                completeEdit(this, true);
+            }
+        }
+
+        /**
+         * 放弃，临时文件会被删除，旧的版本保持不变
+         */
+        public void abort() {
+            if(!done){
+                done = true;
+                try{
+                    completeEdit(this, false);
+                }catch(IOException exception){
+                    exception.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -15,15 +15,13 @@
  */
 package me.xiaopan.android.easynetwork.http;
 
-import java.lang.ref.WeakReference;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import me.xiaopan.android.easynetwork.http.annotation.Method;
 import me.xiaopan.android.easynetwork.http.enums.MethodType;
+import me.xiaopan.android.easynetwork.http.enums.Priority;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpDelete;
@@ -40,7 +38,7 @@ import android.util.Log;
  */
 public class EasyHttpClient {
 	private Configuration configuration;	//配置
-    private Map<Context, List<WeakReference<Future<?>>>> requestMap;	//请求Map
+    private final RequestRegistry requestRegistry = new RequestRegistry();	//请求登记处，请求结束后会自动移除
 	
 	/**
 	 * 实例持有器
@@ -64,17 +62,64 @@ public class EasyHttpClient {
      * @param httpRequest http请求对象
      * @param responseCache 响应缓存配置
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，可以用来取消请求或者设置标签
      */
-    public void execute(Context context, String name, HttpUriRequest httpRequest, ResponseCache responseCache, HttpResponseHandler httpResponseHandler) {
-        Future<?> request = getConfiguration().getThreadPool().submit(new HttpRequestRunnable(context, this, name, httpRequest, responseCache, httpResponseHandler));
-        if(context != null) {
-            List<WeakReference<Future<?>>> requestList = getRequestMap().get(context);
-            if(requestList == null) {
-                requestList = new LinkedList<WeakReference<Future<?>>>();
-                getRequestMap().put(context, requestList);
-            }
-            requestList.add(new WeakReference<Future<?>>(request));
+    public RequestHandle execute(Context context, String name, HttpUriRequest httpRequest, ResponseCache responseCache, HttpResponseHandler httpResponseHandler) {
+        return execute(context, name, httpRequest, responseCache, Priority.NORMAL, httpResponseHandler);
+    }
+
+    /**
+     * 执行请求
+     * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
+     * @param name 请求名称，在后台输出log的时候会输出此名称方便区分请求
+     * @param httpRequest http请求对象
+     * @param responseCache 响应缓存配置
+     * @param priority 优先级，优先级高的请求先执行，相同优先级的按提交的顺序执行，为null时使用NORMAL
+     * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，可以用来取消请求或者设置标签
+     */
+    public RequestHandle execute(Context context, String name, HttpUriRequest httpRequest, ResponseCache responseCache, Priority priority, HttpResponseHandler httpResponseHandler) {
+        return execute(context, name, httpRequest, responseCache, priority, false, null, httpResponseHandler);
+    }
+
+    /**
+     * 执行请求
+     * @param context Android上下文
+     * @param name 请求名称
+     * @param httpRequest http请求对象
+     * @param responseCache 响应缓存配置
+     * @param priority 优先级
+     * @param latencyCritical 是否是延迟敏感的请求，只对Get请求有效
+     * @param rateLimit 限流配置
+     * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄
+     */
+    private RequestHandle execute(Context context, String name, HttpUriRequest httpRequest, ResponseCache responseCache, Priority priority, boolean latencyCritical, RateLimit rateLimit, HttpResponseHandler httpResponseHandler) {
+        HttpRequestRunnable httpRequestRunnable = new HttpRequestRunnable(context, this, name, httpRequest, responseCache, httpResponseHandler);
+        httpRequestRunnable.setPriority(priority);
+        httpRequestRunnable.setLatencyCritical(latencyCritical);
+        httpRequestRunnable.setRateLimit(rateLimit);
+        return submit(context, getConfiguration().getThreadPool(), httpRequestRunnable, httpRequestRunnable);
+    }
+
+    /**
+     * 登记请求并提交到线程池，请求结束后会自动从登记处中移除
+     * @param context Android上下文
+     * @param executorService 线程池
+     * @param httpRequestRunnable 请求
+     * @param task 真正提交到线程池的任务
+     * @return 请求句柄
+     */
+    private RequestHandle submit(Context context, ExecutorService executorService, HttpRequestRunnable httpRequestRunnable, Runnable task) {
+        RequestHandle requestHandle = new RequestHandle(requestRegistry, context, httpRequestRunnable);
+        requestRegistry.register(requestHandle);
+        try{
+            requestHandle.setFuture(executorService.submit(task));
+        }catch(RejectedExecutionException exception){
+            requestHandle.finish();
+            throw exception;
         }
+        return requestHandle;
     }
 
     /**
@@ -82,9 +127,10 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param httpRequest http请求对象
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，可以用来取消请求或者设置标签
      */
-    public void execute(Context context, HttpUriRequest httpRequest, HttpResponseHandler httpResponseHandler) {
-        execute(context, null, httpRequest, null, httpResponseHandler);
+    public RequestHandle execute(Context context, HttpUriRequest httpRequest, HttpResponseHandler httpResponseHandler) {
+        return execute(context, null, httpRequest, null, httpResponseHandler);
     }
 
     /**
@@ -92,25 +138,22 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param request 请求对象，将通过请求对象来解析出一个Http请求
      * @param httpResponseHandler http响应处理器
+     * @return 请求句柄，request为null或者url为空时返回null
      */
-    public void execute(Context context, Request request, HttpResponseHandler httpResponseHandler){
+    public RequestHandle execute(Context context, Request request, HttpResponseHandler httpResponseHandler){
         if(request != null){
             /* 解析请求方式 */
-            MethodType methodType = MethodType.GET;
-            Method method = request.getClass().getAnnotation(Method.class);
-            if(method != null){
-                methodType = method.value();
-            }
+            MethodType methodType = parseMethodType(request);
 
             //根据不同的请求方式选择不同的方法执行
             if(methodType == MethodType.GET){
-                get(context, new HttpGetRequest.Builder(request).create(), httpResponseHandler);
+                return get(context, new HttpGetRequest.Builder(request).create(), httpResponseHandler);
             }else if(methodType == MethodType.POST){
-                post(context, new HttpPostRequest.Builder(request).create(), httpResponseHandler);
+                return post(context, new HttpPostRequest.Builder(request).create(), httpResponseHandler);
             }else if(methodType == MethodType.PUT){
-                put(context, new HttpPutRequest.Builder(request).create(), httpResponseHandler);
+                return put(context, new HttpPutRequest.Builder(request).create(), httpResponseHandler);
             }else if(methodType == MethodType.DELETE){
-                delete(context, new HttpDeleteRequest.Builder(request).create(), httpResponseHandler);
+                return delete(context, new HttpDeleteRequest.Builder(request).create(), httpResponseHandler);
             }
         }else{
             IllegalArgumentException illegalArgumentException = new IllegalArgumentException("request 不能为null");
@@ -119,6 +162,7 @@ public class EasyHttpClient {
                 httpResponseHandler.exception(getConfiguration().getHandler(), illegalArgumentException);
             }
         }
+        return null;
     }
 	
     /**
@@ -126,12 +170,13 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param httpRequest Http Get请求
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void get(Context context, HttpGetRequest httpRequest, HttpResponseHandler httpResponseHandler) {
+    public RequestHandle get(Context context, HttpGetRequest httpRequest, HttpResponseHandler httpResponseHandler) {
         if(GeneralUtils.isNotEmpty(httpRequest.getUrl())){
             HttpGet httGet = new HttpGet(HttpUtils.getUrlByParams(httpRequest.getUrl(), httpRequest.getParams()));
             HttpUtils.appendHeaders(httGet, httpRequest.getHeaders());
-            execute(context, httpRequest.getName(), httGet, httpRequest.getResponseCache(), httpResponseHandler);
+            return execute(context, httpRequest.getName(), httGet, httpRequest.getResponseCache(), httpRequest.getPriority(), httpRequest.isLatencyCritical(), httpRequest.getRateLimit(), httpResponseHandler);
         }else{
             IllegalArgumentException illegalArgumentException = new IllegalArgumentException("url不能为空");
             illegalArgumentException.printStackTrace();
@@ -139,6 +184,7 @@ public class EasyHttpClient {
                 httpResponseHandler.exception(getConfiguration().getHandler(), illegalArgumentException);
             }
         }
+        return null;
     }
 
     /**
@@ -147,9 +193,10 @@ public class EasyHttpClient {
      * @param url 请求地址
      * @param params 请求参数
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void get(Context context, String url, RequestParams params, HttpResponseHandler httpResponseHandler) {
-        get(context, new HttpGetRequest.Builder(url).setParams(params).create(), httpResponseHandler);
+    public RequestHandle get(Context context, String url, RequestParams params, HttpResponseHandler httpResponseHandler) {
+        return get(context, new HttpGetRequest.Builder(url).setParams(params).create(), httpResponseHandler);
     }
 
     /**
@@ -157,9 +204,10 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param url 请求地址
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void get(Context context, String url, HttpResponseHandler httpResponseHandler) {
-        get(context, new HttpGetRequest.Builder(url).create(), httpResponseHandler);
+    public RequestHandle get(Context context, String url, HttpResponseHandler httpResponseHandler) {
+        return get(context, new HttpGetRequest.Builder(url).create(), httpResponseHandler);
     }
     
     /**
@@ -167,8 +215,9 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param httpRequest Http Post请求
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void post(Context context, HttpPostRequest httpRequest, HttpResponseHandler httpResponseHandler){
+    public RequestHandle post(Context context, HttpPostRequest httpRequest, HttpResponseHandler httpResponseHandler){
         if(GeneralUtils.isNotEmpty(httpRequest.getUrl())){
             HttpPost httPost = new HttpPost(httpRequest.getUrl());
             HttpUtils.appendHeaders(httPost, httpRequest.getHeaders());
@@ -184,7 +233,7 @@ public class EasyHttpClient {
                 httPost.setEntity(httpEntity);
             }
 
-            execute(context, httpRequest.getName(), httPost, httpRequest.getResponseCache(), httpResponseHandler);
+            return execute(context, httpRequest.getName(), httPost, httpRequest.getResponseCache(), httpRequest.getPriority(), false, httpRequest.getRateLimit(), httpResponseHandler);
         }else{
             IllegalArgumentException illegalArgumentException = new IllegalArgumentException("url不能为空");
             illegalArgumentException.printStackTrace();
@@ -192,6 +241,7 @@ public class EasyHttpClient {
                 httpResponseHandler.exception(getConfiguration().getHandler(), illegalArgumentException);
             }
         }
+        return null;
     }
 
     /**
@@ -200,9 +250,10 @@ public class EasyHttpClient {
      * @param url 请求地址
      * @param params 请求参数
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void post(Context context, String url, RequestParams params, HttpResponseHandler httpResponseHandler) {
-    	post(context, new HttpPostRequest.Builder(url).setParams(params).create(), httpResponseHandler);
+    public RequestHandle post(Context context, String url, RequestParams params, HttpResponseHandler httpResponseHandler) {
+    	return post(context, new HttpPostRequest.Builder(url).setParams(params).create(), httpResponseHandler);
     }
 
     /**
@@ -210,9 +261,10 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param url 请求地址
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void post(Context context, String url, HttpResponseHandler httpResponseHandler) {
-    	post(context, new HttpPostRequest.Builder(url).create(), httpResponseHandler);
+    public RequestHandle post(Context context, String url, HttpResponseHandler httpResponseHandler) {
+    	return post(context, new HttpPostRequest.Builder(url).create(), httpResponseHandler);
     }
 
     /**
@@ -220,8 +272,9 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param httpRequest Http Put请求
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void put(Context context, HttpPutRequest httpRequest, HttpResponseHandler httpResponseHandler){
+    public RequestHandle put(Context context, HttpPutRequest httpRequest, HttpResponseHandler httpResponseHandler){
         if(GeneralUtils.isNotEmpty(httpRequest.getUrl())){
             HttpPut httPut = new HttpPut(httpRequest.getUrl());
             HttpUtils.appendHeaders(httPut, httpRequest.getHeaders());
@@ -237,7 +290,7 @@ public class EasyHttpClient {
                 httPut.setEntity(httpEntity);
             }
 
-            execute(context, httpRequest.getName(), httPut, httpRequest.getResponseCache(), httpResponseHandler);
+            return execute(context, httpRequest.getName(), httPut, httpRequest.getResponseCache(), httpRequest.getPriority(), false, httpRequest.getRateLimit(), httpResponseHandler);
         }else{
             IllegalArgumentException illegalArgumentException = new IllegalArgumentException("url不能为空");
             illegalArgumentException.printStackTrace();
@@ -245,6 +298,7 @@ public class EasyHttpClient {
                 httpResponseHandler.exception(getConfiguration().getHandler(), illegalArgumentException);
             }
         }
+        return null;
     }
 
     /**
@@ -253,9 +307,10 @@ public class EasyHttpClient {
      * @param url 请求地址
      * @param params 请求参数
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void put(Context context, String url, RequestParams params, HttpResponseHandler httpResponseHandler) {
-    	put(context, new HttpPutRequest.Builder(url).setParams(params).create(), httpResponseHandler);
+    public RequestHandle put(Context context, String url, RequestParams params, HttpResponseHandler httpResponseHandler) {
+    	return put(context, new HttpPutRequest.Builder(url).setParams(params).create(), httpResponseHandler);
     }
 
     /**
@@ -263,9 +318,10 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param url 请求地址
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void put(Context context, String url, HttpResponseHandler httpResponseHandler) {
-    	put(context, new HttpPutRequest.Builder(url).create(), httpResponseHandler);
+    public RequestHandle put(Context context, String url, HttpResponseHandler httpResponseHandler) {
+    	return put(context, new HttpPutRequest.Builder(url).create(), httpResponseHandler);
     }
 
     /**
@@ -273,12 +329,13 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param httpRequest Http Delete请求
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void delete(Context context, HttpDeleteRequest httpRequest, HttpResponseHandler httpResponseHandler) {
+    public RequestHandle delete(Context context, HttpDeleteRequest httpRequest, HttpResponseHandler httpResponseHandler) {
         if(GeneralUtils.isNotEmpty(httpRequest.getUrl())){
             HttpDelete httDelete = new HttpDelete(httpRequest.getUrl());
             HttpUtils.appendHeaders(httDelete, httpRequest.getHeaders());
-            execute(context, httpRequest.getName(), httDelete, httpRequest.getResponseCache(), httpResponseHandler);
+            return execute(context, httpRequest.getName(), httDelete, httpRequest.getResponseCache(), httpRequest.getPriority(), false, httpRequest.getRateLimit(), httpResponseHandler);
         }else{
             IllegalArgumentException illegalArgumentException = new IllegalArgumentException("你必须指定url。你有两种方式来指定url，一是使用HttpGetRequest.Builder.setUrl()，而是在Request上使有Url注解或者Host加Path注解");
             illegalArgumentException.printStackTrace();
@@ -286,6 +343,7 @@ public class EasyHttpClient {
                 httpResponseHandler.exception(getConfiguration().getHandler(), illegalArgumentException);
             }
         }
+        return null;
     }
 
     /**
@@ -293,28 +351,137 @@ public class EasyHttpClient {
      * @param context Android上下文，稍后你可以通过此上下文来取消此次请求
      * @param url 请求地址
      * @param httpResponseHandler Http响应处理器
+     * @return 请求句柄，url为空时返回null
      */
-    public void delete(Context context, String url, HttpResponseHandler httpResponseHandler) {
-        delete(context, new HttpDeleteRequest.Builder(url).create(), httpResponseHandler);
+    public RequestHandle delete(Context context, String url, HttpResponseHandler httpResponseHandler) {
+        return delete(context, new HttpDeleteRequest.Builder(url).create(), httpResponseHandler);
     }
 
     /**
-     * 取消所有的请求，请求如果尚未开始就不再执行，如果已经开始就尝试中断
-     * <br>你可以在Activity Destory的时候调用此方法来抛弃跟当前Activity相关的所有请求
-     * @param context 上下文
-     * @param mayInterruptIfRunning 如果有请求正在运行中的话是否尝试中断
+     * 预取，在低优先级的预取线程池中执行一批Get请求来填充缓存，不会回调任何响应处理器，适合在应用启动时预先加载首屏需要的数据
+     * <br>每个请求开始之前都会先等待前台请求结束，把网络让给用户正在等待的请求；缓存中已有并且没有过期的不会重复下载
+     * <br>没有响应缓存配置的请求无法预取，直接算作失败；可以通过cancelRequests()取消尚未开始的预取请求
+     * @param context Android上下文，稍后你可以通过此上下文来取消预取
+     * @param httpGetRequests Get请求列表
+     * @param prefetchListener 预取监听器，用来获取进度以及下载的字节数，可以为null
+     */
+    public void prefetch(Context context, List<HttpGetRequest> httpGetRequests, PrefetchListener prefetchListener) {
+        prefetch(context, httpGetRequests.toArray(), prefetchListener);
+    }
+
+    /**
+     * 预取，在低优先级的预取线程池中执行一批请求来填充缓存，不会回调任何响应处理器，只支持请求方式为GET的请求，其它的直接算作失败
+     * @param context Android上下文，稍后你可以通过此上下文来取消预取
+     * @param requests 请求对象列表
+     * @param prefetchListener 预取监听器，用来获取进度以及下载的字节数，可以为null
+     * @see #prefetch(Context, List, PrefetchListener)
+     */
+    public void prefetchRequests(Context context, List<? extends Request> requests, PrefetchListener prefetchListener) {
+        prefetch(context, requests.toArray(), prefetchListener);
+    }
+
+    /**
+     * 预取
+     * @param context Android上下文
+     * @param requests 请求列表，可以是HttpGetRequest或者Request
+     * @param prefetchListener 预取监听器
      */
-    public void cancelRequests(Context context, boolean mayInterruptIfRunning) {
-        List<WeakReference<Future<?>>> requestList = getRequestMap().get(context);
-        if(requestList != null) {
-            for(WeakReference<Future<?>> requestRef : requestList) {
-                Future<?> requestFuture = requestRef.get();
-                if(requestFuture != null) {
-                    requestFuture.cancel(mayInterruptIfRunning);
+    private void prefetch(Context context, Object[] requests, final PrefetchListener prefetchListener) {
+        if(requests.length == 0){
+            if(prefetchListener != null){
+                getConfiguration().getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        prefetchListener.onComplete(0, 0, 0);
+                    }
+                });
+            }
+            return;
+        }
+
+        PrefetchBatch prefetchBatch = new PrefetchBatch(context, this, requests.length, prefetchListener);
+        for(Object object : requests){
+            HttpGetRequest httpGetRequest;
+            if(object instanceof Request){
+                if(parseMethodType((Request) object) != MethodType.GET){
+                    prefetchBatch.fail(object.getClass().getSimpleName(), new IllegalArgumentException("预取只支持GET请求"));
+                    continue;
                 }
+                httpGetRequest = new HttpGetRequest.Builder((Request) object).create();
+            }else{
+                httpGetRequest = (HttpGetRequest) object;
+            }
+
+            if(httpGetRequest == null || !GeneralUtils.isNotEmpty(httpGetRequest.getUrl())){
+                prefetchBatch.fail(null, new IllegalArgumentException("url不能为空"));
+                continue;
+            }
+            if(httpGetRequest.getResponseCache() == null){
+                prefetchBatch.fail(httpGetRequest.getName(), new IllegalArgumentException("没有响应缓存配置，无法预取"));
+                continue;
+            }
+            HttpGet httGet = new HttpGet(HttpUtils.getUrlByParams(httpGetRequest.getUrl(), httpGetRequest.getParams()));
+            HttpUtils.appendHeaders(httGet, httpGetRequest.getHeaders());
+            HttpRequestRunnable httpRequestRunnable = prefetchBatch.createRequest(httpGetRequest.getName(), httGet, httpGetRequest.getResponseCache());
+            try{
+                submit(context, getConfiguration().getPrefetchThreadPool(), httpRequestRunnable, prefetchBatch.createTask(httpRequestRunnable));
+            }catch(RejectedExecutionException exception){
+                prefetchBatch.fail(httpGetRequest.getName(), exception);
             }
         }
-        getRequestMap().remove(context);
+    }
+
+    /**
+     * 解析请求方式，默认为GET
+     * @param request 请求对象
+     * @return 请求方式
+     */
+    private static MethodType parseMethodType(Request request) {
+        Method method = request.getClass().getAnnotation(Method.class);
+        return method != null ? method.value() : MethodType.GET;
+    }
+
+    /**
+     * 取消跟指定上下文相关的所有请求，请求如果尚未开始就不再执行，如果已经开始就中断网络请求，并且都不会再回调处理器
+     * <br>你可以在Activity Destory的时候调用此方法来抛弃跟当前Activity相关的所有请求
+     * @param context 上下文
+     * @param mayInterruptIfRunning 如果有请求正在运行中的话是否中断执行线程
+     * @return 取消的请求数量
+     */
+    public int cancelRequests(Context context, boolean mayInterruptIfRunning) {
+        return cancel(requestRegistry.takeByContext(context), mayInterruptIfRunning);
+    }
+
+    /**
+     * 取消所有标签相同（equals）的请求，标签通过RequestHandle.setTag()设置
+     * @param tag 标签
+     * @param mayInterruptIfRunning 如果有请求正在运行中的话是否中断执行线程
+     * @return 取消的请求数量
+     */
+    public int cancelRequestsByTag(Object tag, boolean mayInterruptIfRunning) {
+        return cancel(requestRegistry.takeByTag(tag), mayInterruptIfRunning);
+    }
+
+    /**
+     * 取消所有尚未结束的请求
+     * @param mayInterruptIfRunning 如果有请求正在运行中的话是否中断执行线程
+     * @return 取消的请求数量
+     */
+    public int cancelAllRequests(boolean mayInterruptIfRunning) {
+        return cancel(requestRegistry.takeAll(), mayInterruptIfRunning);
+    }
+
+    /**
+     * 取消请求
+     * @param requestHandles 已经从登记处中移除的请求
+     * @param mayInterruptIfRunning 如果有请求正在运行中的话是否中断执行线程
+     * @return 取消的请求数量
+     */
+    private int cancel(List<RequestHandle> requestHandles, boolean mayInterruptIfRunning) {
+        for(RequestHandle requestHandle : requestHandles){
+            requestHandle.cancel(mayInterruptIfRunning);
+        }
+        return requestHandles.size();
     }
 
     /**
@@ -335,11 +502,4 @@ public class EasyHttpClient {
 	public void setConfiguration(Configuration configuration) {
 		this.configuration = configuration;
 	}
-
-	private Map<Context, List<WeakReference<Future<?>>>> getRequestMap() {
-		if(requestMap == null){
-			requestMap = new WeakHashMap<Context, List<WeakReference<Future<?>>>>();
-		}
-		return requestMap;
-	}
 }
\ No newline at end of file
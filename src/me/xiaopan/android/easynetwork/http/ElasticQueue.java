@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可伸缩线程池的任务队列，核心线程数为0，有任务时按需创建线程直到最大线程数，空闲60秒后回收
+ * <br>allowCoreThreadTimeOut()是API 9才有的，不能用；而核心线程数为0的话ThreadPoolExecutor只有在队列满了的时候才会创建新线程，
+ * 所以在没有空闲线程并且还能创建线程的时候拒绝入队，让线程池去创建新线程，达到最大线程数之后再由ForceQueuePolicy强制入队
+ */
+class ElasticQueue extends LinkedBlockingQueue<Runnable> {
+    private static final long serialVersionUID = 1L;
+    private transient ThreadPoolExecutor executor;
+
+    /**
+     * 创建一个可伸缩的线程池
+     * @param maxThreads 最大线程数
+     * @param threadFactory 线程工厂
+     * @return 线程池
+     */
+    static ThreadPoolExecutor newThreadPool(int maxThreads, ThreadFactory threadFactory) {
+        ElasticQueue queue = new ElasticQueue();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, queue, threadFactory, new ForceQueuePolicy());
+        queue.executor = executor;
+        return executor;
+    }
+
+    /**
+     * 判断是否应该创建新线程而不是入队
+     * @param executor 线程池
+     * @param queuedCount 队列中已有的任务数
+     * @return 没有空闲线程并且还没有达到最大线程数
+     */
+    static boolean shouldAddThread(ThreadPoolExecutor executor, int queuedCount) {
+        if(executor == null){
+            return false;
+        }
+        int poolSize = executor.getPoolSize();
+        return poolSize < executor.getMaximumPoolSize() && executor.getActiveCount() + queuedCount >= poolSize;
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        return !shouldAddThread(executor, size()) && super.offer(runnable);
+    }
+
+    /**
+     * 不管有没有空闲线程都入队
+     * @param runnable 任务
+     */
+    void force(Runnable runnable) {
+        super.offer(runnable);
+    }
+
+    /**
+     * 线程数已经达到最大值时强制入队，线程池已关闭的话拒绝
+     */
+    static class ForceQueuePolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if(executor.isShutdown()){
+                throw new RejectedExecutionException("线程池已关闭");
+            }
+            if(executor.getQueue() instanceof ElasticQueue){
+                ((ElasticQueue) executor.getQueue()).force(runnable);
+            }else if(executor instanceof RequestDispatcher){
+                ((RequestDispatcher) executor).force(runnable);
+            }else{
+                throw new RejectedExecutionException();
+            }
+        }
+    }
+}
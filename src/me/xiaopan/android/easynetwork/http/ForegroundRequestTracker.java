@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+/**
+ * 前台请求计数器，记录正在执行的前台（非预取）请求数量，预取任务在开始之前会等待前台请求全部结束，把网络让给用户正在等待的请求
+ */
+class ForegroundRequestTracker {
+    private int activeCount;    //正在执行的前台请求数量
+
+    /**
+     * 前台请求开始
+     */
+    synchronized void begin() {
+        activeCount++;
+    }
+
+    /**
+     * 前台请求结束，没有前台请求了就唤醒等待的预取任务
+     */
+    synchronized void end() {
+        if(activeCount > 0){
+            activeCount--;
+        }
+        if(activeCount == 0){
+            notifyAll();
+        }
+    }
+
+    /**
+     * 获取正在执行的前台请求数量
+     * @return 正在执行的前台请求数量
+     */
+    synchronized int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * 等待前台请求全部结束，为了防止一直有前台请求导致预取饿死，最多只等待maxWaitMillis毫秒
+     * @param maxWaitMillis 最多等待的时间，单位毫秒
+     * @return true：前台请求已经全部结束；false：等待超时
+     * @throws InterruptedException 等待时被中断，例如预取被取消了
+     */
+    synchronized boolean awaitIdle(long maxWaitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while(activeCount > 0){
+            long remaining = deadline - System.currentTimeMillis();
+            if(remaining <= 0){
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+}
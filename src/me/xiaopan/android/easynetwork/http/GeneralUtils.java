@@ -3,6 +3,7 @@ package me.xiaopan.android.easynetwork.http;
 import java.io.BufferedWriter;
 import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -15,6 +16,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -23,6 +25,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.conn.params.ConnPerRouteBean;
@@ -33,6 +36,7 @@ import android.content.Context;
 import android.os.Environment;
 
 class GeneralUtils {
+	private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
 	
 	/**
 	 * 设置连接超时
@@ -184,35 +188,84 @@ class GeneralUtils {
 	}
 	
 	/**
-	 * 将给定的字符串MD5加密
+	 * 将给定的字符串MD5加密，字符串按UTF-8编码
 	 * @param string 给定的字符串
 	 * @return MD5加密后生成的字符串
 	 */
 	static String MD5(String string) {  
-		String result = null;
 		try {
-			char[] charArray = string.toCharArray();
-			byte[] byteArray = new byte[charArray.length];
-			for (int i = 0; i < charArray.length; i++){
-				byteArray[i] = (byte) charArray[i];
+			return toHexString(MessageDigest.getInstance("MD5").digest(string.getBytes("UTF-8")));
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * 计算字符串的64位FNV-1a哈希值并转换成16位十六进制字符串，直接按字符计算，不需要先编码成字节数组，用来生成缓存文件名
+	 * <br>64位哈希依然有可能冲突，所以缓存文件中还保存了完整的缓存KEY，读取时需要校验
+	 * @param string 给定的字符串
+	 * @return 16位十六进制字符串
+	 */
+	static String hash64(String string) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			hash ^= c & 0xff;
+			hash *= 0x100000001b3L;
+			hash ^= c >>> 8;
+			hash *= 0x100000001b3L;
+		}
+		char[] chars = new char[16];
+		for (int i = 15; i >= 0; i--) {
+			chars[i] = HEX_DIGITS[(int) (hash & 0xf)];
+			hash >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * 计算请求体的SHA-1，请求体是边写出边计算的，不会整个读到内存中，所以只适用于可以重复读取的请求体
+	 * @param httpEntity 请求体
+	 * @return SHA-1的十六进制字符串
+	 * @throws IOException 读取请求体失败
+	 */
+	static String SHA1(HttpEntity httpEntity) throws IOException {
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			IOException exception = new IOException("不支持SHA-1");
+			exception.initCause(e);
+			throw exception;
+		}
+		httpEntity.writeTo(new OutputStream() {
+			@Override
+			public void write(int oneByte) {
+				messageDigest.update((byte) oneByte);
 			}
 
-			StringBuffer hexValue = new StringBuffer();
-			byte[] md5Bytes = MessageDigest.getInstance("MD5").digest(byteArray);
-			for (int i = 0; i < md5Bytes.length; i++) {
-				int val = ((int) md5Bytes[i]) & 0xff;
-				if (val < 16){
-					hexValue.append("0");
-				}
-				hexValue.append(Integer.toHexString(val));
+			@Override
+			public void write(byte[] buffer, int offset, int count) {
+				messageDigest.update(buffer, offset, count);
 			}
-			
-			result = hexValue.toString();  
-		} catch (Exception e) {
-			e.printStackTrace();
+		});
+		return toHexString(messageDigest.digest());
+	}
+
+	/**
+	 * 将字节数组转换成十六进制字符串
+	 * @param bytes 字节数组
+	 * @return 十六进制字符串
+	 */
+	static String toHexString(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >>> 4) & 0xf];
+			chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
 		}
-		return result;
-	 }
+		return new String(chars);
+	}
 	
 	/**
 	 * 获取SD卡的状态
@@ -392,6 +445,30 @@ class GeneralUtils {
 		bw.close();
 	}
 	
+	/**
+	 * 从给定的文件中读取全部字节
+	 * @param file 给定的文件
+	 * @return 全部字节
+	 * @throws IOException
+	 */
+	static byte[] readBytes(File file) throws IOException{
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream inputStream = new FileInputStream(file);
+		try{
+			int offset = 0;
+			int number;
+			while(offset < bytes.length && (number = inputStream.read(bytes, offset, bytes.length - offset)) != -1){
+				offset += number;
+			}
+			if(offset < bytes.length){
+				throw new IOException("文件 " + file.getPath() + " 读取不完整");
+			}
+		}finally{
+			inputStream.close();
+		}
+		return bytes;
+	}
+	
 	/**
 	 * 从给定的字节输入流中读取字节再通过给定的字节输出流写出
 	 * @param input 给定的字节输入流
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * 对冲调度器，延迟敏感的Get请求发出之后如果过了一段时间（默认是该主机最近请求的P95往返时间）还没有收到响应，就再发一个相同的对冲请求，
+ * 先收到响应的那个胜出，另一个通过HttpUriRequest.abort()中断，这样少数卡住的连接就不会拖慢整体的P99
+ * <br>对冲请求会增加服务器的负担，所以最近10秒内的对冲请求最多只能占请求次数的一定比例
+ * <br>对冲请求和普通请求一样要经过熔断器并且占用请求调度器中该主机的名额，熔断器不放行或者名额已满的话就不对冲
+ */
+class HedgeHandler {
+    private static final int MAX_HOSTS = 64;    //最多记录的主机数，超出时丢弃最久没有请求的
+    private static final int LATENCY_SAMPLES = 100; //每个主机保留的往返时间样本数
+    private static final int MIN_LATENCY_SAMPLES = 20;  //样本太少的话不知道多慢才算慢，不对冲
+    private static final int MIN_HEDGES = 1;    //每个统计窗口内始终允许的对冲请求数
+
+    private final Configuration configuration;
+    private final LoadBudget hedgeBudget = new LoadBudget(MIN_HEDGES); //对冲预算
+    private final Map<String, Latencies> latencies = new LinkedHashMap<String, Latencies>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Latencies> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+    private ScheduledThreadPoolExecutor timer;  //定时器，只负责在等待时间之后把对冲请求提交到executor
+    private ThreadPoolExecutor executor;    //执行对冲请求的线程池，满了的话就不对冲
+
+    HedgeHandler(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * 记录一次请求，对冲预算按请求次数的比例计算
+     */
+    void recordRequest() {
+        hedgeBudget.recordRequest();
+    }
+
+    /**
+     * 记录一个成功请求的往返时间，用来计算P95
+     * @param host 主机名
+     * @param rtt 往返时间，单位毫秒
+     */
+    synchronized void recordLatency(String host, long rtt) {
+        Latencies hostLatencies = latencies.get(host);
+        if(hostLatencies == null){
+            hostLatencies = new Latencies();
+            latencies.put(host, hostLatencies);
+        }
+        hostLatencies.samples[hostLatencies.next] = rtt;
+        hostLatencies.next = (hostLatencies.next + 1) % LATENCY_SAMPLES;
+        hostLatencies.count = Math.min(hostLatencies.count + 1, LATENCY_SAMPLES);
+    }
+
+    /**
+     * 获取发出对冲请求之前的等待时间
+     * @param host 主机名
+     * @return 等待时间，单位毫秒，-1：样本太少，不对冲
+     */
+    synchronized long getDelay(String host) {
+        if(configuration.getHedgeDelay() > 0){
+            return configuration.getHedgeDelay();
+        }
+        Latencies hostLatencies = latencies.get(host);
+        if(hostLatencies == null || hostLatencies.count < MIN_LATENCY_SAMPLES){
+            return -1;
+        }
+        long[] samples = new long[hostLatencies.count];
+        System.arraycopy(hostLatencies.samples, 0, samples, 0, hostLatencies.count);
+        Arrays.sort(samples);
+        return samples[(int) Math.ceil(samples.length * 0.95) - 1];
+    }
+
+    /**
+     * 执行请求，等待时间到了还没有收到响应的话再发一个对冲请求，返回先收到的响应
+     * <br>对冲请求胜出的话会通过HttpRequestRunnable.replaceRequest()替换掉已经中断的原请求，后续的重试等操作使用对冲请求
+     * @param httpRequestRunnable 请求所属的HttpRequestRunnable，取消时需要同时中断对冲请求
+     * @param httpUriRequest 原请求，必须是Get请求
+     * @param host 主机名
+     * @param httpContext 原请求使用的Http上下文
+     * @return 先收到的响应
+     * @throws Exception 原请求失败了，并且对冲请求也失败了（或者没有发出）
+     */
+    HttpResponse execute(final HttpRequestRunnable httpRequestRunnable, final HttpUriRequest httpUriRequest, final String host, HttpContext httpContext) throws Exception {
+        final HttpClient httpClient = configuration.getHttpClient();
+        long delay = getDelay(host);
+        if(delay < 0){
+            return httpClient.execute(httpUriRequest, httpContext);
+        }
+
+        final Race race = new Race();
+        ScheduledFuture<?> timerFuture = getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                startHedge(httpRequestRunnable, httpUriRequest, host, race, httpClient);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        HttpResponse httpResponse;
+        try{
+            httpResponse = httpClient.execute(httpUriRequest, httpContext);
+        }catch(Exception exception){
+            timerFuture.cancel(false);
+            /* 原请求失败了（或者因为对冲请求胜出被中断了），对冲请求还在执行的话等它的结果 */
+            HttpResponse hedgeResponse = race.awaitHedge();
+            if(hedgeResponse == null){
+                throw exception;
+            }
+            httpRequestRunnable.replaceRequest(race.getHedgeRequest());
+            return hedgeResponse;
+        }
+        timerFuture.cancel(false);
+        if(race.offer(httpResponse)){
+            race.finish();
+            HttpUriRequest hedgeRequest = race.getHedgeRequest();
+            if(hedgeRequest != null){
+                hedgeRequest.abort();
+            }
+            return httpResponse;
+        }
+
+        /* 对冲请求先收到了响应，中断原请求的时候原请求也刚好收到了响应 */
+        closeEntity(httpResponse);
+        race.finish();
+        httpRequestRunnable.replaceRequest(race.getHedgeRequest());
+        return race.winner;
+    }
+
+    /**
+     * 等待时间到了，原请求还没有收到响应，熔断器放行、主机名额未满并且对冲预算还有剩余的话发出对冲请求
+     */
+    private void startHedge(final HttpRequestRunnable httpRequestRunnable, final HttpUriRequest httpUriRequest, final String host, final Race race, final HttpClient httpClient) {
+        if(httpRequestRunnable.isAbandoned() || httpUriRequest.isAborted() || !race.isPending()){
+            return;
+        }
+
+        /* 先占用可以归还的熔断器许可和主机名额，都拿到了再消耗对冲预算和限流令牌 */
+        final CircuitBreaker circuitBreaker = configuration.getCircuitBreaker();
+        final int circuitGeneration;
+        try{
+            circuitGeneration = circuitBreaker != null ? circuitBreaker.acquire(host) : 0;
+        }catch(CircuitBreakerOpenException exception){
+            return;
+        }
+        ThreadPoolExecutor threadPool = configuration.getThreadPool();
+        final RequestDispatcher requestDispatcher = threadPool instanceof RequestDispatcher ? (RequestDispatcher) threadPool : null;
+        final String slotKey = requestDispatcher != null ? requestDispatcher.tryAcquireSlot(httpUriRequest.getURI()) : null;
+        if((requestDispatcher != null && slotKey == null) || !hedgeBudget.acquire(configuration.getHedgeBudgetPercent()) || !httpRequestRunnable.tryReserveToken()){
+            release(circuitBreaker, host, circuitGeneration, requestDispatcher, slotKey);
+            return;
+        }
+
+        final HttpGet hedgeRequest = new HttpGet(httpUriRequest.getURI());
+        hedgeRequest.setHeaders(httpUriRequest.getAllHeaders());
+        hedgeRequest.setParams(httpUriRequest.getParams());
+        if(!race.startHedge(hedgeRequest)){
+            release(circuitBreaker, host, circuitGeneration, requestDispatcher, slotKey);
+            return;
+        }
+        httpRequestRunnable.setHedgeRequest(hedgeRequest);
+        if(httpRequestRunnable.isAbandoned()){
+            hedgeRequest.abort();
+        }
+        try{
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startTime = System.currentTimeMillis();
+                    try{
+                        HttpResponse hedgeResponse = httpClient.execute(hedgeRequest, configuration.newRequestContext());
+                        if(circuitBreaker != null){
+                            circuitBreaker.record(host, circuitGeneration, hedgeResponse.getStatusLine().getStatusCode() >= 500, System.currentTimeMillis() - startTime);
+                        }
+                        if(race.offer(hedgeResponse)){
+                            httpUriRequest.abort();
+                        }else{
+                            closeEntity(hedgeResponse);
+                        }
+                    }catch(Exception exception){
+                        /* 输给原请求被中断的不算失败 */
+                        if(circuitBreaker != null){
+                            if(hedgeRequest.isAborted()){
+                                circuitBreaker.release(host, circuitGeneration);
+                            }else{
+                                circuitBreaker.record(host, circuitGeneration, true, System.currentTimeMillis() - startTime);
+                            }
+                        }
+                        race.hedgeFailed();
+                    }finally{
+                        if(requestDispatcher != null){
+                            requestDispatcher.releaseSlot(slotKey);
+                        }
+                    }
+                }
+            });
+        }catch(RejectedExecutionException exception){
+            release(circuitBreaker, host, circuitGeneration, requestDispatcher, slotKey);
+            race.hedgeFailed();
+        }
+    }
+
+    /**
+     * 对冲请求没有发出，归还熔断器许可和主机名额
+     */
+    private static void release(CircuitBreaker circuitBreaker, String host, int circuitGeneration, RequestDispatcher requestDispatcher, String slotKey) {
+        if(circuitBreaker != null){
+            circuitBreaker.release(host, circuitGeneration);
+        }
+        if(requestDispatcher != null && slotKey != null){
+            requestDispatcher.releaseSlot(slotKey);
+        }
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getTimer() {
+        if(timer == null){
+            timer = new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory("EasyNetwork-hedge-timer"));
+        }
+        return timer;
+    }
+
+    /**
+     * 最大连接数改变了，同步调整执行对冲请求的线程数
+     * @param maxConnections 最大连接数
+     */
+    synchronized void setMaxConnections(int maxConnections) {
+        if(executor != null){
+            executor.setMaximumPoolSize(Math.max(1, maxConnections));
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if(executor == null){
+            executor = new ThreadPoolExecutor(0, Math.max(1, configuration.getMaxConnections()), 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new BackgroundThreadFactory("EasyNetwork-hedge"));
+        }
+        return executor;
+    }
+
+    private static void closeEntity(HttpResponse httpResponse) {
+        HttpEntity httpEntity = httpResponse.getEntity();
+        if(httpEntity != null){
+            try{
+                httpEntity.consumeContent();
+            }catch(Exception exception){
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 单个主机最近的往返时间
+     */
+    private static class Latencies {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int next;   //下一个样本的位置
+        private int count;  //样本数
+    }
+
+    /**
+     * 原请求和对冲请求的竞争，先offer()的胜出
+     */
+    private static class Race {
+        private HttpUriRequest hedgeRequest;    //对冲请求，null：没有发出
+        private boolean hedgeRunning;   //对冲请求是否正在执行
+        private HttpResponse winner;    //胜出的响应
+        private boolean finished;   //原请求所在的线程已经拿走了结果或者放弃了，之后的响应都要关闭
+
+        private synchronized boolean isPending() {
+            return winner == null && !finished;
+        }
+
+        private synchronized boolean startHedge(HttpUriRequest hedgeRequest) {
+            if(!isPending()){
+                return false;
+            }
+            this.hedgeRequest = hedgeRequest;
+            this.hedgeRunning = true;
+            return true;
+        }
+
+        private synchronized HttpUriRequest getHedgeRequest() {
+            return hedgeRequest;
+        }
+
+        private synchronized boolean offer(HttpResponse httpResponse) {
+            if(!isPending()){
+                return false;
+            }
+            winner = httpResponse;
+            notifyAll();
+            return true;
+        }
+
+        private synchronized void hedgeFailed() {
+            hedgeRunning = false;
+            notifyAll();
+        }
+
+        private synchronized void finish() {
+            finished = true;
+        }
+
+        /**
+         * 原请求失败了，等待对冲请求的结果
+         * @return 对冲请求的响应，null：没有发出对冲请求或者对冲请求也失败了
+         */
+        private synchronized HttpResponse awaitHedge() throws InterruptedException {
+            try{
+                while(winner == null && hedgeRunning){
+                    wait();
+                }
+                return winner;
+            }finally{
+                finished = true;
+            }
+        }
+    }
+}
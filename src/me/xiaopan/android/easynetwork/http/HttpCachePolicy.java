@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.xiaopan.android.easynetwork.http.headers.Age;
+import me.xiaopan.android.easynetwork.http.headers.CacheControl;
+import me.xiaopan.android.easynetwork.http.headers.Date;
+import me.xiaopan.android.easynetwork.http.headers.ETag;
+import me.xiaopan.android.easynetwork.http.headers.Expires;
+import me.xiaopan.android.easynetwork.http.headers.IfModifiedSince;
+import me.xiaopan.android.easynetwork.http.headers.IfNoneMatch;
+import me.xiaopan.android.easynetwork.http.headers.LastModified;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Http缓存策略，按照RFC 7234根据响应头中的Cache-Control、Expires、Date、Last-Modified计算缓存的新鲜度，并在缓存过期后生成条件请求来重新验证
+ */
+class HttpCachePolicy {
+    /**
+     * 没有明确有效期时，按照距离最后修改时间的10%作为启发式有效期
+     */
+    private static final int HEURISTIC_FRACTION = 10;
+
+    /**
+     * 判断给定的响应是否允许缓存
+     * @param httpResponse Http响应
+     * @return 是否允许缓存，响应头中包含Cache-Control: no-store的时候不允许缓存
+     */
+    static boolean isCacheable(HttpResponse httpResponse){
+        CacheControl cacheControl = CacheControl.getCacheControl(httpResponse);
+        return cacheControl == null || !cacheControl.isNoStore();
+    }
+
+    /**
+     * 计算新鲜期，优先使用Cache-Control: max-age，其次是Expires减去Date，最后根据Last-Modified启发式计算
+     * @param httpResponse 缓存的响应
+     * @param responseTime 收到响应的时间
+     * @return 新鲜期，单位毫秒
+     */
+    static long getFreshnessLifetime(HttpResponse httpResponse, long responseTime){
+        CacheControl cacheControl = CacheControl.getCacheControl(httpResponse);
+        if(cacheControl != null){
+            if(cacheControl.isNoCache()){
+                return 0;
+            }
+            long maxAge = cacheControl.getMaxAge();
+            if(maxAge >= 0){
+                return maxAge * 1000;
+            }
+        }
+
+        Date date = Date.getDate(httpResponse);
+        long dateTime = date != null ? date.getTime() : -1;
+        if(dateTime < 0){
+            dateTime = responseTime;
+        }
+
+        Expires expires = Expires.getExpires(httpResponse);
+        if(expires != null){
+            long expiresTime = expires.getTime();
+            return expiresTime > dateTime ? expiresTime - dateTime : 0;
+        }
+
+        LastModified lastModified = LastModified.getLastModified(httpResponse);
+        if(lastModified != null){
+            long lastModifiedTime = lastModified.getTime();
+            if(lastModifiedTime > 0 && lastModifiedTime < dateTime){
+                return (dateTime - lastModifiedTime) / HEURISTIC_FRACTION;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * 计算缓存的当前年龄，等于缓存至今经过的时间加上响应头中的Age
+     * @param httpResponse 缓存的响应
+     * @param responseTime 收到响应的时间
+     * @return 当前年龄，单位毫秒
+     */
+    static long getCurrentAge(HttpResponse httpResponse, long responseTime){
+        long age = Math.max(0, System.currentTimeMillis() - responseTime);
+        Age ageHeader = Age.getAge(httpResponse);
+        if(ageHeader != null && ageHeader.getSeconds() > 0){
+            age += ageHeader.getSeconds() * 1000;
+        }
+        return age;
+    }
+
+    /**
+     * 计算过期时间，也就是缓存从什么时候开始不再新鲜，写缓存时计算一次保存在索引中，读取时就不用再解析响应头了
+     * @param httpResponse 缓存的响应
+     * @param responseTime 收到响应的时间
+     * @return 过期时间
+     */
+    static long getExpiresAt(HttpResponse httpResponse, long responseTime){
+        long expiresAt = responseTime + getFreshnessLifetime(httpResponse, responseTime);
+        Age ageHeader = Age.getAge(httpResponse);
+        if(ageHeader != null && ageHeader.getSeconds() > 0){
+            expiresAt -= ageHeader.getSeconds() * 1000;
+        }
+        return expiresAt;
+    }
+
+    /**
+     * 判断缓存是否还新鲜
+     * @param httpResponse 缓存的响应
+     * @param responseTime 收到响应的时间
+     * @return 是否还新鲜，不新鲜的话需要重新验证
+     */
+    static boolean isFresh(HttpResponse httpResponse, long responseTime){
+        return getFreshnessLifetime(httpResponse, responseTime) > getCurrentAge(httpResponse, responseTime);
+    }
+
+    /**
+     * 根据缓存的响应中的ETag以及Last-Modified给请求加上If-None-Match以及If-Modified-Since请求头
+     * @param httpUriRequest 请求
+     * @param cachedResponse 缓存的响应
+     * @return 是否添加了条件请求头，false：缓存的响应中没有任何验证器
+     */
+    static boolean addConditionalHeaders(HttpUriRequest httpUriRequest, HttpResponse cachedResponse){
+        boolean added = false;
+        ETag eTag = ETag.getETag(cachedResponse);
+        if(eTag != null && GeneralUtils.isNotEmpty(eTag.getValue())){
+            httpUriRequest.setHeader(IfNoneMatch.NAME, eTag.getValue());
+            added = true;
+        }
+        LastModified lastModified = LastModified.getLastModified(cachedResponse);
+        if(lastModified != null && GeneralUtils.isNotEmpty(lastModified.getValue())){
+            httpUriRequest.setHeader(IfModifiedSince.NAME, lastModified.getValue());
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * 判断缓存过期之后能否向服务器重新验证，也就是有没有ETag或者Last-Modified
+     * @param cachedResponse 缓存的响应
+     * @return 能否重新验证
+     */
+    static boolean isRevalidatable(HttpResponse cachedResponse){
+        ETag eTag = ETag.getETag(cachedResponse);
+        LastModified lastModified = LastModified.getLastModified(cachedResponse);
+        return (eTag != null && GeneralUtils.isNotEmpty(eTag.getValue())) || (lastModified != null && GeneralUtils.isNotEmpty(lastModified.getValue()));
+    }
+
+    /**
+     * 删除请求上的条件请求头
+     * @param httpUriRequest 请求
+     */
+    static void removeConditionalHeaders(HttpUriRequest httpUriRequest){
+        httpUriRequest.removeHeaders(IfNoneMatch.NAME);
+        httpUriRequest.removeHeaders(IfModifiedSince.NAME);
+    }
+
+    /**
+     * 判断是否是服务器返回的“未修改”响应
+     * @param httpResponse Http响应
+     * @return 是否是304
+     */
+    static boolean isNotModified(HttpResponse httpResponse){
+        return httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED;
+    }
+
+    /**
+     * 用304响应中的响应头更新缓存的响应头，同名的响应头会被替换，但Content-Length等描述响应体的响应头保持不变
+     * @param cachedHeaders 缓存的响应头
+     * @param notModifiedResponse 304响应
+     * @return 更新后的响应头
+     */
+    static Header[] updateHeaders(Header[] cachedHeaders, HttpResponse notModifiedResponse){
+        List<Header> headerList = new ArrayList<Header>(cachedHeaders.length);
+        for(Header cachedHeader : cachedHeaders){
+            if(isBodyHeader(cachedHeader.getName()) || !notModifiedResponse.containsHeader(cachedHeader.getName())){
+                headerList.add(cachedHeader);
+            }
+        }
+        for(Header header : notModifiedResponse.getAllHeaders()){
+            if(!isBodyHeader(header.getName())){
+                headerList.add(header);
+            }
+        }
+        return headerList.toArray(new Header[headerList.size()]);
+    }
+
+    private static boolean isBodyHeader(String name){
+        return "Content-Length".equalsIgnoreCase(name) || "Content-Encoding".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name) || "Content-Type".equalsIgnoreCase(name);
+    }
+}
@@ -3,6 +3,8 @@ package me.xiaopan.android.easynetwork.http;
 import java.util.LinkedList;
 import java.util.List;
 
+import me.xiaopan.android.easynetwork.http.enums.Priority;
+
 import org.apache.http.Header;
 
 /**
@@ -14,6 +16,8 @@ public class HttpDeleteRequest {
     private String url; //请求地址
     private List<Header> headers;   //请求头信息
     private ResponseCache responseCache;    //响应缓存配置
+    private Priority priority = Priority.NORMAL;  //优先级
+    private RateLimit rateLimit;    //限流配置
 
     private HttpDeleteRequest(){
         setName(GeneralUtils.getCurrentDateTimeByDefultFormat() + " DELETE ");
@@ -100,6 +104,38 @@ public class HttpDeleteRequest {
         this.responseCache = responseCache;
     }
 
+    /**
+     * 获取优先级
+     * @return
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * 设置优先级，优先级高的请求先执行，相同优先级的按提交的顺序执行，默认为NORMAL
+     * @param priority
+     */
+    public void setPriority(Priority priority) {
+        this.priority = priority != null ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * 获取限流配置
+     * @return
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * 设置限流配置，KEY相同的请求共用一个令牌桶，只有设置了RateLimiter才会起作用
+     * @param rateLimit
+     */
+    public void setRateLimit(RateLimit rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
     /**
      * Http Delete 请求构建器
      */
@@ -174,6 +210,26 @@ public class HttpDeleteRequest {
             return this;
         }
 
+        /**
+         * 设置优先级，优先级高的请求先执行，相同优先级的按提交的顺序执行，默认为NORMAL
+         * @param priority
+         * @return
+         */
+        public Builder setPriority(Priority priority) {
+            httpRequest.setPriority(priority);
+            return this;
+        }
+
+        /**
+         * 设置限流配置，KEY相同的请求共用一个令牌桶，只有设置了RateLimiter才会起作用
+         * @param rateLimit
+         * @return
+         */
+        public Builder setRateLimit(RateLimit rateLimit) {
+            httpRequest.setRateLimit(rateLimit);
+            return this;
+        }
+
         /**
          * 设置请求对象，会从此请求对象身上解析所需的信息
          * @param request
@@ -195,6 +251,14 @@ public class HttpDeleteRequest {
             if(responseCache != null){
                 httpRequest.setResponseCache(responseCache);
             }
+            Priority priority = requestParser.getPriority();
+            if(priority != null){
+                httpRequest.setPriority(priority);
+            }
+            RateLimit rateLimit = requestParser.getRateLimit();
+            if(rateLimit != null){
+                httpRequest.setRateLimit(rateLimit);
+            }
             return this;
         }
 
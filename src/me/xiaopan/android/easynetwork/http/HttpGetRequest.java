@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import me.xiaopan.android.easynetwork.http.enums.Priority;
+
 import org.apache.http.Header;
 
 /**
@@ -19,6 +21,9 @@ public class HttpGetRequest {
     private List<Header> headers;   //请求头信息
     private RequestParams params;   //请求参数
     private ResponseCache responseCache;    //响应缓存配置
+    private Priority priority = Priority.NORMAL;  //优先级
+    private RateLimit rateLimit;    //限流配置
+    private boolean latencyCritical;    //是否是延迟敏感的请求
 
     private HttpGetRequest(){
         setName(GeneralUtils.getCurrentDateTimeByDefultFormat() + " GET ");
@@ -212,6 +217,54 @@ public class HttpGetRequest {
         this.responseCache = responseCache;
     }
 
+    /**
+     * 获取优先级
+     * @return
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * 设置优先级，优先级高的请求先执行，相同优先级的按提交的顺序执行，默认为NORMAL
+     * @param priority
+     */
+    public void setPriority(Priority priority) {
+        this.priority = priority != null ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * 获取限流配置
+     * @return
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * 设置限流配置，KEY相同的请求共用一个令牌桶，只有设置了RateLimiter才会起作用
+     * @param rateLimit
+     */
+    public void setRateLimit(RateLimit rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * 是否是延迟敏感的请求
+     * @return
+     */
+    public boolean isLatencyCritical() {
+        return latencyCritical;
+    }
+
+    /**
+     * 设置是否是延迟敏感的请求，迟迟收不到响应的话会再发一个相同的对冲请求，先收到的响应胜出，默认为false
+     * @param latencyCritical
+     */
+    public void setLatencyCritical(boolean latencyCritical) {
+        this.latencyCritical = latencyCritical;
+    }
+
     /**
      * Http Get 请求构建器
      */
@@ -364,6 +417,36 @@ public class HttpGetRequest {
             return this;
         }
 
+        /**
+         * 设置优先级，优先级高的请求先执行，相同优先级的按提交的顺序执行，默认为NORMAL
+         * @param priority
+         * @return
+         */
+        public Builder setPriority(Priority priority) {
+            httpRequest.setPriority(priority);
+            return this;
+        }
+
+        /**
+         * 设置限流配置，KEY相同的请求共用一个令牌桶，只有设置了RateLimiter才会起作用
+         * @param rateLimit
+         * @return
+         */
+        public Builder setRateLimit(RateLimit rateLimit) {
+            httpRequest.setRateLimit(rateLimit);
+            return this;
+        }
+
+        /**
+         * 设置是否是延迟敏感的请求，迟迟收不到响应的话会再发一个相同的对冲请求，先收到的响应胜出，默认为false
+         * @param latencyCritical
+         * @return
+         */
+        public Builder setLatencyCritical(boolean latencyCritical) {
+            httpRequest.setLatencyCritical(latencyCritical);
+            return this;
+        }
+
         /**
          * 设置请求对象，会从此请求对象身上解析所需的信息
          * @param request
@@ -386,6 +469,17 @@ public class HttpGetRequest {
             if(responseCache != null){
                 httpRequest.setResponseCache(responseCache);
             }
+            Priority priority = requestParser.getPriority();
+            if(priority != null){
+                httpRequest.setPriority(priority);
+            }
+            RateLimit rateLimit = requestParser.getRateLimit();
+            if(rateLimit != null){
+                httpRequest.setRateLimit(rateLimit);
+            }
+            if(requestParser.isLatencyCritical()){
+                httpRequest.setLatencyCritical(true);
+            }
             return this;
         }
 
@@ -15,38 +15,71 @@
  */
 package me.xiaopan.android.easynetwork.http;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import me.xiaopan.android.easynetwork.http.enums.CacheCompression;
+import me.xiaopan.android.easynetwork.http.enums.Priority;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.ProtocolVersion;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.InputStreamEntity;
-import org.apache.http.message.BasicHttpResponse;
-import org.apache.http.message.BasicStatusLine;
-import org.apache.http.message.BufferedHeader;
-import org.apache.http.util.CharArrayBuffer;
+import org.apache.http.protocol.HttpContext;
 
 import android.content.Context;
+import android.os.Handler;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
 public class HttpRequestRunnable implements Runnable {
     private String name;    //请求名称，在输出log的时候会用此参数来作为标识，方便在log中区分具体的请求
 	private Context context;    //上下文
 	private EasyHttpClient easyHttpClient;
-    private HttpUriRequest httpUriRequest;  //HttpUri请求
+    private volatile HttpUriRequest httpUriRequest;  //HttpUri请求，对冲请求胜出的话会被替换成对冲请求
+    private volatile HttpUriRequest hedgeRequest;   //正在执行的对冲请求，取消时需要一并中断
     private HttpResponseHandler httpResponseHandler;    //Http响应处理器
     private ResponseCache responseCache;    //响应缓存配置
+    private String cacheKey;    //完整的缓存KEY，保存在磁盘缓存文件中用来校验
+    private String sharedCacheKey;  //加上分区名的缓存KEY，内存缓存和后台刷新是所有分区共用的，不同分区的相同请求要靠它区分开
+    private String diskCacheKey;    //缓存KEY的哈希值，用作磁盘缓存的文件名
+    private DiskCache diskCache;    //磁盘缓存，为null时不使用磁盘缓存
+    private MemoryCache memoryCache;    //内存缓存，为null时不使用内存缓存
+    private MemoryCache.Entry memoryCacheEntry;    //本次命中的内存缓存
+    private boolean revalidating;   //是否正在执行后台刷新，结束后需要把结果分发给跟随者
+    private boolean prefetch;   //是否是预取请求，预取请求不计入前台请求
+    private boolean foreground; //当前是否计入了前台请求，在定时器中等待重试或者令牌期间不计入
+    private Priority priority = Priority.NORMAL;    //优先级，请求调度器据此决定执行顺序
+    private boolean latencyCritical;    //是否是延迟敏感的请求，迟迟收不到响应的话会发出对冲请求
+    private volatile String coalescingKey;  //合并KEY，为null时说明没有参与合并
+    private boolean coalescingLeader;   //是否是合并请求中真正执行请求的那个
+    private boolean coalescingFollower; //是否是合并请求中等待结果的跟随者
+    private volatile boolean cancelled; //是否已经取消
+    private volatile boolean abandoned; //网络请求是否已经中断，合并请求的领头者取消之后只要还有跟随者就不会中断
+    private volatile RequestHandle requestHandle;   //请求句柄，结束后需要从登记处中移除
+    private volatile int retryCount;    //已经重试的次数
+    private volatile int resumeCount;   //定时器重新提交的次数（重试或者等待令牌），大于0时说明是定时器重新提交的，只需要重新从网络加载
+    private String resumeUri;   //重新提交时的请求地址
+    private boolean resumeRefreshCache; //重新提交时是否刷新缓存
+    private HttpResponse resumeStaleResponse;   //重新提交时需要重新验证的缓存响应
+    private RateLimit rateLimit;    //限流配置
+    private boolean tokenReserved;  //是否已经预订了令牌，等待结束之后重新从网络加载时不再预订
 
     public HttpRequestRunnable(Context context, EasyHttpClient easyHttpClient, String name, HttpUriRequest request, ResponseCache responseCache, HttpResponseHandler httpResponseHandler) {
     	this.context = context;
@@ -57,179 +90,1176 @@ public class HttpRequestRunnable implements Runnable {
         this.name = name;
     }
 
+    /**
+     * 设置是否是预取请求，预取请求不计入前台请求，也就不会让其它预取请求等待它
+     * @param prefetch
+     */
+    void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * 设置是否是延迟敏感的请求，只对Get请求有效
+     * @param latencyCritical
+     */
+    void setLatencyCritical(boolean latencyCritical) {
+        this.latencyCritical = latencyCritical;
+    }
+
+    /**
+     * 设置限流配置
+     * @param rateLimit
+     */
+    void setRateLimit(RateLimit rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * 为对冲请求拿一个令牌，对冲请求不等待，拿不到令牌的话就不对冲
+     * @return 是否拿到了令牌
+     */
+    boolean tryReserveToken() {
+        RateLimiter rateLimiter = easyHttpClient.getConfiguration().getRateLimiter();
+        if(rateLimiter == null){
+            return true;
+        }
+        try{
+            rateLimiter.reserve(httpUriRequest.getURI().getHost(), rateLimit, false);
+            return true;
+        }catch(RateLimitExceededException exception){
+            return false;
+        }
+    }
+
+    /**
+     * 设置正在执行的对冲请求
+     * @param hedgeRequest
+     */
+    void setHedgeRequest(HttpUriRequest hedgeRequest) {
+        this.hedgeRequest = hedgeRequest;
+    }
+
+    /**
+     * 对冲请求胜出了，原请求已被中断，之后的操作都使用对冲请求
+     * @param hedgeRequest
+     */
+    void replaceRequest(HttpUriRequest hedgeRequest) {
+        this.httpUriRequest = hedgeRequest;
+    }
+
+    /**
+     * 获取请求名称
+     * @return 请求名称
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * 获取Http响应处理器
+     * @return Http响应处理器
+     */
+    HttpResponseHandler getHttpResponseHandler() {
+        return httpResponseHandler;
+    }
+
+    /**
+     * 获取用来回调处理器的消息处理器
+     * @return 消息处理器
+     */
+    Handler getHandler() {
+        return easyHttpClient.getConfiguration().getHandler();
+    }
+
+    /**
+     * 判断是否已经取消
+     * @return 是否已经取消
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 判断是否已经没有人需要结果了，此时不再回调处理器
+     * <br>合并请求的领头者取消之后只要还有跟随者就继续执行，结果（包括异常）照常交给CoalescedResponseHandler分发给跟随者，由它跳过领头者自己的回调；所有参与者都取消了才会中断网络请求
+     * @return 是否已经没有人需要结果了
+     */
+    boolean isAbandoned() {
+        return coalescingLeader ? abandoned : cancelled;
+    }
+
+    /**
+     * 取消请求，取消之后不会再回调处理器，并且会中断网络请求；参与了合并的话只有所有参与者都取消了才会中断网络请求
+     */
+    void cancel() {
+        if(cancelled){
+            return;
+        }
+        cancelled = true;
+        String key = coalescingKey;
+        if(key != null){
+            HttpRequestRunnable leader = easyHttpClient.getConfiguration().getRequestCoalescer().cancel(key, this);
+            if(leader != null){
+                leader.abortRequest();
+            }
+        }else if(httpUriRequest != null){
+            abortRequest();
+        }
+        finishRequest();
+    }
+
+    /**
+     * 中断网络请求，有对冲请求的话一并中断
+     */
+    private void abortRequest() {
+        abandoned = true;
+        httpUriRequest.abort();
+        HttpUriRequest hedgeRequest = this.hedgeRequest;
+        if(hedgeRequest != null){
+            hedgeRequest.abort();
+        }
+    }
+
+    /**
+     * 设置请求句柄
+     * @param requestHandle
+     */
+    void setRequestHandle(RequestHandle requestHandle) {
+        this.requestHandle = requestHandle;
+    }
+
+    /**
+     * 请求结束，从登记处中移除
+     */
+    void finishRequest() {
+        RequestHandle requestHandle = this.requestHandle;
+        if(requestHandle != null){
+            requestHandle.finish();
+        }
+    }
+
+    /**
+     * 获取Http请求
+     * @return Http请求
+     */
+    HttpUriRequest getHttpUriRequest() {
+        return httpUriRequest;
+    }
+
+    /**
+     * 获取优先级
+     * @return 优先级
+     */
+    Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * 设置优先级，请求调度器据此决定执行顺序
+     * @param priority 优先级，为null时使用NORMAL
+     */
+    void setPriority(Priority priority) {
+        this.priority = priority != null ? priority : Priority.NORMAL;
+    }
+
     @Override
     public void run() {
-    	if(httpUriRequest != null && httpResponseHandler != null) {
+        if(resumeCount > 0){
+            resume();
+            return;
+        }
+    	if(httpUriRequest != null && httpResponseHandler != null && !cancelled) {
+            beginForeground();
             try{
                 httpResponseHandler.start(easyHttpClient.getConfiguration().getHandler());
 
-                /* 判断是否需要从本地加载 */
-                boolean fromlocalLoad = false;
-                File responseEntityCacheFile = null, responseHeadersCacheFile = null;	//缓存相应实体的文件,缓存响应头的文件
+                /* 判断是否需要从本地加载，先查内存缓存再查磁盘缓存，Http缓存模式下过期的缓存要留着重新验证 */
+                DiskCache.Entry diskCacheEntry = null;
                 String uri = httpUriRequest.getURI().toString();
+
+                /* 带请求体的请求只有开启了hashRequestBody并且请求体可以重复读取才使用缓存，否则不同的请求体会共用同一个缓存 */
+                String requestBodyKey = "";
+                if(responseCache != null && httpUriRequest instanceof HttpEntityEnclosingRequest){
+                    requestBodyKey = getRequestBodyKey(((HttpEntityEnclosingRequest) httpUriRequest).getEntity());
+                    if(requestBodyKey == null){
+                        if(easyHttpClient.getConfiguration().isDebugMode()){
+                            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "没有开启hashRequestBody或者请求体不能重复读取，本次不使用缓存");
+                        }
+                        responseCache = null;
+                    }
+                }
+
+                /* 相同的Get请求正在执行的话就只登记为跟随者，等待其结果，不再占用线程 */
+                if(isCoalescable()){
+                    String key = getCoalescingKey();
+                    coalescingKey = key;
+                    if(cancelled){
+                        return;
+                    }
+                    if(easyHttpClient.getConfiguration().getRequestCoalescer().join(key, this)){
+                        coalescingFollower = true;
+                        if(easyHttpClient.getConfiguration().isDebugMode()){
+                            Log.d(easyHttpClient.getConfiguration().getLogTag(), name + "相同的请求正在执行，等待其结果");
+                        }
+                        return;
+                    }
+                    coalescingLeader = true;
+                    httpResponseHandler = new CoalescedResponseHandler(easyHttpClient.getConfiguration().getRequestCoalescer(), key, this, httpResponseHandler);
+                }
+
                 if(responseCache != null){
-                    String id = GeneralUtils.MD5(uri);
-                    responseEntityCacheFile = new File(GeneralUtils.getDynamicCacheDir(context).getPath() + File.separator + "easy_http_client" + File.separator  + id + ".entity");
-                    responseHeadersCacheFile = new File(GeneralUtils.getDynamicCacheDir(context).getPath() + File.separator + "easy_http_client" + File.separator  + id + ".headers");
-                    fromlocalLoad = responseEntityCacheFile.exists() && responseHeadersCacheFile.exists();
-                    if(fromlocalLoad && responseCache.getPeriodOfValidity() > 0){
-                        Calendar calendar = new GregorianCalendar();
-                        calendar.add(Calendar.MILLISECOND, -responseCache.getPeriodOfValidity());
-                        fromlocalLoad = calendar.getTimeInMillis() < responseEntityCacheFile.lastModified();
-                        if(!fromlocalLoad){
-                            if(responseEntityCacheFile.delete() || responseHeadersCacheFile.delete()){
-                                if(easyHttpClient.getConfiguration().isDebugMode()){
-                                    Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "緩存過期，已刪除");
-                                }
-                            }else{
-                                if(easyHttpClient.getConfiguration().isDebugMode()){
-                                    Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "緩存過期，刪除失敗");
-                                }
+                    CacheKeyStrategy cacheKeyStrategy = responseCache.getCacheKeyStrategy() != null ? responseCache.getCacheKeyStrategy() : easyHttpClient.getConfiguration().getCacheKeyStrategy();
+                    cacheKey = cacheKeyStrategy.getCacheKey(httpUriRequest) + requestBodyKey;
+                    diskCacheKey = GeneralUtils.hash64(cacheKey);
+                    sharedCacheKey = GeneralUtils.isNotEmpty(responseCache.getCacheDirectory()) ? responseCache.getCacheDirectory() + '\n' + cacheKey : cacheKey;
+                    diskCache = easyHttpClient.getConfiguration().getDiskCache(context, responseCache.getCacheDirectory());
+                    if(responseCache.isMemoryCache()){
+                        memoryCache = easyHttpClient.getConfiguration().getMemoryCache();
+                    }
+
+                    if(memoryCache != null){
+                        memoryCacheEntry = memoryCache.get(sharedCacheKey);
+                        if(memoryCacheEntry != null && isExpired(memoryCacheEntry.getTime())){
+                            if(!responseCache.isStaleIfError()){
+                                memoryCache.remove(sharedCacheKey);
+                            }
+                            memoryCacheEntry = null;
+                        }
+                    }
+
+                    /* 磁盘缓存的索引中有响应时间，不用打开文件就能判断是否过期；开启了staleIfError的话过期的缓存要留着，从网络加载失败时使用 */
+                    if(memoryCacheEntry == null && diskCache != null){
+                        diskCacheEntry = diskCache.get(diskCacheKey);
+                        if(diskCacheEntry != null && diskCacheEntry.getResponseTime() >= 0 && isExpired(diskCacheEntry.getResponseTime())){
+                            diskCacheEntry = null;
+                            if(!responseCache.isStaleIfError()){
+                                removeExpiredDiskCache();
                             }
                         }
                     }
                 }
 
-                /* 根据需要从本地或者网络加载数据 */
-                if(fromlocalLoad){
-                    fromLocalLoad(uri, responseEntityCacheFile, responseHeadersCacheFile);
+                /* 根据需要从内存、本地或者网络加载数据 */
+                if(memoryCacheEntry != null){
+                    fromMemoryLoad(uri);
+                }else if(diskCacheEntry != null){
+                    fromLocalLoad(uri, diskCacheEntry);
                 }else{
-                    fromNetworkLoad(uri, responseEntityCacheFile, responseHeadersCacheFile, false);
+                    fromNetworkLoad(uri, false, null);
                 }
             }catch(Throwable throwable){
                 throwable.printStackTrace();
                 if(easyHttpClient.getConfiguration().isDebugMode()){
                     Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "（总的）加载失败："+throwable.toString());
                 }
-                httpResponseHandler.exception(easyHttpClient.getConfiguration().getHandler(), throwable);
+                if(!isAbandoned()){
+                    httpResponseHandler.exception(easyHttpClient.getConfiguration().getHandler(), throwable);
+                }
+            }finally{
+                /* 已经安排了重试（或者等待令牌）的话等重新提交的请求结束了再收尾 */
+                if(resumeCount == 0){
+                    complete();
+                }
             }
     	}
     }
 
     /**
-     * 从本地加载
+     * 定时器重新提交的重试（或者等待令牌结束），只需要重新从网络加载
+     */
+    private void resume() {
+        int currentResumeCount = resumeCount;
+        beginForeground();
+        try{
+            /* 等待期间被取消了 */
+            if(httpUriRequest.isAborted()){
+                if(resumeStaleResponse != null){
+                    closeEntity(resumeStaleResponse);
+                }
+                return;
+            }
+            fromNetworkLoad(resumeUri, resumeRefreshCache, resumeStaleResponse);
+        }catch(Throwable throwable){
+            throwable.printStackTrace();
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "（总的）加载失败："+throwable.toString());
+            }
+            if(!isAbandoned()){
+                httpResponseHandler.exception(easyHttpClient.getConfiguration().getHandler(), throwable);
+            }
+        }finally{
+            if(resumeCount == currentResumeCount){
+                complete();
+            }
+        }
+    }
+
+    /**
+     * 请求结束之后收尾
+     */
+    private void complete() {
+        /* 领头者正常情况下一定会回调处理器并在那时把结果分发给跟随者，这里只是以防万一 */
+        if(coalescingLeader){
+            for(HttpRequestRunnable follower : easyHttpClient.getConfiguration().getRequestCoalescer().finish(coalescingKey, this)){
+                if(!follower.isCancelled()){
+                    follower.httpResponseHandler.exception(follower.getHandler(), new IllegalStateException("合并的请求已结束，但是没有结果"));
+                }
+                follower.finishRequest();
+            }
+        }
+        /* 跟随者要等到领头者分发结果之后才算结束 */
+        if(!coalescingFollower){
+            finishRequest();
+        }
+        endForeground();
+    }
+
+    /**
+     * 开始计入前台请求，预取请求不计入
+     */
+    private void beginForeground() {
+        if(!prefetch && !foreground){
+            foreground = true;
+            easyHttpClient.getConfiguration().getForegroundRequestTracker().begin();
+        }
+    }
+
+    /**
+     * 不再计入前台请求，请求结束或者开始在定时器中等待时调用，没有计入的话什么也不做
+     */
+    private void endForeground() {
+        if(foreground){
+            foreground = false;
+            easyHttpClient.getConfiguration().getForegroundRequestTracker().end();
+        }
+    }
+
+    /**
+     * 安排重试，退避时间在定时器中等待，不占用线程，到时间后重新提交到线程池
+     * <br>预取请求以及后台刷新不重试，它们失败了也不影响界面
      * @param uri 请求地址
-     * @param responseEntityCacheFile 响应实体缓存文件
-     * @param responseHeadersCacheFile 响应头缓存文件
+     * @param refreshCache 是否刷新缓存
+     * @param staleResponse 需要重新验证的缓存响应
+     * @param httpResponse 服务器返回的响应，会参考其中的Retry-After，安排了重试的话会被关闭，发生异常时为null
+     * @param reason 失败原因，用于输出LOG
+     * @return 是否安排了重试，是的话当前线程应当直接返回
      */
-    private void fromLocalLoad(String uri, File responseEntityCacheFile, File responseHeadersCacheFile){
+    private boolean scheduleRetry(String uri, boolean refreshCache, HttpResponse staleResponse, HttpResponse httpResponse, String reason){
+        if(prefetch || revalidating || httpUriRequest.isAborted() || retryCount >= easyHttpClient.getConfiguration().getMaxRetries()){
+            return false;
+        }
+        RetryHandler retryHandler = easyHttpClient.getConfiguration().getRetryHandler();
+        long delay = retryHandler.getDelay(retryCount, httpResponse);
+        if(delay < 0){
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）加载失败（" + reason + "），Retry-After超过了最大退避时间，不再重试");
+            }
+            return false;
+        }
+        if(!retryHandler.acquireRetry()){
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）加载失败（" + reason + "），重试预算已用完，不再重试");
+            }
+            return false;
+        }
+
+        if(httpResponse != null){
+            closeEntity(httpResponse);
+        }
+        retryCount++;
         if(easyHttpClient.getConfiguration().isDebugMode()){
-            Log.d(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）请求地址："+uri);
+            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）加载失败（" + reason + "），" + delay + "毫秒后第" + retryCount + "次重试");
         }
-		try{
-			HttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "success"));
+        scheduleResume(uri, refreshCache, staleResponse, delay);
+        return true;
+    }
 
-			/* 读取响应头 */
-            String[] headerStrings = new Gson().fromJson(GeneralUtils.readString(responseHeadersCacheFile), new TypeToken<String[]>(){}.getType());
-            if(headerStrings != null && headerStrings.length > 0){
-                Header[] headers = new Header[headerStrings.length];
-                int w = 0;
-                for(String string : headerStrings){
-                    CharArrayBuffer charArrayBuffer = new CharArrayBuffer(string.length());
-                    charArrayBuffer.append(string);
-                    headers[w++] = new BufferedHeader(charArrayBuffer);
+    /**
+     * 在定时器中等待一段时间，不占用线程，到时间后重新提交到线程池，只需要重新从网络加载
+     * <br>等待期间不计入前台请求，预取任务不必等它，重新提交执行时再计入
+     * @param uri 请求地址
+     * @param refreshCache 是否刷新缓存
+     * @param staleResponse 需要重新验证的缓存响应
+     * @param delay 等待时间，单位毫秒
+     */
+    private void scheduleResume(String uri, boolean refreshCache, HttpResponse staleResponse, long delay){
+        resumeUri = uri;
+        resumeRefreshCache = refreshCache;
+        resumeStaleResponse = staleResponse;
+        resumeCount++;
+        endForeground();
+        easyHttpClient.getConfiguration().getRetryHandler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                resubmit();
+            }
+        }, delay);
+    }
+
+    /**
+     * 等待时间到了，重新提交到线程池，依然按优先级以及每个主机的限制排队
+     */
+    private void resubmit(){
+        try{
+            easyHttpClient.getConfiguration().getThreadPool().execute(this);
+        }catch(RejectedExecutionException exception){
+            exception.printStackTrace();
+            if(resumeStaleResponse != null){
+                closeEntity(resumeStaleResponse);
+            }
+            try{
+                if(!isAbandoned()){
+                    httpResponseHandler.exception(easyHttpClient.getConfiguration().getHandler(), exception);
                 }
-                httpResponse.setHeaders(headers);
+            }finally{
+                complete();
             }
+        }
+    }
 
-			/* 设置响应体 */
-			httpResponse.setEntity(new InputStreamEntity(new FileInputStream(responseEntityCacheFile), responseEntityCacheFile.length()));
+    /**
+     * 判断是否可以和相同的请求合并，只有Get请求可以合并，并且需要刷新缓存的请求会回调两次，预取请求不回调处理器，它们都不合并
+     * @return 是否可以合并
+     */
+    private boolean isCoalescable(){
+        return easyHttpClient.getConfiguration().isRequestCoalescing() && !prefetch && "GET".equals(httpUriRequest.getMethod()) && (responseCache == null || !responseCache.isRefreshCache());
+    }
 
-            /* 回调处理响应 */
-            httpResponseHandler.handleResponse(easyHttpClient.getConfiguration().getHandler(), httpResponse, true, responseCache.isRefreshCache() && responseCache.isRefreshCallback());
+    /**
+     * 生成合并KEY，由请求方式、规范化的请求地址、缓存配置以及所有的请求头组成
+     * <br>缓存配置包括缓存目录、有效期、内存缓存、HTTP缓存模式、后台刷新以及出错时使用过期缓存等所有影响结果的选项，配置不同的请求即使地址相同也不合并
+     * @return 合并KEY
+     */
+    private String getCoalescingKey(){
+        CacheKeyStrategy cacheKeyStrategy = responseCache != null && responseCache.getCacheKeyStrategy() != null ? responseCache.getCacheKeyStrategy() : easyHttpClient.getConfiguration().getCacheKeyStrategy();
+        StringBuilder builder = new StringBuilder();
+        builder.append(httpUriRequest.getMethod()).append('\n').append(cacheKeyStrategy.getCacheKey(httpUriRequest));
+        if(responseCache != null){
+            builder.append('\n').append("cache:").append(responseCache.getCacheDirectory());
+            builder.append(';').append(responseCache.getPeriodOfValidity());
+            builder.append(';').append(responseCache.isMemoryCache());
+            builder.append(';').append(responseCache.isHttpCacheMode());
+            builder.append(';').append(responseCache.isStaleWhileRevalidate());
+            builder.append(';').append(responseCache.isStaleIfError());
+            builder.append(';').append(responseCache.getCompression()).append(';').append(responseCache.getCompressionThreshold());
+        }else{
+            builder.append('\n').append("nocache");
+        }
+        for(Header header : httpUriRequest.getAllHeaders()){
+            builder.append('\n').append(header.getName()).append(':').append(header.getValue());
+        }
+        return builder.toString();
+    }
 
-            /* 如果需要刷新本地缓存 */
-            if(responseCache.isRefreshCache()){
-                if(easyHttpClient.getConfiguration().isDebugMode()){
-                    Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）加载成功，重新从网络加载，刷新本地缓存");
-                }
-                fromNetworkLoad(uri, responseEntityCacheFile, responseHeadersCacheFile, true);
+    /**
+     * 生成缓存KEY中请求体的部分，由请求方式、请求体类型以及请求体的SHA-1组成
+     * @param httpEntity 请求体
+     * @return 缓存KEY中请求体的部分，null：没有开启hashRequestBody或者请求体不能重复读取，不能使用缓存
+     * @throws IOException 读取请求体失败
+     */
+    private String getRequestBodyKey(HttpEntity httpEntity) throws IOException{
+        if(!responseCache.isHashRequestBody()){
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append('\n').append(httpUriRequest.getMethod());
+        if(httpEntity != null){
+            if(!httpEntity.isRepeatable()){
+                return null;
+            }
+            builder.append('\n').append(httpEntity.getContentType() != null ? httpEntity.getContentType().getValue() : "");
+            builder.append('\n').append(GeneralUtils.SHA1(httpEntity));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 判断缓存是否已经超过有效期，Http缓存模式下由响应头决定，这里始终返回false
+     * @param cacheTime 缓存时间
+     * @return 是否已经超过有效期
+     */
+    private boolean isExpired(long cacheTime){
+        return !responseCache.isHttpCacheMode() && responseCache.getPeriodOfValidity() > 0 && System.currentTimeMillis() - responseCache.getPeriodOfValidity() >= cacheTime;
+    }
+
+    /**
+     * 删除已经过期的磁盘缓存
+     */
+    private void removeExpiredDiskCache(){
+        if(diskCache.remove(diskCacheKey)){
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "緩存過期，已刪除");
+            }
+        }else{
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "緩存過期，刪除失敗");
+            }
+        }
+    }
+
+    /**
+     * 从内存加载
+     * @param uri 请求地址
+     */
+    private void fromMemoryLoad(String uri){
+        if(easyHttpClient.getConfiguration().isDebugMode()){
+            Log.d(easyHttpClient.getConfiguration().getLogTag(), name + "（内存）请求地址："+uri);
+        }
+        try{
+            handleCacheResponse(uri, memoryCacheEntry.toHttpResponse(), memoryCacheEntry.getTime(), -1);
+        }catch(Throwable throwable){
+            throwable.printStackTrace();
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "（内存）加载失败，重新从网络加载："+throwable.toString());
             }
+            memoryCache.remove(sharedCacheKey);
+            memoryCacheEntry = null;
+            fromNetworkLoad(uri, false, null);
+        }
+    }
+
+    /**
+     * 从本地加载，只打开一次缓存文件，顺序读取状态码、响应头之后剩下的就是响应体
+     * @param uri 请求地址
+     * @param diskCacheEntry 磁盘缓存条目
+     */
+    private void fromLocalLoad(String uri, DiskCache.Entry diskCacheEntry){
+        InputStream inputStream = null;
+		try{
+		    FileInputStream fileInputStream = new FileInputStream(diskCacheEntry.getFile());
+		    inputStream = new BufferedInputStream(fileInputStream);
+		    CacheEntry cacheEntry = CacheEntry.readFrom(inputStream);
+
+		    /* 文件名只是KEY的哈希值，KEY不一致说明哈希冲突了，当作没有缓存，从网络加载后会覆盖它 */
+		    if(!cacheKey.equals(cacheEntry.getKey())){
+		        inputStream.close();
+		        inputStream = null;
+		        if(easyHttpClient.getConfiguration().isDebugMode()){
+		            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）缓存KEY不一致，重新从网络加载");
+		        }
+		        fromNetworkLoad(uri, false, null);
+		        return;
+		    }
+
+		    /* 索引中没有响应时间（从目录重建的索引）的话只能读取之后再判断是否已经过期 */
+		    if(diskCacheEntry.getResponseTime() < 0 && isExpired(cacheEntry.getResponseTime())){
+		        inputStream.close();
+		        inputStream = null;
+		        if(!responseCache.isStaleIfError()){
+		            removeExpiredDiskCache();
+		        }
+		        fromNetworkLoad(uri, false, null);
+		        return;
+		    }
+
+		    if(easyHttpClient.getConfiguration().isDebugMode()){
+		        Log.d(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）请求地址："+uri);
+		    }
+
+			/* 设置响应体，足够小的话顺便（解压后）放入内存缓存，否则直接将文件中的响应体映射到内存，处理器读取时不用再复制，压缩过的在读取时才解压 */
+		    HttpResponse httpResponse = cacheEntry.toHttpResponse();
+		    Header contentType = httpResponse.getFirstHeader("Content-Type");
+		    CacheCompression compression = cacheEntry.getCompression();
+		    long bodyLength = fileInputStream.getChannel().size() - cacheEntry.getBodyOffset();
+			if(memoryCache != null && bodyLength <= memoryCache.getMaxEntrySize()){
+			    byte[] body = new byte[(int) bodyLength];
+			    new DataInputStream(inputStream).readFully(body);
+			    inputStream.close();
+			    if(compression != CacheCompression.NONE){
+			        byte[] inflatedBody = inflate(body, compression, memoryCache.getMaxEntrySize());
+			        if(inflatedBody == null){
+			            httpResponse.setEntity(new CompressedEntity(ByteBuffer.wrap(body), compression, contentType));
+			        }
+			        body = inflatedBody;
+			    }
+			    if(body != null){
+			        memoryCacheEntry = new MemoryCache.Entry(cacheEntry.getStatusCode(), cacheEntry.getReasonPhrase(), cacheEntry.getHeaders(), contentType, body, cacheEntry.getResponseTime());
+			        memoryCache.put(sharedCacheKey, memoryCacheEntry);
+			        httpResponse = memoryCacheEntry.toHttpResponse();
+			    }
+			}else{
+			    httpResponse.setEntity(createFileEntity(fileInputStream, inputStream, cacheEntry.getBodyOffset(), bodyLength, compression, contentType));
+			}
+			inputStream = null;
+
+            handleCacheResponse(uri, httpResponse, cacheEntry.getResponseTime(), diskCacheEntry.getExpiresAt());
 		}catch(Throwable throwable){
 			throwable.printStackTrace();
+			if(inputStream != null){ try{inputStream.close();}catch (Exception exception2){exception2.printStackTrace();}}
             if(easyHttpClient.getConfiguration().isDebugMode()){
                 Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）加载失败，重新从网络加载："+throwable.toString());
             }
-            fromNetworkLoad(uri, responseEntityCacheFile, responseHeadersCacheFile, false);
+            fromNetworkLoad(uri, false, null);
 		}
     }
+
+    /**
+     * 处理缓存的响应，如果需要刷新缓存的话还会再从网络加载；Http缓存模式下如果缓存已经不新鲜了就向服务器重新验证
+     * @param uri 请求地址
+     * @param httpResponse 缓存的响应
+     * @param cacheTime 缓存时间
+     * @param expiresAt 索引中保存的过期时间，-1：未知，需要根据响应头计算
+     * @throws Throwable 回调处理响应时发生异常
+     */
+    private void handleCacheResponse(String uri, HttpResponse httpResponse, long cacheTime, long expiresAt) throws Throwable{
+        if(responseCache.isHttpCacheMode() && !(expiresAt >= 0 ? System.currentTimeMillis() < expiresAt : HttpCachePolicy.isFresh(httpResponse, cacheTime))){
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "缓存已不新鲜，向服务器重新验证");
+            }
+            fromNetworkLoad(uri, false, httpResponse);
+            return;
+        }
+
+        /* 回调处理响应 */
+        httpResponseHandler.handleResponse(easyHttpClient.getConfiguration().getHandler(), httpResponse, true, responseCache.isRefreshCache() && responseCache.isRefreshCallback());
+
+        /* 如果需要刷新本地缓存 */
+        if(responseCache.isRefreshCache()){
+            if(responseCache.isStaleWhileRevalidate()){
+                revalidateInBackground(uri);
+            }else{
+                if(easyHttpClient.getConfiguration().isDebugMode()){
+                    Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）加载成功，重新从网络加载，刷新本地缓存");
+                }
+                fromNetworkLoad(uri, true, null);
+            }
+        }
+    }
+
+    /**
+     * 在后台刷新缓存，当前线程立即返回；同一个缓存已经在刷新的话就只登记为跟随者，等待刷新结果
+     * <br>使用RequestDispatcher的话以后台优先级提交给它，和普通请求一样受主机名额以及自适应并发限制的约束，否则交给后台线程池
+     * @param uri 请求地址
+     */
+    private void revalidateInBackground(final String uri){
+        if(easyHttpClient.getConfiguration().getCacheRevalidator().join(sharedCacheKey, this)){
+            if(easyHttpClient.getConfiguration().isDebugMode()){
+                Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）加载成功，相同的缓存正在后台刷新，等待其结果");
+            }
+            return;
+        }
+
+        if(easyHttpClient.getConfiguration().isDebugMode()){
+            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（本地）加载成功，在后台重新从网络加载，刷新本地缓存");
+        }
+        revalidating = true;
+        Runnable revalidation = new Runnable() {
+            @Override
+            public void run() {
+                fromNetworkLoad(uri, true, null);
+            }
+        };
+        try{
+            ThreadPoolExecutor threadPool = easyHttpClient.getConfiguration().getThreadPool();
+            if(threadPool instanceof RequestDispatcher){
+                ((RequestDispatcher) threadPool).execute(revalidation, Priority.BACKGROUND, httpUriRequest.getURI());
+            }else{
+                easyHttpClient.getConfiguration().getBackgroundThreadPool().execute(revalidation);
+            }
+        }catch(RuntimeException exception){
+            failRevalidation(exception);
+            throw exception;
+        }
+    }
+
+    /**
+     * 后台刷新成功，把结果分发给刷新期间登记的跟随者，只有第一次调用有效
+     * @param httpResponse 刷新得到的响应
+     * @throws IOException 读取响应体失败
+     */
+    private void finishRevalidation(HttpResponse httpResponse) throws IOException{
+        if(!revalidating){
+            return;
+        }
+        revalidating = false;
+
+        List<HttpRequestRunnable> followers = easyHttpClient.getConfiguration().getCacheRevalidator().finish(sharedCacheKey);
+        if(followers.isEmpty()){
+            return;
+        }
+
+        /* 多个处理器都要读取响应体，不能重复读取的响应体要先读到内存中 */
+        if(httpResponse.getEntity() != null && !httpResponse.getEntity().isRepeatable()){
+            httpResponse.setEntity(new BufferedHttpEntity(httpResponse.getEntity()));
+        }
+        for(HttpRequestRunnable follower : followers){
+            if(follower.responseCache.isRefreshCallback()){
+                try{
+                    follower.httpResponseHandler.handleResponse(follower.easyHttpClient.getConfiguration().getHandler(), httpResponse, false, false);
+                }catch(Throwable throwable){
+                    throwable.printStackTrace();
+                    follower.httpResponseHandler.exception(follower.easyHttpClient.getConfiguration().getHandler(), throwable);
+                }
+            }
+        }
+    }
+
+    /**
+     * 后台刷新失败，通知刷新期间登记的跟随者，只有第一次调用有效
+     * @param throwable 刷新失败的异常
+     */
+    private void failRevalidation(Throwable throwable){
+        if(!revalidating){
+            return;
+        }
+        revalidating = false;
+
+        for(HttpRequestRunnable follower : easyHttpClient.getConfiguration().getCacheRevalidator().finish(sharedCacheKey)){
+            follower.httpResponseHandler.exception(follower.easyHttpClient.getConfiguration().getHandler(), throwable);
+        }
+    }
     
     /**
      * 从网络加载
      * @param uri 请求地址
-     * @param responseEntityCacheFile 响应实体缓存文件
-     * @param responseHeadersCacheFile 响应头缓存文件
      * @param refreshCache 是否刷新缓存
+     * @param staleResponse 需要重新验证的缓存响应，不为null时会带上条件请求头，服务器返回304时直接使用此响应
      */
-    private void fromNetworkLoad(String uri, File responseEntityCacheFile, File responseHeadersCacheFile, boolean refreshCache){
+    private void fromNetworkLoad(String uri, boolean refreshCache, HttpResponse staleResponse){
         if(easyHttpClient.getConfiguration().isDebugMode()){
             Log.d(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）请求地址："+uri);
         }
+        CacheTeeEntity cacheTeeEntity = null;
+        boolean delivered = false;  //是否已经开始回调处理器，开始了的话再失败就不能使用过期的缓存，否则处理器会收到两次响应
+        NegativeCache negativeCache = easyHttpClient.getConfiguration().getNegativeCache();
+        String negativeCacheKey = cacheKey != null ? cacheKey : uri;
+        String host = httpUriRequest.getURI().getHost();
+        RetryHandler retryHandler = easyHttpClient.getConfiguration().getRetryHandler();
+        CircuitBreaker circuitBreaker = host != null ? easyHttpClient.getConfiguration().getCircuitBreaker() : null;
         try{
-            HttpResponse httpResponse = easyHttpClient.getConfiguration().getHttpClient().execute(httpUriRequest, easyHttpClient.getConfiguration().getHttpContext());
+            /* 最近失败过并且还在负缓存的有效期内的话不访问网络，直接失败 */
+            if(negativeCache != null){
+                NegativeCacheException negativeCacheException = negativeCache.check(negativeCacheKey, host);
+                if(negativeCacheException != null){
+                    throw negativeCacheException;
+                }
+            }
+
+            /* 主机已熔断的话不访问网络，直接失败，不消耗限流的令牌也不修改请求 */
+            int circuitGeneration = circuitBreaker != null ? circuitBreaker.acquire(host) : 0;
+
+            /* 设置了限流器的话先拿到令牌，令牌不够的话在定时器中等待，不占用线程；预取以及后台刷新不等待，拿不到令牌直接失败 */
+            RateLimiter rateLimiter = easyHttpClient.getConfiguration().getRateLimiter();
+            if(rateLimiter != null && !tokenReserved){
+                long waitTime;
+                try{
+                    waitTime = rateLimiter.reserve(host, rateLimit, !prefetch && !revalidating);
+                }catch(RateLimitExceededException exception){
+                    if(circuitBreaker != null){
+                        circuitBreaker.release(host, circuitGeneration);
+                    }
+                    throw exception;
+                }
+                if(waitTime > 0){
+                    /* 等待期间不占用半开状态下的试探名额，恢复之后重新申请 */
+                    if(circuitBreaker != null){
+                        circuitBreaker.release(host, circuitGeneration);
+                    }
+                    tokenReserved = true;
+                    if(easyHttpClient.getConfiguration().isDebugMode()){
+                        Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）已限流，" + waitTime + "毫秒后发出请求");
+                    }
+                    scheduleResume(uri, refreshCache, staleResponse, waitTime);
+                    return;
+                }
+            }
+            tokenReserved = false;
+
+            if(staleResponse != null && !HttpCachePolicy.addConditionalHeaders(httpUriRequest, staleResponse)){
+                closeEntity(staleResponse);
+                staleResponse = null;
+            }
+
+            HttpResponse httpResponse;
+            HedgeHandler hedgeHandler = easyHttpClient.getConfiguration().getHedgeHandler();
+            if(retryCount == 0){
+                retryHandler.recordRequest();
+                hedgeHandler.recordRequest();
+            }
+            HttpContext httpContext = easyHttpClient.getConfiguration().newRequestContext();
+            long startTime = System.currentTimeMillis();
+            try{
+                if(isHedgeable() && host != null){
+                    httpResponse = hedgeHandler.execute(this, httpUriRequest, host, httpContext);
+                }else{
+                    httpResponse = easyHttpClient.getConfiguration().getHttpClient().execute(httpUriRequest, httpContext);
+                }
+            }catch(Exception exception){
+                if(circuitBreaker != null){
+                    if(httpUriRequest.isAborted()){
+                        circuitBreaker.release(host, circuitGeneration);
+                    }else{
+                        circuitBreaker.record(host, circuitGeneration, true, System.currentTimeMillis() - startTime);
+                    }
+                }
+                if(!httpUriRequest.isAborted()){
+                    onSample(System.currentTimeMillis() - startTime, true);
+                }
+                /* 安排了重试的话不记入负缓存，否则重试时会直接失败 */
+                if(retryHandler.isRetryException(exception, httpUriRequest, httpContext) && scheduleRetry(uri, refreshCache, staleResponse, null, exception.toString())){
+                    return;
+                }
+                if(negativeCache != null && !isAbandoned()){
+                    negativeCache.recordException(negativeCacheKey, host, exception);
+                }
+                throw exception;
+            }
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if(circuitBreaker != null){
+                circuitBreaker.record(host, circuitGeneration, statusCode >= 500, System.currentTimeMillis() - startTime);
+            }
+            onSample(System.currentTimeMillis() - startTime, statusCode == 429 || statusCode >= 500);
+            if(host != null && statusCode < 500){
+                hedgeHandler.recordLatency(host, System.currentTimeMillis() - startTime);
+            }
+            if(retryHandler.isRetryStatus(statusCode, httpUriRequest) && scheduleRetry(uri, refreshCache, staleResponse, httpResponse, "服务器返回" + statusCode)){
+                return;
+            }
+            if(negativeCache != null){
+                negativeCache.recordStatus(negativeCacheKey, host, statusCode);
+            }
+
+            if(staleResponse != null){
+                HttpCachePolicy.removeConditionalHeaders(httpUriRequest);
+                if(HttpCachePolicy.isNotModified(httpResponse)){
+                    if(easyHttpClient.getConfiguration().isDebugMode()){
+                        Log.d(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）服务器返回304，继续使用缓存");
+                    }
+                    closeEntity(httpResponse);
+                    staleResponse.setHeaders(HttpCachePolicy.updateHeaders(staleResponse.getAllHeaders(), httpResponse));
+                    updateCacheHeaders(staleResponse);
+                    delivered = true;
+                    httpResponseHandler.handleResponse(easyHttpClient.getConfiguration().getHandler(), staleResponse, true, false);
+                    return;
+                }else{
+                    closeEntity(staleResponse);
+                    staleResponse = null;
+                }
+            }
+
+            /* 服务器出错的话优先使用过期的缓存 */
+            if(statusCode >= 500 && !refreshCache){
+                HttpResponse staleCacheResponse = loadStaleCacheResponse();
+                if(staleCacheResponse != null){
+                    closeEntity(httpResponse);
+                    serveStaleCacheResponse(staleCacheResponse, "服务器返回" + statusCode);
+                    return;
+                }
+            }
 
             /* 如果需要缓存 */
-            if(responseCache != null && httpResponseHandler.isCanCache(easyHttpClient.getConfiguration().getHandler(), httpResponse)){
-                if(GeneralUtils.createFile(responseHeadersCacheFile) != null && GeneralUtils.createFile(responseEntityCacheFile) != null){
-                    InputStream inputStream = null;
-                    FileOutputStream fileOutputStream = null;
+            if(responseCache != null && diskCache != null && httpResponse.getEntity() != null && httpResponseHandler.isCanCache(easyHttpClient.getConfiguration().getHandler(), httpResponse) && (!responseCache.isHttpCacheMode() || HttpCachePolicy.isCacheable(httpResponse))){
+                DiskCache.Editor editor = diskCache.edit(diskCacheKey);
+                if(editor != null){
+                    OutputStream outputStream = null;
                     try{
-					    /* 保存响应头 */
-                        Header[] headers = httpResponse.getAllHeaders();
-                        String[] heaerStrings = new String[headers.length];
-                        for(int w = 0; w < headers.length; w++){
-                            Header header = headers[w];
-                            if(header instanceof BufferedHeader){
-                                heaerStrings[w] = header.toString();
-                            }else{
-                                headers[w] = null;
-                            }
+                        File cacheFile = editor.getFile();
+                        if(GeneralUtils.createFile(cacheFile) == null){
+                            throw new IOException("创建文件 "+cacheFile.getPath()+" 失败");
                         }
-                        GeneralUtils.writeString(responseHeadersCacheFile, new Gson().toJson(heaerStrings), false);
-
-					    /* 保存响应体 */
-                        inputStream = httpResponse.getEntity().getContent();
-                        fileOutputStream = new FileOutputStream(responseEntityCacheFile);
-                        GeneralUtils.outputFromInput(inputStream, fileOutputStream);
-                        inputStream.close();
-                        fileOutputStream.flush();
-                        fileOutputStream.close();
-
-                        //将响应实体替换为本地文件
-                        httpResponse.setEntity(new FileEntity(responseEntityCacheFile, "text/plan"));
-                    }catch(IOException exception){
-                        exception.printStackTrace();
-                        if(inputStream != null){ try{inputStream.close();}catch (Exception exception2){exception2.printStackTrace();}}
-                        if(fileOutputStream != null){try{fileOutputStream.flush();fileOutputStream.close();}catch (Exception exception2){exception2.printStackTrace();}}
-                        if(responseEntityCacheFile.delete() || responseHeadersCacheFile.delete()){
-                            if(easyHttpClient.getConfiguration().isDebugMode()){
-                                Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "保存响应失败，缓存文件已刪除");
-                            }
+
+                        /* 先保存状态码和响应头（需要压缩的话等到决定是否压缩时再保存），响应体在处理器读取的同时写入缓存，足够小的话同时留一份在内存中 */
+                        final HttpResponse finalHttpResponse = httpResponse;
+                        final long responseTime = System.currentTimeMillis();
+                        CacheEntry cacheEntry = new CacheEntry(cacheKey, httpResponse.getStatusLine().getStatusCode(), httpResponse.getStatusLine().getReasonPhrase(), httpResponse.getAllHeaders(), responseTime);
+                        outputStream = new BufferedOutputStream(new FileOutputStream(cacheFile));
+                        if(CompressingCacheOutputStream.isCompressible(responseCache, httpResponse.getEntity())){
+                            outputStream = new CompressingCacheOutputStream(outputStream, cacheEntry, responseCache.getCompression(), responseCache.getCompressionThreshold());
                         }else{
-                            if(easyHttpClient.getConfiguration().isDebugMode()){
-                                Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "保存响应失败，缓存文件刪除失敗");
+                            cacheEntry.writeTo(outputStream);
+                        }
+                        long expiresAt = HttpCachePolicy.getExpiresAt(httpResponse, responseTime);
+                        editor.setMetadata(responseTime, expiresAt, getDiscardAt(httpResponse, responseTime, expiresAt));
+                        cacheTeeEntity = new CacheTeeEntity(httpResponse.getEntity(), editor, outputStream, memoryCache != null ? memoryCache.getMaxEntrySize() : -1, new CacheTeeEntity.Listener() {
+                            @Override
+                            public void onCommit(byte[] body) {
+                                if(body != null && memoryCache != null){
+                                    memoryCacheEntry = new MemoryCache.Entry(finalHttpResponse.getStatusLine().getStatusCode(), finalHttpResponse.getStatusLine().getReasonPhrase(), finalHttpResponse.getAllHeaders(), finalHttpResponse.getEntity().getContentType(), body, responseTime);
+                                    memoryCache.put(sharedCacheKey, memoryCacheEntry);
+                                }
+                            }
+
+                            @Override
+                            public void onAbort() {
+                                if(memoryCache != null){
+                                    memoryCache.remove(sharedCacheKey);
+                                }
+                                if(easyHttpClient.getConfiguration().isDebugMode()){
+                                    Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "保存响应失败，缓存文件已刪除");
+                                }
                             }
+                        });
+                        httpResponse.setEntity(cacheTeeEntity);
+                    }catch(IOException exception){
+                        exception.printStackTrace();
+                        if(outputStream != null){try{outputStream.close();}catch (Exception exception2){exception2.printStackTrace();}}
+                        editor.abort();
+                        if(easyHttpClient.getConfiguration().isDebugMode()){
+                            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "保存响应失败，本次不缓存");
                         }
-                        throw exception;
                     }
                 }else{
                     if(easyHttpClient.getConfiguration().isDebugMode()){
-                        Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "创建文件 "+responseHeadersCacheFile.getPath() + " 或 " + responseEntityCacheFile.getPath()+" 失败");
+                        Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "缓存正在被其它请求写入，本次不缓存");
                     }
                 }
             }
 
+            /* 后台刷新的话先分发给跟随者 */
+            finishRevalidation(httpResponse);
+
             /* 回调处理响应 */
             if(!refreshCache || (responseCache != null && responseCache.isRefreshCallback())){
+                delivered = true;
                 httpResponseHandler.handleResponse(easyHttpClient.getConfiguration().getHandler(), httpResponse, false, false);
             }
+
+            /* 处理器没有读完（或者不需要回调）的话把剩下的读完，保证缓存完整 */
+            if(cacheTeeEntity != null){
+                cacheTeeEntity.finish();
+            }
         }catch(Throwable throwable){
+            if(cacheTeeEntity != null){
+                cacheTeeEntity.abort();
+            }
+            failRevalidation(throwable);
             throwable.printStackTrace();
             if(easyHttpClient.getConfiguration().isDebugMode()){
                 Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）加载失败："+throwable.toString());
             }
+            if(staleResponse != null){
+                closeEntity(staleResponse);
+            }
             httpUriRequest.abort();
+            if(isAbandoned()){
+                return;
+            }
+
+            /* 刷新缓存时缓存已经回调过了，已经开始回调处理器的话也不能再使用过期的缓存，只回调异常 */
+            HttpResponse staleCacheResponse = !refreshCache && !delivered ? loadStaleCacheResponse() : null;
+            if(staleCacheResponse != null){
+                serveStaleCacheResponse(staleCacheResponse, throwable.toString());
+            }else{
+                httpResponseHandler.exception(easyHttpClient.getConfiguration().getHandler(), throwable);
+            }
+        }
+    }
+
+    /**
+     * 判断是否可以对冲，只有延迟敏感的前台Get请求才可以对冲
+     */
+    private boolean isHedgeable() {
+        return latencyCritical && !prefetch && !revalidating && "GET".equals(httpUriRequest.getMethod());
+    }
+
+    /**
+     * 把往返时间以及是否出错告诉请求调度器，用来自适应调整该主机的并发限制
+     * @param rtt 从发出请求到收到响应头的时间，单位毫秒
+     * @param dropped 是否发生了错误或者服务器表示已经过载
+     */
+    private void onSample(long rtt, boolean dropped){
+        ThreadPoolExecutor threadPool = easyHttpClient.getConfiguration().getThreadPool();
+        if(threadPool instanceof RequestDispatcher){
+            ((RequestDispatcher) threadPool).onSample(httpUriRequest, rtt, dropped);
+        }
+    }
+
+    /**
+     * 加载过期的缓存，只有开启了staleIfError才会加载，不判断是否过期
+     * @return 缓存的响应，没有开启staleIfError或者没有缓存的话返回null
+     */
+    private HttpResponse loadStaleCacheResponse(){
+        if(responseCache == null || !responseCache.isStaleIfError()){
+            return null;
+        }
+        if(memoryCache != null){
+            MemoryCache.Entry entry = memoryCache.get(sharedCacheKey);
+            if(entry != null){
+                return entry.toHttpResponse();
+            }
+        }
+        DiskCache.Entry diskCacheEntry = diskCache != null ? diskCache.get(diskCacheKey) : null;
+        if(diskCacheEntry == null){
+            return null;
+        }
+        InputStream inputStream = null;
+        try{
+            FileInputStream fileInputStream = new FileInputStream(diskCacheEntry.getFile());
+            inputStream = new BufferedInputStream(fileInputStream);
+            CacheEntry cacheEntry = CacheEntry.readFrom(inputStream);
+            if(!cacheKey.equals(cacheEntry.getKey())){
+                inputStream.close();
+                return null;
+            }
+            HttpResponse httpResponse = cacheEntry.toHttpResponse();
+            httpResponse.setEntity(createFileEntity(fileInputStream, inputStream, cacheEntry.getBodyOffset(), fileInputStream.getChannel().size() - cacheEntry.getBodyOffset(), cacheEntry.getCompression(), httpResponse.getFirstHeader("Content-Type")));
+            return httpResponse;
+        }catch(Exception exception){
+            exception.printStackTrace();
+            if(inputStream != null){ try{inputStream.close();}catch (Exception exception2){exception2.printStackTrace();}}
+            return null;
+        }
+    }
+
+    /**
+     * 从网络加载失败，使用过期的缓存回调处理响应
+     * @param httpResponse 过期的缓存
+     * @param reason 失败原因，用于输出LOG
+     */
+    private void serveStaleCacheResponse(HttpResponse httpResponse, String reason){
+        if(easyHttpClient.getConfiguration().isDebugMode()){
+            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（网络）加载失败（" + reason + "），使用过期的缓存");
+        }
+        try{
+            httpResponseHandler.handleResponse(easyHttpClient.getConfiguration().getHandler(), httpResponse, true, false);
+        }catch(Throwable throwable){
+            throwable.printStackTrace();
             httpResponseHandler.exception(easyHttpClient.getConfiguration().getHandler(), throwable);
         }
     }
+
+    /**
+     * 服务器返回304后更新缓存的响应头以及缓存时间，响应体保持不变
+     * <br>磁盘缓存将新的响应头和原来的响应体写到临时文件中再提交，正在读取旧版本的请求不受影响；内存缓存则直接替换成更新后的响应头
+     * @param httpResponse 更新了响应头的缓存响应
+     */
+    private void updateCacheHeaders(HttpResponse httpResponse){
+        Header[] headers = httpResponse.getAllHeaders();
+        long now = System.currentTimeMillis();
+        if(diskCache != null){
+            DiskCache.Editor editor = diskCache.edit(diskCacheKey);
+            if(editor != null){
+                try{
+                    File cleanFile = editor.getCleanFile();
+                    if(cleanFile == null){
+                        throw new IOException("缓存 " + cacheKey + " 不存在");
+                    }
+                    rewriteCacheFile(cleanFile, editor.getFile(), headers, now);
+                    long expiresAt = HttpCachePolicy.getExpiresAt(httpResponse, now);
+                    editor.setMetadata(now, expiresAt, getDiscardAt(httpResponse, now, expiresAt));
+                    editor.commit();
+                }catch(IOException exception){
+                    exception.printStackTrace();
+                    editor.abort();
+                }
+            }
+        }
+        if(memoryCache != null && memoryCacheEntry != null){
+            memoryCacheEntry = memoryCacheEntry.copy(headers, now);
+            memoryCache.put(sharedCacheKey, memoryCacheEntry);
+        }
+    }
+
+    /**
+     * 计算缓存可以直接删除的时间，后台清理时会删除到了这个时间的缓存
+     * <br>非Http缓存模式下就是有效期结束的时间；Http缓存模式下没有ETag和Last-Modified的缓存过期之后无法重新验证，过期时间就是可删除时间，能重新验证的则一直保留，交给LRU淘汰
+     * <br>开启了staleIfError的话过期的缓存还要在网络加载失败时使用，也一直保留
+     * @param httpResponse 缓存的响应
+     * @param responseTime 响应时间
+     * @param expiresAt 按照Http缓存语义计算出的过期时间
+     * @return 可以直接删除的时间，-1：永远不会自动删除
+     */
+    private long getDiscardAt(HttpResponse httpResponse, long responseTime, long expiresAt){
+        if(responseCache.isStaleIfError()){
+            return -1;
+        }
+        if(!responseCache.isHttpCacheMode()){
+            return responseCache.getPeriodOfValidity() > 0 ? responseTime + responseCache.getPeriodOfValidity() : -1;
+        }
+        return HttpCachePolicy.isRevalidatable(httpResponse) ? -1 : expiresAt;
+    }
+
+    /**
+     * 用新的响应头和原来的响应体重写缓存文件
+     * @param cleanFile 原来的缓存文件
+     * @param tempFile 要写入的临时文件
+     * @param headers 新的响应头
+     * @param responseTime 新的响应时间
+     * @throws IOException
+     */
+    private static void rewriteCacheFile(File cleanFile, File tempFile, Header[] headers, long responseTime) throws IOException{
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(cleanFile));
+        try{
+            CacheEntry oldCacheEntry = CacheEntry.readFrom(inputStream);
+            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+            try{
+                new CacheEntry(oldCacheEntry.getKey(), oldCacheEntry.getStatusCode(), oldCacheEntry.getReasonPhrase(), headers, responseTime).withCompression(oldCacheEntry.getCompression()).writeTo(outputStream);
+                GeneralUtils.outputFromInput(inputStream, outputStream);
+                outputStream.flush();
+            }finally{
+                outputStream.close();
+            }
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 创建缓存文件的响应体，优先将文件映射到内存，映射完就关闭文件；文件太大无法映射的时候才用输入流
+     * @param fileInputStream 缓存文件
+     * @param inputStream 已经位于响应体开头的输入流，映射成功的话会被关闭
+     * @param bodyOffset 响应体在文件中的位置
+     * @param bodyLength 响应体的长度，压缩过的话是压缩后的长度
+     * @param compression 响应体的压缩方式
+     * @param contentType 响应体类型
+     * @return 响应体
+     * @throws IOException
+     */
+    private static HttpEntity createFileEntity(FileInputStream fileInputStream, InputStream inputStream, long bodyOffset, long bodyLength, CacheCompression compression, Header contentType) throws IOException{
+        if(bodyLength <= Integer.MAX_VALUE){
+            try{
+                if(compression == CacheCompression.NONE){
+                    return ByteBufferEntity.map(fileInputStream, bodyOffset, bodyLength, contentType);
+                }else{
+                    return new CompressedEntity(fileInputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, bodyOffset, bodyLength), compression, contentType);
+                }
+            }finally{
+                inputStream.close();
+            }
+        }else{
+            InputStreamEntity fileEntity = new InputStreamEntity(CompressedEntity.inflate(inputStream, compression), compression == CacheCompression.NONE ? bodyLength : -1);
+            fileEntity.setContentType(contentType);
+            return fileEntity;
+        }
+    }
+
+    /**
+     * 将压缩的响应体解压到内存中
+     * @param body 压缩的响应体
+     * @param compression 压缩方式
+     * @param limit 解压后最多允许的字节数
+     * @return 解压后的响应体，超出限制时返回null
+     * @throws IOException 数据损坏
+     */
+    private static byte[] inflate(byte[] body, CacheCompression compression, int limit) throws IOException{
+        InputStream inputStream = CompressedEntity.inflate(new ByteArrayInputStream(body), compression);
+        try{
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.min(limit, body.length * 4L));
+            byte[] buffer = new byte[8 * 1024];
+            int length;
+            while((length = inputStream.read(buffer)) != -1){
+                if(outputStream.size() + length > limit){
+                    return null;
+                }
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        }finally{
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 关闭响应体，释放连接或者文件
+     * @param httpResponse Http响应
+     */
+    private static void closeEntity(HttpResponse httpResponse){
+        if(httpResponse.getEntity() != null){
+            try{
+                httpResponse.getEntity().consumeContent();
+            }catch(Exception exception){
+                exception.printStackTrace();
+            }
+        }
+    }
 }
@@ -15,13 +15,16 @@
  */
 package me.xiaopan.android.easynetwork.http;
 
+import java.io.IOException;
 import java.util.List;
 
 import me.xiaopan.android.easynetwork.http.headers.ContentType;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
 
 public class HttpUtils {
 	/**
@@ -72,4 +75,31 @@ public class HttpUtils {
         }
         return httpRequest;
     }
+
+    /**
+     * 读取响应体的全部字节，缓存的响应体（{@link ByteBufferEntity}）只复制一次，不经过BufferedHttpEntity和中间缓冲区
+     * @param httpEntity 响应体
+     * @return 全部字节
+     * @throws IOException
+     */
+    public static final byte[] toByteArray(HttpEntity httpEntity) throws IOException{
+        if(httpEntity instanceof ByteBufferEntity){
+            return ((ByteBufferEntity) httpEntity).toByteArray();
+        }
+        return EntityUtils.toByteArray(httpEntity);
+    }
+
+    /**
+     * 将响应体读取成字符串，缓存的响应体（{@link ByteBufferEntity}）直接解码，不经过中间的字节数组
+     * @param httpEntity 响应体
+     * @param charset 编码
+     * @return 字符串
+     * @throws IOException
+     */
+    public static final String toString(HttpEntity httpEntity, String charset) throws IOException{
+        if(httpEntity instanceof ByteBufferEntity){
+            return ((ByteBufferEntity) httpEntity).toString(charset);
+        }
+        return EntityUtils.toString(httpEntity, charset);
+    }
 }
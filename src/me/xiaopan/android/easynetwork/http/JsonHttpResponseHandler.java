@@ -16,14 +16,13 @@
 package me.xiaopan.android.easynetwork.http;
 
 import java.lang.reflect.Type;
+import java.util.Arrays;
 
 import me.xiaopan.android.easynetwork.http.annotation.ResponseBody;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.entity.BufferedHttpEntity;
-import org.apache.http.util.EntityUtils;
 import org.json.JSONObject;
 
 import android.os.Handler;
@@ -33,7 +32,7 @@ import com.google.gson.GsonBuilder;
 /**
  * 默认的JsonHttp响应处理器
  */
-public abstract class JsonHttpResponseHandler<T> extends HttpResponseHandler {
+public abstract class JsonHttpResponseHandler<T> extends HttpResponseHandler implements SharedResponseParser {
 	private Class<?> responseClass;
 	private Type responseType;
 
@@ -57,42 +56,31 @@ public abstract class JsonHttpResponseHandler<T> extends HttpResponseHandler {
 
 	@Override
 	public void handleResponse(final Handler handler, final HttpResponse httpResponse, final boolean isCache, final boolean isRefreshCacheAndCallback) throws Throwable {
+		deliverResponse(handler, parseResponse(httpResponse), isCache, isRefreshCacheAndCallback);
+	}
+
+	@Override
+	public Object getParseKey() {
+		return Arrays.asList(getClass(), responseClass, responseType);
+	}
+
+	@Override
+	public Object parseResponse(final HttpResponse httpResponse) throws Throwable {
 		if(httpResponse.getStatusLine().getStatusCode() > 100 && httpResponse.getStatusLine().getStatusCode() < 300 ){
 			HttpEntity httpEntity = httpResponse.getEntity();
 			if(httpEntity != null){
 				/* 读取返回的JSON字符串并转换成对象 */
-				String jsonString = EntityUtils.toString(new BufferedHttpEntity(httpEntity), HttpUtils.getResponseCharset(httpResponse));
+				String jsonString = HttpUtils.toString(httpEntity, HttpUtils.getResponseCharset(httpResponse));
 				if(jsonString != null && !"".equals(jsonString)){
 					if(responseClass != null){	//如果是要转换成一个对象
                         ResponseBody responseBodyKey = responseClass.getAnnotation(ResponseBody.class);
 						if(responseBodyKey != null && responseBodyKey.value() != null && !"".equals(responseBodyKey.value())){
-                            final Object object = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().fromJson(new JSONObject(jsonString).getString(responseBodyKey.value()), responseClass);
-                            handler.post(new Runnable() {
-                                @SuppressWarnings("unchecked")
-								@Override
-                                public void run() {
-                                    onSuccess((T) object, isCache, isRefreshCacheAndCallback);
-                                }
-                            });
+                            return new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().fromJson(new JSONObject(jsonString).getString(responseBodyKey.value()), responseClass);
 						}else{
-                            final Object object = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().fromJson(jsonString, responseClass);
-                            handler.post(new Runnable() {
-                                @SuppressWarnings("unchecked")
-								@Override
-                                public void run() {
-                                    onSuccess((T) object, isCache, isRefreshCacheAndCallback);
-                                }
-                            });
+                            return new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().fromJson(jsonString, responseClass);
 						}
 					}else if(responseType != null){	//如果是要转换成一个集合
-                        final Object object = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().fromJson(jsonString, responseType);
-                        handler.post(new Runnable() {
-                            @SuppressWarnings("unchecked")
-							@Override
-                            public void run() {
-                                onSuccess((T) object, isCache, isRefreshCacheAndCallback);
-                            }
-                        });
+                        return new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().fromJson(jsonString, responseType);
 					}else{
                         throw new Exception("responseClass和responseType至少有一个不能为null");
 					}
@@ -106,6 +94,17 @@ public abstract class JsonHttpResponseHandler<T> extends HttpResponseHandler {
             throw new HttpResponseException(httpResponse.getStatusLine().getStatusCode(), "异常状态码："+httpResponse.getStatusLine().getStatusCode());
 		}
 	}
+
+	@Override
+	public void deliverResponse(final Handler handler, final Object responseObject, final boolean isCache, final boolean isRefreshCacheAndCallback) {
+        handler.post(new Runnable() {
+            @SuppressWarnings("unchecked")
+			@Override
+            public void run() {
+                onSuccess((T) responseObject, isCache, isRefreshCacheAndCallback);
+            }
+        });
+	}
 	
 	@Override
 	public void exception(final Handler handler, final Throwable e) {
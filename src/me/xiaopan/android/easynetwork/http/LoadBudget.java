@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+/**
+ * 额外负载预算，统计最近10秒内的请求次数以及额外请求（例如重试、对冲请求）的次数，额外请求最多只能占请求次数的一定比例（请求很少的时候始终允许少量额外请求），
+ * 防止服务器出问题时额外请求进一步加重它的负担
+ */
+class LoadBudget {
+    private static final int BUCKET_COUNT = 10; //统计窗口分成多少段
+    private static final long BUCKET_DURATION = 1000;  //每一段的时长，单位毫秒
+
+    private final int minExtras;    //每个统计窗口内始终允许的额外请求数
+    private final long[] bucketTimes = new long[BUCKET_COUNT];  //每一段的开始时间
+    private final int[] requestCounts = new int[BUCKET_COUNT];  //每一段内的请求次数
+    private final int[] extraCounts = new int[BUCKET_COUNT];    //每一段内的额外请求次数
+
+    LoadBudget(int minExtras) {
+        this.minExtras = minExtras;
+    }
+
+    /**
+     * 记录一次请求，预算按请求次数的比例计算
+     */
+    synchronized void recordRequest() {
+        requestCounts[getBucket(System.currentTimeMillis())]++;
+    }
+
+    /**
+     * 从预算中申请一次额外请求
+     * @param percent 额外请求最多占请求次数的百分比
+     * @return 是否申请成功，失败说明最近额外请求太多了
+     */
+    synchronized boolean acquire(int percent) {
+        long now = System.currentTimeMillis();
+        int bucket = getBucket(now);
+        int requestCount = 0;
+        int extraCount = 0;
+        for(int w = 0; w < BUCKET_COUNT; w++){
+            if(now - bucketTimes[w] < BUCKET_COUNT * BUCKET_DURATION){
+                requestCount += requestCounts[w];
+                extraCount += extraCounts[w];
+            }
+        }
+        if(extraCount >= minExtras + (long) requestCount * percent / 100){
+            return false;
+        }
+        extraCounts[bucket]++;
+        return true;
+    }
+
+    /**
+     * 获取当前时间所在的段，过期的段会先清零
+     */
+    private int getBucket(long now) {
+        long bucketTime = now - now % BUCKET_DURATION;
+        int bucket = (int) ((now / BUCKET_DURATION) % BUCKET_COUNT);
+        if(bucketTimes[bucket] != bucketTime){
+            bucketTimes[bucket] = bucketTime;
+            requestCounts[bucket] = 0;
+            extraCounts[bucket] = 0;
+        }
+        return bucket;
+    }
+}
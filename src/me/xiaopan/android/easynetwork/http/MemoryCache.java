@@ -0,0 +1,262 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+/**
+ * 内存缓存，以字节数为限制按照LRU算法缓存响应（状态码、响应头以及响应体），位于磁盘缓存之前，命中时不需要任何文件操作
+ */
+public class MemoryCache {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+    private int maxSize;    //最大字节数
+    private int size;   //当前字节数
+    private int hitCount;   //命中次数
+    private int missCount;  //未命中次数
+
+    /**
+     * 创建一个内存缓存
+     * @param maxSize 最大字节数
+     */
+    public MemoryCache(int maxSize) {
+        if(maxSize <= 0){
+            throw new IllegalArgumentException("maxSize 必须大于0");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 获取缓存
+     * @param key 缓存KEY
+     * @return 缓存，null：不存在
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if(entry != null){
+            hitCount++;
+        }else{
+            missCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * 放入缓存，超过单条上限（最大字节数的1/8）的响应不会缓存
+     * @param key 缓存KEY
+     * @param entry 缓存
+     * @return 是否放入成功
+     */
+    public synchronized boolean put(String key, Entry entry) {
+        if(entry.getSize() > getMaxEntrySize()){
+            remove(key);
+            return false;
+        }
+
+        Entry oldEntry = entries.put(key, entry);
+        if(oldEntry != null){
+            size -= oldEntry.getSize();
+        }
+        size += entry.getSize();
+        trimToSize(maxSize);
+        return true;
+    }
+
+    /**
+     * 删除缓存
+     * @param key 缓存KEY
+     */
+    public synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if(entry != null){
+            size -= entry.getSize();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * 删除最久没有使用的缓存，直到总字节数不超过给定的大小
+     * @param targetSize 给定的大小
+     */
+    public synchronized void trimToSize(int targetSize) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while(size > targetSize && iterator.hasNext()){
+            size -= iterator.next().getValue().getSize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 获取单条缓存的最大字节数
+     * @return 单条缓存的最大字节数
+     */
+    public synchronized int getMaxEntrySize() {
+        return maxSize / 8;
+    }
+
+    /**
+     * 获取最大字节数
+     * @return 最大字节数
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 设置最大字节数
+     * @param maxSize 最大字节数
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 获取当前字节数
+     * @return 当前字节数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 获取命中次数
+     * @return 命中次数
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数
+     * @return 未命中次数
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 缓存的响应
+     */
+    public static class Entry {
+        private final int statusCode;   //状态码
+        private final String reasonPhrase;  //状态描述
+        private final Header[] headers; //响应头
+        private final Header contentType;   //响应体类型
+        private final byte[] body;  //响应体
+        private final long time;    //缓存时间
+        private final int size; //占用的字节数
+
+        /**
+         * 创建一个缓存的响应
+         * @param statusCode 状态码
+         * @param reasonPhrase 状态描述
+         * @param headers 响应头
+         * @param contentType 响应体类型
+         * @param body 响应体
+         * @param time 缓存时间
+         */
+        public Entry(int statusCode, String reasonPhrase, Header[] headers, Header contentType, byte[] body, long time) {
+            this.statusCode = statusCode;
+            this.reasonPhrase = reasonPhrase;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.body = body;
+            this.time = time;
+
+            /* 响应头按照每个字符两个字节估算 */
+            int size = body.length;
+            if(headers != null){
+                for(Header header : headers){
+                    if(header != null){
+                        size += (header.getName().length() + (header.getValue() != null ? header.getValue().length() : 0)) * 2;
+                    }
+                }
+            }
+            this.size = size;
+        }
+
+        /**
+         * 获取占用的字节数
+         * @return 占用的字节数
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * 获取缓存时间
+         * @return 缓存时间
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * 获取响应体
+         * @return 响应体
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * 获取响应头
+         * @return 响应头
+         */
+        public Header[] getHeaders() {
+            return headers;
+        }
+
+        /**
+         * 使用新的响应头和缓存时间复制一份，响应体共用
+         * @param headers 新的响应头
+         * @param time 新的缓存时间
+         * @return 新的缓存
+         */
+        public Entry copy(Header[] headers, long time) {
+            return new Entry(statusCode, reasonPhrase, headers, contentType, body, time);
+        }
+
+        /**
+         * 转换成一个新的HttpResponse，响应体直接包装缓存的字节数组（只读），不会再复制
+         * @return HttpResponse
+         */
+        public HttpResponse toHttpResponse() {
+            HttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), statusCode, reasonPhrase));
+            if(headers != null){
+                httpResponse.setHeaders(headers);
+            }
+            httpResponse.setEntity(new ByteBufferEntity(ByteBuffer.wrap(body), contentType));
+            return httpResponse;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.xiaopan.android.easynetwork.http.enums.NegativeCacheScope;
+
+/**
+ * 负缓存，记住最近失败的请求（或者主机），在有效期内再次请求时不访问网络直接以NegativeCacheException失败，避免服务器宕机时每次刷新都要经历多次重试才失败
+ * <br>状态码失败默认是所有5xx，异常失败默认是所有IOException，请求成功后会清除对应的失败记录
+ * <br>值得注意的是你必须通过其Builder来创建NegativeCache
+ */
+public class NegativeCache {
+    private static final int MAX_RECORDS = 256; //最多保留的失败记录数，超出时丢弃最早的
+
+    private long ttl = 10 * 1000;   //失败记录的有效期，单位毫秒
+    private NegativeCacheScope scope = NegativeCacheScope.KEY;  //失败记录的范围
+    private Set<Integer> statusCodes;   //视为失败的状态码，为null时所有5xx都视为失败
+    private List<Class<?>> exceptionClasses;  //视为失败的异常
+    private final Map<String, Record> records = new LinkedHashMap<String, Record>(16, 0.75f, false){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+            return size() > MAX_RECORDS;
+        }
+    };
+
+    private NegativeCache(){}
+
+    /**
+     * 检查是否有未过期的失败记录
+     * @param key 缓存KEY或者请求地址
+     * @param host 主机名
+     * @return 未过期的失败记录对应的异常，没有的话返回null
+     */
+    synchronized NegativeCacheException check(String key, String host) {
+        String recordKey = getRecordKey(key, host);
+        Record record = records.get(recordKey);
+        if(record == null){
+            return null;
+        }
+        if(System.currentTimeMillis() >= record.expiresAt){
+            records.remove(recordKey);
+            return null;
+        }
+        return new NegativeCacheException(recordKey, record.statusCode, record.failureClassName, record.expiresAt);
+    }
+
+    /**
+     * 判断状态码是否视为失败
+     * @param statusCode 状态码
+     * @return 是否视为失败
+     */
+    boolean isFailureStatus(int statusCode) {
+        return statusCodes != null ? statusCodes.contains(statusCode) : statusCode >= 500;
+    }
+
+    /**
+     * 判断异常是否视为失败，NegativeCacheException本身不会被记录
+     * @param throwable 异常
+     * @return 是否视为失败
+     */
+    boolean isFailureException(Throwable throwable) {
+        if(throwable instanceof NegativeCacheException){
+            return false;
+        }
+        for(Class<?> exceptionClass : exceptionClasses){
+            if(exceptionClass.isInstance(throwable)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 根据状态码记录失败或者清除失败记录
+     * @param key 缓存KEY或者请求地址
+     * @param host 主机名
+     * @param statusCode 状态码
+     */
+    synchronized void recordStatus(String key, String host, int statusCode) {
+        if(isFailureStatus(statusCode)){
+            records.put(getRecordKey(key, host), new Record(statusCode, null, System.currentTimeMillis() + ttl));
+        }else{
+            records.remove(getRecordKey(key, host));
+        }
+    }
+
+    /**
+     * 记录异常失败，不视为失败的异常会被忽略
+     * @param key 缓存KEY或者请求地址
+     * @param host 主机名
+     * @param throwable 异常
+     */
+    synchronized void recordException(String key, String host, Throwable throwable) {
+        if(isFailureException(throwable)){
+            records.put(getRecordKey(key, host), new Record(-1, throwable.getClass().getName(), System.currentTimeMillis() + ttl));
+        }
+    }
+
+    private String getRecordKey(String key, String host) {
+        return scope == NegativeCacheScope.HOST && host != null ? host : key;
+    }
+
+    /**
+     * 清除所有失败记录
+     */
+    public synchronized void clear() {
+        records.clear();
+    }
+
+    /**
+     * 获取失败记录的有效期
+     * @return 有效期，单位毫秒
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * 获取失败记录的范围
+     * @return 范围
+     */
+    public NegativeCacheScope getScope() {
+        return scope;
+    }
+
+    /**
+     * 失败记录
+     */
+    private static class Record {
+        private final int statusCode;
+        private final String failureClassName;
+        private final long expiresAt;
+
+        private Record(int statusCode, String failureClassName, long expiresAt) {
+            this.statusCode = statusCode;
+            this.failureClassName = failureClassName;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class Builder{
+        private NegativeCache negativeCache;
+
+        public Builder() {
+            negativeCache = new NegativeCache();
+        }
+
+        /**
+         * 设置失败记录的有效期，默认10秒
+         * @param ttl 有效期，单位毫秒
+         */
+        public Builder setTtl(long ttl) {
+            if(ttl <= 0){
+                throw new IllegalArgumentException("ttl 必须大于0");
+            }
+            negativeCache.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * 设置失败记录的范围，默认按缓存KEY记录
+         * @param scope 范围
+         */
+        public Builder setScope(NegativeCacheScope scope) {
+            negativeCache.scope = scope != null ? scope : NegativeCacheScope.KEY;
+            return this;
+        }
+
+        /**
+         * 添加视为失败的状态码，一旦添加就只有这些状态码视为失败，否则所有5xx都视为失败
+         * @param statusCodes 状态码
+         */
+        public Builder addStatusCodes(int... statusCodes) {
+            if(negativeCache.statusCodes == null){
+                negativeCache.statusCodes = new HashSet<Integer>();
+            }
+            for(int statusCode : statusCodes){
+                negativeCache.statusCodes.add(statusCode);
+            }
+            return this;
+        }
+
+        /**
+         * 添加视为失败的异常，子类也算，一旦添加就只有这些异常视为失败，否则所有IOException都视为失败
+         * @param exceptionClasses 异常，必须是Throwable的子类
+         */
+        public Builder addExceptionClasses(Class<?>... exceptionClasses) {
+            if(negativeCache.exceptionClasses == null){
+                negativeCache.exceptionClasses = new ArrayList<Class<?>>();
+            }
+            for(Class<?> exceptionClass : exceptionClasses){
+                if(exceptionClass == null || !Throwable.class.isAssignableFrom(exceptionClass)){
+                    throw new IllegalArgumentException(exceptionClass + " 不是异常");
+                }
+                negativeCache.exceptionClasses.add(exceptionClass);
+            }
+            return this;
+        }
+
+        /**
+         * 创建
+         * @return
+         */
+        public NegativeCache create(){
+            if(negativeCache.exceptionClasses == null){
+                negativeCache.exceptionClasses = new ArrayList<Class<?>>();
+                negativeCache.exceptionClasses.add(IOException.class);
+            }
+            return negativeCache;
+        }
+    }
+}
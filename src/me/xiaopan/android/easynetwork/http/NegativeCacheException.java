@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.IOException;
+
+/**
+ * 负缓存命中异常，同一个请求（或者主机）最近失败过并且还在负缓存的有效期内，本次没有访问网络直接失败
+ */
+public class NegativeCacheException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int statusCode;   //上次失败时的状态码，-1：上次是发生了异常
+    private final String failureClassName;  //上次失败时的异常类名，上次是状态码失败的话为null
+    private final long expiresAt;   //失败记录的过期时间，到了这个时间才会再次访问网络
+
+    NegativeCacheException(String key, int statusCode, String failureClassName, long expiresAt) {
+        super(key + " 最近请求失败（" + (failureClassName != null ? failureClassName : "状态码 " + statusCode) + "），" + Math.max(0, expiresAt - System.currentTimeMillis()) + "毫秒内不再访问网络");
+        this.statusCode = statusCode;
+        this.failureClassName = failureClassName;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * 获取上次失败时的状态码
+     * @return 状态码，-1：上次是发生了异常
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 获取上次失败时的异常类名
+     * @return 异常类名，上次是状态码失败的话为null
+     */
+    public String getFailureClassName() {
+        return failureClassName;
+    }
+
+    /**
+     * 获取失败记录的过期时间，到了这个时间才会再次访问网络
+     * @return 过期时间
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * 一批预取请求，负责统计进度以及回调监听器
+ * <br>每个请求都是一个独立的任务，在低优先级的预取线程池中执行，开始之前会先等待前台请求结束；请求只负责填充缓存，不会回调任何响应处理器
+ */
+class PrefetchBatch {
+    private static final long MAX_YIELD_MILLIS = 5000;  //每个预取请求最多为前台请求等待的时间
+
+    private final Context context;
+    private final EasyHttpClient easyHttpClient;
+    private final PrefetchListener listener;    //预取监听器，可以为null
+    private final int totalCount;   //总的请求数量
+    private int succeededCount; //成功的请求数量
+    private int failedCount;    //失败的请求数量
+    private long totalBytes;    //从网络下载的总字节数
+
+    PrefetchBatch(Context context, EasyHttpClient easyHttpClient, int totalCount, PrefetchListener listener) {
+        this.context = context;
+        this.easyHttpClient = easyHttpClient;
+        this.totalCount = totalCount;
+        this.listener = listener;
+    }
+
+    /**
+     * 创建一个预取请求
+     * @param name 请求名称
+     * @param httpUriRequest 请求
+     * @param responseCache 响应缓存配置
+     * @return 预取请求
+     */
+    HttpRequestRunnable createRequest(String name, HttpUriRequest httpUriRequest, ResponseCache responseCache) {
+        HttpRequestRunnable httpRequestRunnable = new HttpRequestRunnable(context, easyHttpClient, name, httpUriRequest, responseCache, new PrefetchHttpResponseHandler());
+        httpRequestRunnable.setPrefetch(true);
+        return httpRequestRunnable;
+    }
+
+    /**
+     * 创建一个预取任务
+     * @param httpRequestRunnable 通过createRequest()创建的预取请求
+     * @return 预取任务
+     */
+    Runnable createTask(final HttpRequestRunnable httpRequestRunnable) {
+        final String name = httpRequestRunnable.getName();
+        return new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    if(!easyHttpClient.getConfiguration().getForegroundRequestTracker().awaitIdle(MAX_YIELD_MILLIS)){
+                        if(easyHttpClient.getConfiguration().isDebugMode()){
+                            Log.w(easyHttpClient.getConfiguration().getLogTag(), name + "（预取）等待前台请求超时，继续预取");
+                        }
+                    }
+                }catch(InterruptedException exception){
+                    Thread.currentThread().interrupt();
+                    httpRequestRunnable.finishRequest();
+                    return;
+                }
+
+                PrefetchHttpResponseHandler prefetchHttpResponseHandler = (PrefetchHttpResponseHandler) httpRequestRunnable.getHttpResponseHandler();
+                httpRequestRunnable.run();
+                finish(!httpRequestRunnable.isCancelled() && prefetchHttpResponseHandler.throwable == null, prefetchHttpResponseHandler.bytes);
+            }
+        };
+    }
+
+    /**
+     * 请求无法执行，直接算作失败
+     * @param name 请求名称
+     * @param throwable 异常
+     */
+    void fail(String name, Throwable throwable) {
+        if(easyHttpClient.getConfiguration().isDebugMode()){
+            Log.e(easyHttpClient.getConfiguration().getLogTag(), name + "（预取）无法执行：" + throwable.toString());
+        }
+        finish(false, 0);
+    }
+
+    /**
+     * 一个请求完成了，更新进度并回调监听器
+     * @param succeeded 是否成功
+     * @param bytes 从网络下载的字节数
+     */
+    private void finish(boolean succeeded, long bytes) {
+        final int completedCount;
+        final int finalSucceededCount;
+        final int finalFailedCount;
+        final long finalTotalBytes;
+        synchronized(this){
+            if(succeeded){
+                succeededCount++;
+            }else{
+                failedCount++;
+            }
+            totalBytes += bytes;
+            completedCount = succeededCount + failedCount;
+            finalSucceededCount = succeededCount;
+            finalFailedCount = failedCount;
+            finalTotalBytes = totalBytes;
+        }
+
+        if(listener != null){
+            Handler handler = easyHttpClient.getConfiguration().getHandler();
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onProgress(completedCount, totalCount, finalTotalBytes);
+                    if(completedCount == totalCount){
+                        listener.onComplete(finalSucceededCount, finalFailedCount, finalTotalBytes);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 预取用的响应处理器，从网络加载的话把响应体读完（读的同时就写入了缓存）并统计字节数，不做其它任何处理；不能缓存的响应算作失败
+     */
+    private static class PrefetchHttpResponseHandler extends HttpResponseHandler {
+        private long bytes; //从网络下载的字节数
+        private Throwable throwable;    //发生的异常
+
+        @Override
+        public void start(Handler handler) {
+        }
+
+        @Override
+        public void handleResponse(Handler handler, HttpResponse httpResponse, boolean isCache, boolean isRefreshCacheAndCallback) throws Throwable {
+            HttpEntity httpEntity = httpResponse.getEntity();
+            if(isCache || httpEntity == null){
+                return;
+            }
+            InputStream inputStream = httpEntity.getContent();
+            try{
+                byte[] buffer = new byte[8 * 1024];
+                int length;
+                while((length = inputStream.read(buffer)) != -1){
+                    bytes += length;
+                }
+            }finally{
+                inputStream.close();
+            }
+            if(!isCanCache(handler, httpResponse)){
+                throwable = new HttpResponseException(httpResponse.getStatusLine().getStatusCode(), httpResponse.getStatusLine().getReasonPhrase());
+            }
+        }
+
+        @Override
+        public void exception(Handler handler, Throwable e) {
+            throwable = e;
+        }
+    }
+}
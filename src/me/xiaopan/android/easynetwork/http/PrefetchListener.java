@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+/**
+ * 预取监听器，所有的方法都在Configuration.getHandler()所在的线程中回调
+ */
+public interface PrefetchListener {
+    /**
+     * 每完成一个请求回调一次
+     * @param completedCount 已经完成的请求数量，包括失败的
+     * @param totalCount 总的请求数量
+     * @param totalBytes 目前为止从网络下载的字节数，缓存中已有的不算
+     */
+    public void onProgress(int completedCount, int totalCount, long totalBytes);
+
+    /**
+     * 所有的请求都完成了，预取被取消的话不会回调
+     * @param succeededCount 成功的请求数量，包括缓存中已有的
+     * @param failedCount 失败的请求数量
+     * @param totalBytes 从网络下载的总字节数
+     */
+    public void onComplete(int succeededCount, int failedCount, long totalBytes);
+}
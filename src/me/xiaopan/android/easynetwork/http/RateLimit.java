@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+/**
+ * 限流配置，KEY相同的请求共用一个令牌桶，通过RateLimit注解解析出来的话KEY就是注解所在的Request类的类名
+ * <br>只有设置了RateLimiter才会起作用，值得注意的是你必须通过其Builder来创建RateLimit
+ */
+public class RateLimit {
+    private String key; //令牌桶的KEY
+    private double permitsPerSecond;    //每秒允许的请求数
+    private int burst;  //令牌桶的容量，也就是允许的突发请求数
+
+    private RateLimit(){}
+
+    /**
+     * 获取令牌桶的KEY
+     * @return
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 获取每秒允许的请求数
+     * @return
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * 获取允许的突发请求数
+     * @return
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    public static class Builder{
+        private RateLimit rateLimit;
+
+        /**
+         * 创建一个限流配置构建器
+         * @param key 令牌桶的KEY，KEY相同的请求共用一个令牌桶
+         * @param permitsPerSecond 每秒允许的请求数，可以是小数，例如0.5表示每2秒一个
+         */
+        public Builder(String key, double permitsPerSecond) {
+            if(GeneralUtils.isEmpty(key)){
+                throw new IllegalArgumentException("key 不能为空");
+            }
+            if(permitsPerSecond <= 0){
+                throw new IllegalArgumentException("permitsPerSecond 必须大于0");
+            }
+            rateLimit = new RateLimit();
+            rateLimit.key = key;
+            rateLimit.permitsPerSecond = permitsPerSecond;
+            rateLimit.burst = Math.max(1, (int) Math.ceil(permitsPerSecond));
+        }
+
+        /**
+         * 设置允许的突发请求数，也就是令牌桶的容量，空闲一段时间之后最多可以连续发出这么多请求，默认等于每秒允许的请求数（至少为1）
+         * @param burst 突发请求数
+         */
+        public Builder setBurst(int burst) {
+            if(burst <= 0){
+                throw new IllegalArgumentException("burst 必须大于0");
+            }
+            rateLimit.burst = burst;
+            return this;
+        }
+
+        /**
+         * 创建
+         * @return
+         */
+        public RateLimit create(){
+            return rateLimit;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.io.IOException;
+
+/**
+ * 限流异常，需要等待的时间超过了RateLimiter的最大等待时间，本次没有访问网络直接失败
+ */
+public class RateLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final String key;   //令牌不够的令牌桶，全局的令牌桶为"*"，主机的令牌桶为主机名，其它的为RateLimit的KEY
+    private final long waitTime;    //需要等待的时间，单位毫秒
+
+    RateLimitExceededException(String key, long waitTime, long maxWaitTime) {
+        super(key + " 已限流，需要等待" + waitTime + "毫秒，超过了最大等待时间" + maxWaitTime + "毫秒");
+        this.key = key;
+        this.waitTime = waitTime;
+    }
+
+    /**
+     * 获取令牌不够的令牌桶
+     * @return 全局的令牌桶为"*"，主机的令牌桶为主机名，其它的为RateLimit的KEY
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 获取需要等待的时间
+     * @return 需要等待的时间，单位毫秒
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+}
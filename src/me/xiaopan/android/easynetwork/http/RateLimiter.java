@@ -0,0 +1,217 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 限流器，基于令牌桶在发出请求之前限制请求频率，防止触发服务器的限流（429）之后再重试导致情况更糟
+ * <br>令牌桶可以是全局的、按主机的或者按RateLimit的KEY（例如Request类上的RateLimit注解），一个请求要从所有适用的令牌桶中都拿到令牌才能发出
+ * <br>令牌不够的请求会在定时器中等待，不占用线程，需要等待的时间超过最大等待时间的话直接以RateLimitExceededException失败
+ * <br>预取请求以及后台刷新缓存的请求不等待，拿不到令牌的话直接失败，把令牌留给前台请求
+ * <br>值得注意的是你必须通过其Builder来创建RateLimiter
+ */
+public class RateLimiter {
+    public static final String GLOBAL_KEY = "*";    //全局令牌桶的KEY
+
+    private long maxWaitTime = 10 * 1000;   //最大等待时间，单位毫秒
+    private TokenBucket globalBucket;   //全局令牌桶，为null时不限制
+    private final Map<String, TokenBucket> hostBuckets = new HashMap<String, TokenBucket>();   //按主机的令牌桶
+    private final Map<String, TokenBucket> keyBuckets = new HashMap<String, TokenBucket>();    //按RateLimit的KEY的令牌桶，第一次使用时创建
+
+    private RateLimiter(){}
+
+    /**
+     * 预订一个令牌，所有适用的令牌桶都会扣除一个令牌，令牌不够的话会欠着，之后的请求需要等待更久
+     * @param host 主机名，为null时不使用主机的令牌桶
+     * @param rateLimit 请求的限流配置，为null时不使用
+     * @param wait 是否可以等待，false：只有立即就有令牌时才预订成功
+     * @return 需要等待的时间，单位毫秒，0：可以立即发出
+     * @throws RateLimitExceededException 需要等待的时间超过了最大等待时间，或者不可以等待却没有令牌
+     */
+    synchronized long reserve(String host, RateLimit rateLimit, boolean wait) throws RateLimitExceededException {
+        TokenBucket[] buckets = new TokenBucket[]{globalBucket, host != null ? hostBuckets.get(host.toLowerCase(Locale.US)) : null, rateLimit != null ? getKeyBucket(rateLimit) : null};
+        long now = System.currentTimeMillis();
+        long waitTime = 0;
+        String waitKey = null;
+        for(TokenBucket bucket : buckets){
+            if(bucket != null){
+                long bucketWaitTime = bucket.getWaitTime(now);
+                if(bucketWaitTime > waitTime){
+                    waitTime = bucketWaitTime;
+                    waitKey = bucket.key;
+                }
+            }
+        }
+        long allowedWaitTime = wait ? maxWaitTime : 0;
+        if(waitTime > allowedWaitTime){
+            throw new RateLimitExceededException(waitKey, waitTime, allowedWaitTime);
+        }
+        for(TokenBucket bucket : buckets){
+            if(bucket != null){
+                bucket.tokens--;
+            }
+        }
+        return waitTime;
+    }
+
+    private TokenBucket getKeyBucket(RateLimit rateLimit) {
+        TokenBucket bucket = keyBuckets.get(rateLimit.getKey());
+        if(bucket == null){
+            bucket = new TokenBucket(rateLimit.getKey(), rateLimit.getPermitsPerSecond(), rateLimit.getBurst());
+            keyBuckets.put(rateLimit.getKey(), bucket);
+        }else{
+            bucket.setRate(rateLimit.getPermitsPerSecond(), rateLimit.getBurst(), System.currentTimeMillis());
+        }
+        return bucket;
+    }
+
+    /**
+     * 获取某个令牌桶当前可用的令牌数，可以用来监控限流情况
+     * @param key 全局令牌桶为GLOBAL_KEY，主机的令牌桶为主机名，其它的为RateLimit的KEY
+     * @return 可用的令牌数，小于0说明有请求正在等待，-1：没有这个令牌桶
+     */
+    public synchronized double getAvailableTokens(String key) {
+        TokenBucket bucket;
+        if(GLOBAL_KEY.equals(key)){
+            bucket = globalBucket;
+        }else{
+            bucket = hostBuckets.get(key.toLowerCase(Locale.US));
+            if(bucket == null){
+                bucket = keyBuckets.get(key);
+            }
+        }
+        if(bucket == null){
+            return -1;
+        }
+        bucket.refill(System.currentTimeMillis());
+        return bucket.tokens;
+    }
+
+    /**
+     * 获取最大等待时间
+     * @return 最大等待时间，单位毫秒
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * 令牌桶，令牌按固定的速率补充，最多攒到容量那么多
+     */
+    private static class TokenBucket {
+        private final String key;
+        private double permitsPerMillis;    //每毫秒补充的令牌数
+        private double capacity;    //容量
+        private double tokens;  //当前的令牌数，小于0说明有请求预订了还没补充的令牌
+        private long refillTime;    //上次补充的时间
+
+        private TokenBucket(String key, double permitsPerSecond, int burst) {
+            this.key = key;
+            this.permitsPerMillis = permitsPerSecond / 1000;
+            this.capacity = burst;
+            this.tokens = burst;
+            this.refillTime = System.currentTimeMillis();
+        }
+
+        private void refill(long now) {
+            if(now > refillTime){
+                tokens = Math.min(capacity, tokens + (now - refillTime) * permitsPerMillis);
+                refillTime = now;
+            }
+        }
+
+        private void setRate(double permitsPerSecond, int burst, long now) {
+            if(permitsPerMillis != permitsPerSecond / 1000 || capacity != burst){
+                refill(now);
+                permitsPerMillis = permitsPerSecond / 1000;
+                capacity = burst;
+                tokens = Math.min(capacity, tokens);
+            }
+        }
+
+        /**
+         * 获取拿到一个令牌需要等待的时间
+         * @return 单位毫秒
+         */
+        private long getWaitTime(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerMillis);
+        }
+    }
+
+    public static class Builder{
+        private RateLimiter rateLimiter;
+
+        public Builder() {
+            rateLimiter = new RateLimiter();
+        }
+
+        /**
+         * 设置全局的请求频率，所有请求共用一个令牌桶
+         * @param permitsPerSecond 每秒允许的请求数
+         * @param burst 允许的突发请求数，小于等于0时等于每秒允许的请求数（至少为1）
+         */
+        public Builder setGlobalRate(double permitsPerSecond, int burst) {
+            rateLimiter.globalBucket = createBucket(GLOBAL_KEY, permitsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * 设置某个主机的请求频率，发往该主机的请求共用一个令牌桶
+         * @param host 主机名，例如api.example.com
+         * @param permitsPerSecond 每秒允许的请求数
+         * @param burst 允许的突发请求数，小于等于0时等于每秒允许的请求数（至少为1）
+         */
+        public Builder setHostRate(String host, double permitsPerSecond, int burst) {
+            if(GeneralUtils.isEmpty(host)){
+                throw new IllegalArgumentException("host 不能为空");
+            }
+            String key = host.toLowerCase(Locale.US);
+            rateLimiter.hostBuckets.put(key, createBucket(key, permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * 设置最大等待时间，需要等待更久才能拿到令牌的请求直接以RateLimitExceededException失败，默认10秒
+         * @param maxWaitTime 最大等待时间，单位毫秒，0：拿不到令牌就直接失败
+         */
+        public Builder setMaxWaitTime(long maxWaitTime) {
+            if(maxWaitTime < 0){
+                throw new IllegalArgumentException("maxWaitTime 不能小于0");
+            }
+            rateLimiter.maxWaitTime = maxWaitTime;
+            return this;
+        }
+
+        private static TokenBucket createBucket(String key, double permitsPerSecond, int burst) {
+            if(permitsPerSecond <= 0){
+                throw new IllegalArgumentException("permitsPerSecond 必须大于0");
+            }
+            return new TokenBucket(key, permitsPerSecond, burst > 0 ? burst : Math.max(1, (int) Math.ceil(permitsPerSecond)));
+        }
+
+        /**
+         * 创建
+         * @return
+         */
+        public RateLimiter create(){
+            return rateLimiter;
+        }
+    }
+}
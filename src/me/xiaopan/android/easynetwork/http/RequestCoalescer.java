@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合并请求的登记处，保证相同的Get请求同一时间只有一个在执行
+ * <br>执行中再次发起相同请求的会作为跟随者登记在这里，不占用线程，由执行请求的领头者把结果分发给它们
+ * <br>取消是按引用计数的：跟随者取消只是不再接收结果；领头者取消之后只要还有跟随者就继续执行，所有参与者都取消了才会中断网络请求
+ */
+class RequestCoalescer {
+    private final Map<String, Flight> flights = new HashMap<String, Flight>();
+
+    /**
+     * 登记一个请求
+     * @param key 合并KEY
+     * @param runnable 请求
+     * @return true：相同的请求已经在执行了，请求已作为跟随者登记，不需要再执行；false：请求需要自己执行，结束后必须调用{@link #finish(String, HttpRequestRunnable)}
+     */
+    synchronized boolean join(String key, HttpRequestRunnable runnable) {
+        Flight flight = flights.get(key);
+        if(flight != null){
+            flight.followers.add(runnable);
+            return true;
+        }else{
+            flights.put(key, new Flight(runnable));
+            return false;
+        }
+    }
+
+    /**
+     * 结束请求，之后再发起的相同请求将会重新执行
+     * @param key 合并KEY
+     * @param leader 领头者
+     * @return 登记的跟随者，已经取消的不包括在内
+     */
+    synchronized List<HttpRequestRunnable> finish(String key, HttpRequestRunnable leader) {
+        Flight flight = flights.get(key);
+        if(flight == null || flight.leader != leader){
+            return new ArrayList<HttpRequestRunnable>(0);
+        }
+        flights.remove(key);
+        return flight.followers;
+    }
+
+    /**
+     * 取消请求
+     * @param key 合并KEY
+     * @param runnable 要取消的请求
+     * @return 需要中断网络请求的领头者，null：还有其它参与者或者请求已经结束了，不需要中断
+     */
+    synchronized HttpRequestRunnable cancel(String key, HttpRequestRunnable runnable) {
+        Flight flight = flights.get(key);
+        if(flight == null){
+            return null;
+        }
+        if(flight.leader == runnable){
+            flight.leaderCancelled = true;
+        }else if(!flight.followers.remove(runnable)){
+            return null;
+        }
+        if(flight.leaderCancelled && flight.followers.isEmpty()){
+            flights.remove(key);
+            return flight.leader;
+        }
+        return null;
+    }
+
+    /**
+     * 一次合并执行
+     */
+    private static class Flight {
+        private final HttpRequestRunnable leader;   //领头者，真正执行请求的那个
+        private final List<HttpRequestRunnable> followers = new ArrayList<HttpRequestRunnable>(2);    //跟随者
+        private boolean leaderCancelled;    //领头者是否已经取消
+
+        private Flight(HttpRequestRunnable leader) {
+            this.leader = leader;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.xiaopan.android.easynetwork.http.enums.Priority;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 请求调度器，有请求时按需创建线程直到最大线程数（空闲60秒后回收），排队的请求按优先级执行，相同优先级的按提交的顺序执行
+ * <br>线程数量一般和最大连接数一致就够了，线程再多也只是在等待连接，反而会和界面抢占CPU
+ * <br>另外每个主机同时执行的请求数量也有限制，超出限制的请求会先暂存在调度器中，不占用线程，等同一个主机的请求结束后再按优先级放入线程池，这样一个很慢的主机就不会占满所有的线程
+ * <br>限制可以按主机（例如img.example.com）单独设置，也可以按路由（例如https://img.example.com:443）设置，路由的限制优先于主机的限制
+ * <br>设置了AdaptiveLimiter的话，没有单独设置限制的主机会根据往返时间以及错误自动调整限制
+ */
+public class RequestDispatcher extends ThreadPoolExecutor {
+    private final AtomicLong sequence = new AtomicLong();   //提交序号，用来保证相同优先级的请求先进先出
+    private int maxRequestsPerHost; //每个主机同时执行的最大请求数
+    private final Map<String, Integer> hostLimits = new HashMap<String, Integer>();    //单独设置的主机或者路由的最大请求数
+    private final Map<String, Integer> runningCounts = new HashMap<String, Integer>(); //每个主机（或者路由）正在执行以及在线程池中排队的请求数
+    private final Map<String, PriorityQueue<PriorityTask<?>>> parkedTasks = new HashMap<String, PriorityQueue<PriorityTask<?>>>();    //因为超出主机限制而暂存的请求
+    private AdaptiveLimiter adaptiveLimiter;    //自适应并发限制，为null时使用固定的限制
+
+    /**
+     * 创建一个请求调度器，每个主机同时执行的请求数量不限制
+     * @param threadCount 线程数量
+     */
+    public RequestDispatcher(int threadCount) {
+        this(threadCount, threadCount);
+    }
+
+    /**
+     * 创建一个请求调度器
+     * @param threadCount 线程数量
+     * @param maxRequestsPerHost 每个主机同时执行的最大请求数
+     */
+    public RequestDispatcher(int threadCount, int maxRequestsPerHost) {
+        /* allowCoreThreadTimeOut()是API 9才有的，所以核心线程数为0，由DispatchQueue控制按需创建线程 */
+        super(0, threadCount, 60L, TimeUnit.SECONDS, new DispatchQueue(), new ElasticQueue.ForceQueuePolicy());
+        ((DispatchQueue) getQueue()).executor = this;
+        if(maxRequestsPerHost <= 0){
+            throw new IllegalArgumentException("maxRequestsPerHost 必须大于0");
+        }
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if(runnable instanceof HttpRequestRunnable){
+            HttpRequestRunnable httpRequestRunnable = (HttpRequestRunnable) runnable;
+            URI uri = httpRequestRunnable.getHttpUriRequest() != null ? httpRequestRunnable.getHttpUriRequest().getURI() : null;
+            return newTask(runnable, value, httpRequestRunnable.getPriority(), uri);
+        }
+        return newTask(runnable, value, Priority.NORMAL, null);
+    }
+
+    private <T> PriorityTask<T> newTask(Runnable runnable, T value, Priority priority, URI uri) {
+        String host = null;
+        String route = null;
+        if(uri != null && uri.getHost() != null){
+            host = uri.getHost().toLowerCase(Locale.US);
+            route = getRoute(uri, host);
+        }
+        return new PriorityTask<T>(runnable, value, priority, sequence.getAndIncrement(), host, route);
+    }
+
+    /**
+     * 按指定的优先级执行一个访问某个地址的任务（例如后台刷新缓存），和普通请求一样占用该主机的名额，名额已满的话暂存
+     * @param runnable 任务
+     * @param priority 优先级
+     * @param uri 任务访问的地址
+     */
+    void execute(Runnable runnable, Priority priority, URI uri) {
+        execute(newTask(runnable, null, priority, uri));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PriorityTask<T>(callable, Priority.NORMAL, sequence.getAndIncrement());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        /* 直接调用execute()提交的任务也要包装一下，否则无法在优先级队列中排序 */
+        if(command != null && !(command instanceof PriorityTask)){
+            command = newTaskFor(command, null);
+        }
+        if(command != null && !isShutdown()){
+            PriorityTask<?> task = (PriorityTask<?>) command;
+            synchronized(this){
+                String limitKey = getLimitKey(task);
+                if(limitKey != null){
+                    task.limitKey = limitKey;
+                    if(getRunningCount(limitKey) >= getLimit(limitKey)){
+                        PriorityQueue<PriorityTask<?>> queue = parkedTasks.get(limitKey);
+                        if(queue == null){
+                            queue = new PriorityQueue<PriorityTask<?>>();
+                            parkedTasks.put(limitKey, queue);
+                        }
+                        task.parked = true;
+                        queue.add(task);
+                        return;
+                    }
+                    runningCounts.put(limitKey, getRunningCount(limitKey) + 1);
+                }
+            }
+        }
+        try{
+            super.execute(command);
+        }catch(RejectedExecutionException exception){
+            release((PriorityTask<?>) command);
+            throw exception;
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        if(runnable instanceof PriorityTask){
+            release((PriorityTask<?>) runnable);
+        }
+    }
+
+    /**
+     * 请求结束，释放主机的名额并唤醒暂存的请求
+     * @param task 请求
+     */
+    private void release(PriorityTask<?> task) {
+        synchronized(this){
+            if(task == null || task.limitKey == null || task.released){
+                return;
+            }
+            task.released = true;
+            int runningCount = getRunningCount(task.limitKey) - 1;
+            if(runningCount > 0){
+                runningCounts.put(task.limitKey, runningCount);
+            }else{
+                runningCounts.remove(task.limitKey);
+            }
+        }
+        promote(task.limitKey);
+    }
+
+    /**
+     * 把暂存的请求按优先级放入线程池，直到用完主机的名额
+     * @param limitKey 主机或者路由
+     */
+    private void promote(String limitKey) {
+        while(true){
+            PriorityTask<?> task;
+            synchronized(this){
+                PriorityQueue<PriorityTask<?>> queue = parkedTasks.get(limitKey);
+                if(queue == null || getRunningCount(limitKey) >= getLimit(limitKey)){
+                    return;
+                }
+                task = queue.poll();
+                if(queue.isEmpty()){
+                    parkedTasks.remove(limitKey);
+                }
+                if(task == null){
+                    return;
+                }
+                task.parked = false;
+                runningCounts.put(limitKey, getRunningCount(limitKey) + 1);
+            }
+            try{
+                super.execute(task);
+            }catch(RejectedExecutionException exception){
+                release(task);
+                task.cancel(false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 请求在暂存期间被取消了，直接从暂存队列中移除，不再占用名额
+     * @param task 请求
+     */
+    private synchronized void onCancelled(PriorityTask<?> task) {
+        if(task.parked){
+            PriorityQueue<PriorityTask<?>> queue = parkedTasks.get(task.limitKey);
+            if(queue != null){
+                queue.remove(task);
+                if(queue.isEmpty()){
+                    parkedTasks.remove(task.limitKey);
+                }
+            }
+            task.parked = false;
+        }
+    }
+
+    /**
+     * 为对冲请求占用一个主机的名额，对冲请求可有可无，所以名额已满的话直接放弃，不会暂存
+     * @param uri 对冲请求的地址
+     * @return 占用的主机或者路由，请求结束后需要传给releaseSlot()，null：名额已满或者没有主机
+     */
+    String tryAcquireSlot(URI uri) {
+        if(uri == null || uri.getHost() == null || isShutdown()){
+            return null;
+        }
+        String host = uri.getHost().toLowerCase(Locale.US);
+        synchronized(this){
+            String limitKey = getLimitKey(host, getRoute(uri, host));
+            int runningCount = getRunningCount(limitKey);
+            if(runningCount >= getLimit(limitKey)){
+                return null;
+            }
+            runningCounts.put(limitKey, runningCount + 1);
+            return limitKey;
+        }
+    }
+
+    /**
+     * 对冲请求结束，释放tryAcquireSlot()占用的名额并唤醒暂存的请求
+     * @param limitKey tryAcquireSlot()返回的主机或者路由
+     */
+    void releaseSlot(String limitKey) {
+        synchronized(this){
+            int runningCount = getRunningCount(limitKey) - 1;
+            if(runningCount > 0){
+                runningCounts.put(limitKey, runningCount);
+            }else{
+                runningCounts.remove(limitKey);
+            }
+        }
+        promote(limitKey);
+    }
+
+    /**
+     * 获取请求使用的限制，单独设置了路由限制的话按路由，否则按主机
+     * @param task 请求
+     * @return 主机或者路由，null：不限制
+     */
+    private String getLimitKey(PriorityTask<?> task) {
+        return getLimitKey(task.host, task.route);
+    }
+
+    private String getLimitKey(String host, String route) {
+        if(route != null && hostLimits.containsKey(route)){
+            return route;
+        }
+        return host;
+    }
+
+    /**
+     * 获取路由，格式为“协议://主机:端口”，没有端口的话使用协议的默认端口
+     * @param uri 请求地址
+     * @param host 小写的主机名
+     * @return 路由
+     */
+    private static String getRoute(URI uri, String host) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.US) : "http";
+        return scheme + "://" + host + ":" + (uri.getPort() != -1 ? uri.getPort() : ("https".equals(scheme) ? 443 : 80));
+    }
+
+    private int getLimit(String limitKey) {
+        Integer limit = hostLimits.get(limitKey);
+        if(limit != null){
+            return limit;
+        }
+        return adaptiveLimiter != null ? adaptiveLimiter.getLimit(limitKey) : maxRequestsPerHost;
+    }
+
+    /**
+     * 记录一个请求的往返时间以及是否出错，设置了AdaptiveLimiter的话据此调整该主机的限制，调大了就唤醒暂存的请求
+     * @param httpUriRequest 请求
+     * @param rtt 往返时间，单位毫秒
+     * @param dropped 是否发生了错误或者服务器表示已经过载
+     */
+    void onSample(HttpUriRequest httpUriRequest, long rtt, boolean dropped) {
+        AdaptiveLimiter adaptiveLimiter;
+        String host;
+        int inflight;
+        synchronized(this){
+            adaptiveLimiter = this.adaptiveLimiter;
+            URI uri = httpUriRequest.getURI();
+            if(adaptiveLimiter == null || uri == null || uri.getHost() == null){
+                return;
+            }
+            host = uri.getHost().toLowerCase(Locale.US);
+            if(hostLimits.containsKey(host)){
+                return;
+            }
+            inflight = getRunningCount(host);
+        }
+        if(adaptiveLimiter.onSample(host, rtt, dropped, inflight)){
+            promote(host);
+        }
+    }
+
+    private int getRunningCount(String limitKey) {
+        Integer runningCount = runningCounts.get(limitKey);
+        return runningCount != null ? runningCount : 0;
+    }
+
+    /**
+     * 获取每个主机同时执行的最大请求数
+     * @return
+     */
+    public synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * 设置每个主机同时执行的最大请求数，调大的话会立即唤醒暂存的请求
+     * @param maxRequestsPerHost
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if(maxRequestsPerHost <= 0){
+            throw new IllegalArgumentException("maxRequestsPerHost 必须大于0");
+        }
+        String[] limitKeys;
+        synchronized(this){
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            limitKeys = parkedTasks.keySet().toArray(new String[parkedTasks.size()]);
+        }
+        for(String limitKey : limitKeys){
+            promote(limitKey);
+        }
+    }
+
+    /**
+     * 获取自适应并发限制
+     * @return
+     */
+    public synchronized AdaptiveLimiter getAdaptiveLimiter() {
+        return adaptiveLimiter;
+    }
+
+    /**
+     * 设置自适应并发限制，设置后没有单独设置限制的主机会根据往返时间以及错误自动调整限制，maxRequestsPerHost不再起作用
+     * @param adaptiveLimiter 自适应并发限制，为null时恢复使用maxRequestsPerHost
+     */
+    public void setAdaptiveLimiter(AdaptiveLimiter adaptiveLimiter) {
+        String[] limitKeys;
+        synchronized(this){
+            this.adaptiveLimiter = adaptiveLimiter;
+            limitKeys = parkedTasks.keySet().toArray(new String[parkedTasks.size()]);
+        }
+        for(String limitKey : limitKeys){
+            promote(limitKey);
+        }
+    }
+
+    /**
+     * 获取某个主机或者路由当前同时执行的最大请求数，可以用来监控自适应并发限制
+     * @param hostOrRoute 主机或者路由
+     * @return 最大请求数
+     */
+    public synchronized int getCurrentLimit(String hostOrRoute) {
+        return getLimit(hostOrRoute.toLowerCase(Locale.US));
+    }
+
+    /**
+     * 单独设置某个主机或者路由同时执行的最大请求数
+     * @param hostOrRoute 主机（例如img.example.com）或者路由（例如https://img.example.com:443，必须带端口）
+     * @param maxRequests 最大请求数，小于等于0时取消单独的设置
+     */
+    public void setHostLimit(String hostOrRoute, int maxRequests) {
+        if(!GeneralUtils.isNotEmpty(hostOrRoute)){
+            return;
+        }
+        String limitKey = hostOrRoute.toLowerCase(Locale.US);
+        synchronized(this){
+            if(maxRequests > 0){
+                hostLimits.put(limitKey, maxRequests);
+            }else{
+                hostLimits.remove(limitKey);
+            }
+        }
+        promote(limitKey);
+    }
+
+    /**
+     * 获取某个主机（或者路由）的请求数
+     * @param hostOrRoute 主机或者路由
+     * @param includeParked 是否包括因为超出限制而暂存的请求，false：只包括正在执行以及在线程池中排队的请求
+     * @return 请求数
+     */
+    public synchronized int getRequestCount(String hostOrRoute, boolean includeParked) {
+        String limitKey = hostOrRoute.toLowerCase(Locale.US);
+        int count = getRunningCount(limitKey);
+        if(includeParked && parkedTasks.get(limitKey) != null){
+            count += parkedTasks.get(limitKey).size();
+        }
+        return count;
+    }
+
+    /**
+     * 线程数已经达到最大值，不管有没有空闲线程都入队
+     * @param runnable 任务
+     */
+    void force(Runnable runnable) {
+        ((DispatchQueue) getQueue()).force(runnable);
+    }
+
+    /**
+     * 按优先级排序的任务队列，没有空闲线程并且还能创建线程的时候拒绝入队，让线程池去创建新线程
+     */
+    private static class DispatchQueue extends PriorityBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+        private transient RequestDispatcher executor;
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return !ElasticQueue.shouldAddThread(executor, size()) && super.offer(runnable);
+        }
+
+        private void force(Runnable runnable) {
+            super.offer(runnable);
+        }
+    }
+
+    /**
+     * 带优先级的任务
+     */
+    private class PriorityTask<T> extends FutureTask<T> implements Comparable<PriorityTask<?>> {
+        private final Priority priority;    //优先级
+        private final long sequence;    //提交序号
+        private final String host;  //主机
+        private final String route; //路由
+        private final HttpRequestRunnable httpRequestRunnable;  //Http请求，取消时需要通知它
+        private String limitKey;    //使用的主机或者路由限制，null：不限制
+        private boolean parked; //是否暂存中
+        private boolean released;   //是否已经释放了名额
+
+        private PriorityTask(Runnable runnable, T value, Priority priority, long sequence, String host, String route) {
+            super(runnable, value);
+            this.priority = priority != null ? priority : Priority.NORMAL;
+            this.sequence = sequence;
+            this.host = host;
+            this.route = route;
+            this.httpRequestRunnable = runnable instanceof HttpRequestRunnable ? (HttpRequestRunnable) runnable : null;
+        }
+
+        private PriorityTask(Callable<T> callable, Priority priority, long sequence) {
+            super(callable);
+            this.priority = priority != null ? priority : Priority.NORMAL;
+            this.sequence = sequence;
+            this.host = null;
+            this.route = null;
+            this.httpRequestRunnable = null;
+        }
+
+        @Override
+        protected void done() {
+            if(isCancelled()){
+                onCancelled(this);
+                if(httpRequestRunnable != null){
+                    httpRequestRunnable.cancel();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(PriorityTask<?> another) {
+            if(priority != another.priority){
+                return priority.ordinal() - another.priority.ordinal();
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Future;
+
+import android.content.Context;
+
+/**
+ * 请求句柄，执行请求时返回，可以用来取消单个请求或者给请求加上标签，之后通过EasyHttpClient.cancelRequestsByTag()批量取消
+ * <br>取消之后不会再回调处理器，并且会中断正在进行的网络请求（和其它相同的请求合并执行的话，要等所有参与者都取消了才会中断）
+ */
+public class RequestHandle {
+    private final RequestRegistry requestRegistry;
+    private final HttpRequestRunnable httpRequestRunnable;
+    private final WeakReference<Context> contextReference;  //上下文，弱引用，不会因为请求而泄露
+    private volatile Future<?> future;
+    private volatile Object tag;    //标签
+    private volatile boolean finished;  //是否已经结束
+
+    RequestHandle(RequestRegistry requestRegistry, Context context, HttpRequestRunnable httpRequestRunnable) {
+        this.requestRegistry = requestRegistry;
+        this.contextReference = context != null ? new WeakReference<Context>(context) : null;
+        this.httpRequestRunnable = httpRequestRunnable;
+        httpRequestRunnable.setRequestHandle(this);
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if(httpRequestRunnable.isCancelled()){
+            future.cancel(false);
+        }
+    }
+
+    Context getContext() {
+        return contextReference != null ? contextReference.get() : null;
+    }
+
+    /**
+     * 请求结束，从登记处中移除
+     */
+    void finish() {
+        finished = true;
+        requestRegistry.unregister(this);
+    }
+
+    /**
+     * 取消请求，尚未开始的不再执行，已经开始的会中断网络请求，并且都不会再回调处理器
+     * @param mayInterruptIfRunning 如果请求正在执行的话是否中断执行线程
+     * @return 请求之前是否尚未结束
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean unfinished = requestRegistry.unregister(this) && !finished;
+        finished = true;
+        httpRequestRunnable.cancel();
+        Future<?> future = this.future;
+        if(future != null){
+            future.cancel(mayInterruptIfRunning);
+        }
+        return unfinished;
+    }
+
+    /**
+     * 判断请求是否已经取消
+     * @return
+     */
+    public boolean isCancelled() {
+        return httpRequestRunnable.isCancelled();
+    }
+
+    /**
+     * 判断请求是否已经结束，取消也算结束
+     * @return
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 获取标签
+     * @return
+     */
+    public Object getTag() {
+        return tag;
+    }
+
+    /**
+     * 设置标签，之后可以通过EasyHttpClient.cancelRequestsByTag()取消所有标签相同（equals）的请求
+     * @param tag 标签，为null时清除标签
+     * @return 请求句柄本身，方便链式调用
+     */
+    public RequestHandle setTag(Object tag) {
+        synchronized(requestRegistry){
+            Object oldTag = this.tag;
+            this.tag = tag;
+            requestRegistry.changeTag(this, oldTag, tag);
+        }
+        return this;
+    }
+}
@@ -11,9 +11,12 @@ import java.util.Map;
 import me.xiaopan.android.easynetwork.http.annotation.False;
 import me.xiaopan.android.easynetwork.http.annotation.Header;
 import me.xiaopan.android.easynetwork.http.annotation.Host;
+import me.xiaopan.android.easynetwork.http.annotation.LatencyCritical;
 import me.xiaopan.android.easynetwork.http.annotation.Name;
 import me.xiaopan.android.easynetwork.http.annotation.Param;
 import me.xiaopan.android.easynetwork.http.annotation.Path;
+import me.xiaopan.android.easynetwork.http.annotation.Priority;
+import me.xiaopan.android.easynetwork.http.annotation.RateLimit;
 import me.xiaopan.android.easynetwork.http.annotation.ResponseCache;
 import me.xiaopan.android.easynetwork.http.annotation.True;
 import me.xiaopan.android.easynetwork.http.annotation.Url;
@@ -80,6 +83,30 @@ public class RequestParser {
         return RequestParser.parseResponseCache(request);
     }
 
+    /**
+     * 获取优先级
+     * @return 优先级，null：请求对象上没有Priority注解
+     */
+    public me.xiaopan.android.easynetwork.http.enums.Priority getPriority(){
+        return RequestParser.parsePriority(request);
+    }
+
+    /**
+     * 获取限流配置
+     * @return 限流配置，null：请求对象上没有RateLimit注解
+     */
+    public me.xiaopan.android.easynetwork.http.RateLimit getRateLimit(){
+        return RequestParser.parseRateLimit(request);
+    }
+
+    /**
+     * 是否是延迟敏感的请求
+     * @return 请求对象上是否有LatencyCritical注解
+     */
+    public boolean isLatencyCritical(){
+        return RequestParser.parseLatencyCritical(request);
+    }
+
     /**
      * 解析请求名称
      * @param request 请求对象
@@ -264,9 +291,53 @@ public class RequestParser {
     public static me.xiaopan.android.easynetwork.http.ResponseCache parseResponseCache(Request request){
         ResponseCache responseCacheAnnotation = request.getClass().getAnnotation(ResponseCache.class);
         if(responseCacheAnnotation != null){
-            return new me.xiaopan.android.easynetwork.http.ResponseCache.Builder().setRefreshCache(responseCacheAnnotation.isRefreshCache()).setPeriodOfValidity(responseCacheAnnotation.periodOfValidity()).setRefreshCallback(responseCacheAnnotation.isRefreshCallback()).setCacheDirectory(responseCacheAnnotation.cacheDirectory()).create();
+            CacheKeyStrategy cacheKeyStrategy = null;
+            if(responseCacheAnnotation.ignoredParams().length > 0 || responseCacheAnnotation.isSortParams() || responseCacheAnnotation.varyHeaders().length > 0){
+                cacheKeyStrategy = new DefaultCacheKeyStrategy.Builder().addIgnoredParams(responseCacheAnnotation.ignoredParams()).setSortParams(responseCacheAnnotation.isSortParams()).addVaryHeaders(responseCacheAnnotation.varyHeaders()).create();
+            }
+            return new me.xiaopan.android.easynetwork.http.ResponseCache.Builder().setRefreshCache(responseCacheAnnotation.isRefreshCache()).setPeriodOfValidity(responseCacheAnnotation.periodOfValidity()).setRefreshCallback(responseCacheAnnotation.isRefreshCallback()).setCacheDirectory(responseCacheAnnotation.cacheDirectory()).setMemoryCache(responseCacheAnnotation.isMemoryCache()).setHttpCacheMode(responseCacheAnnotation.isHttpCacheMode()).setStaleWhileRevalidate(responseCacheAnnotation.isStaleWhileRevalidate()).setCacheKeyStrategy(cacheKeyStrategy).setCompression(responseCacheAnnotation.compression()).setCompressionThreshold(responseCacheAnnotation.compressionThreshold()).setHashRequestBody(responseCacheAnnotation.isHashRequestBody()).setStaleIfError(responseCacheAnnotation.isStaleIfError()).create();
         }else{
             return null;
         }
     }
+
+    /**
+     * 解析优先级
+     * @param request 请求对象
+     * @return 优先级，null：请求对象上没有Priority注解
+     */
+    public static me.xiaopan.android.easynetwork.http.enums.Priority parsePriority(Request request){
+        Priority priority = request.getClass().getAnnotation(Priority.class);
+        return priority != null ? priority.value() : null;
+    }
+
+    /**
+     * 解析限流配置，KEY是RateLimit注解所在的类的类名，这样继承了同一个类的所有请求共用一个令牌桶
+     * @param request 请求对象
+     * @return 限流配置，null：请求对象上没有RateLimit注解
+     */
+    public static me.xiaopan.android.easynetwork.http.RateLimit parseRateLimit(Request request){
+        Class<?> requestClass = request.getClass();
+        RateLimit rateLimitAnnotation = requestClass.getAnnotation(RateLimit.class);
+        if(rateLimitAnnotation == null){
+            return null;
+        }
+        while(requestClass.getSuperclass() != null && requestClass.getSuperclass().getAnnotation(RateLimit.class) == rateLimitAnnotation){
+            requestClass = requestClass.getSuperclass();
+        }
+        me.xiaopan.android.easynetwork.http.RateLimit.Builder builder = new me.xiaopan.android.easynetwork.http.RateLimit.Builder(requestClass.getName(), rateLimitAnnotation.value());
+        if(rateLimitAnnotation.burst() > 0){
+            builder.setBurst(rateLimitAnnotation.burst());
+        }
+        return builder.create();
+    }
+
+    /**
+     * 解析是否是延迟敏感的请求
+     * @param request 请求对象
+     * @return 请求对象上是否有LatencyCritical注解
+     */
+    public static boolean parseLatencyCritical(Request request){
+        return request.getClass().isAnnotationPresent(LatencyCritical.class);
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import android.content.Context;
+
+/**
+ * 请求登记处，按上下文和标签登记所有尚未结束的请求，请求结束后自动移除，所以不会随着时间越积越多
+ * <br>登记、移除都是常数时间，按上下文或者标签取消只和被取消的请求数量有关
+ */
+class RequestRegistry {
+    private final Set<RequestHandle> requests = new LinkedHashSet<RequestHandle>();  //所有尚未结束的请求
+    private final Map<Context, Set<RequestHandle>> contextRequests = new WeakHashMap<Context, Set<RequestHandle>>(); //按上下文登记的请求
+    private final Map<Object, Set<RequestHandle>> tagRequests = new HashMap<Object, Set<RequestHandle>>();   //按标签登记的请求
+
+    /**
+     * 登记请求
+     * @param requestHandle 请求
+     */
+    synchronized void register(RequestHandle requestHandle) {
+        requests.add(requestHandle);
+        add(contextRequests, requestHandle.getContext(), requestHandle);
+        add(tagRequests, requestHandle.getTag(), requestHandle);
+    }
+
+    /**
+     * 修改请求的标签
+     * @param requestHandle 请求
+     * @param oldTag 原来的标签
+     * @param newTag 新的标签
+     */
+    synchronized void changeTag(RequestHandle requestHandle, Object oldTag, Object newTag) {
+        if(requests.contains(requestHandle)){
+            remove(tagRequests, oldTag, requestHandle);
+            add(tagRequests, newTag, requestHandle);
+        }
+    }
+
+    /**
+     * 移除请求，请求结束或者取消时调用
+     * @param requestHandle 请求
+     * @return 请求是否还在登记处中
+     */
+    synchronized boolean unregister(RequestHandle requestHandle) {
+        if(!requests.remove(requestHandle)){
+            return false;
+        }
+        remove(contextRequests, requestHandle.getContext(), requestHandle);
+        remove(tagRequests, requestHandle.getTag(), requestHandle);
+        return true;
+    }
+
+    /**
+     * 取出某个上下文的所有请求
+     * @param context 上下文
+     * @return 请求列表，已经从登记处中移除了
+     */
+    synchronized List<RequestHandle> takeByContext(Context context) {
+        return take(contextRequests.get(context));
+    }
+
+    /**
+     * 取出某个标签的所有请求
+     * @param tag 标签
+     * @return 请求列表，已经从登记处中移除了
+     */
+    synchronized List<RequestHandle> takeByTag(Object tag) {
+        return take(tagRequests.get(tag));
+    }
+
+    /**
+     * 取出所有的请求
+     * @return 请求列表，已经从登记处中移除了
+     */
+    synchronized List<RequestHandle> takeAll() {
+        List<RequestHandle> requestHandles = new ArrayList<RequestHandle>(requests);
+        requests.clear();
+        contextRequests.clear();
+        tagRequests.clear();
+        return requestHandles;
+    }
+
+    /**
+     * 获取尚未结束的请求数量
+     * @return 请求数量
+     */
+    synchronized int size() {
+        return requests.size();
+    }
+
+    private List<RequestHandle> take(Set<RequestHandle> requestHandles) {
+        if(requestHandles == null){
+            return new ArrayList<RequestHandle>(0);
+        }
+        List<RequestHandle> result = new ArrayList<RequestHandle>(requestHandles);
+        for(RequestHandle requestHandle : result){
+            unregister(requestHandle);
+        }
+        return result;
+    }
+
+    private static <K> void add(Map<K, Set<RequestHandle>> map, K key, RequestHandle requestHandle) {
+        if(key == null){
+            return;
+        }
+        Set<RequestHandle> requestHandles = map.get(key);
+        if(requestHandles == null){
+            requestHandles = new LinkedHashSet<RequestHandle>();
+            map.put(key, requestHandles);
+        }
+        requestHandles.add(requestHandle);
+    }
+
+    private static <K> void remove(Map<K, Set<RequestHandle>> map, K key, RequestHandle requestHandle) {
+        if(key == null){
+            return;
+        }
+        Set<RequestHandle> requestHandles = map.get(key);
+        if(requestHandles != null){
+            requestHandles.remove(requestHandle);
+            if(requestHandles.isEmpty()){
+                map.remove(key);
+            }
+        }
+    }
+}
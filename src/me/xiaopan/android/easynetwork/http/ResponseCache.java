@@ -1,5 +1,7 @@
 package me.xiaopan.android.easynetwork.http;
 
+import me.xiaopan.android.easynetwork.http.enums.CacheCompression;
+
 /**
  * 缓存配置信息，值得注意的是你必须通过其Builder来创建ResponseCache
  * Created by XIAOPAN on 13-11-24.
@@ -21,10 +23,50 @@ public class ResponseCache {
     private boolean refreshCallback;
     
     /**
-     * 缓存目录
+     * 缓存目录，也就是缓存分区名，为空时使用默认分区
      */
     private String cacheDirectory;
 
+    /**
+     * 是否使用内存缓存
+     */
+    private boolean memoryCache = true;
+
+    /**
+     * 是否按照Http缓存语义（RFC 7234）使用缓存
+     */
+    private boolean httpCacheMode;
+
+    /**
+     * 刷新缓存时是否在后台进行（stale-while-revalidate）
+     */
+    private boolean staleWhileRevalidate;
+
+    /**
+     * 缓存KEY策略，为null时使用Configuration中的默认策略
+     */
+    private CacheKeyStrategy cacheKeyStrategy;
+
+    /**
+     * 磁盘缓存的压缩方式
+     */
+    private CacheCompression compression = CacheCompression.NONE;
+
+    /**
+     * 压缩阈值，单位字节，响应体小于此值时不压缩
+     */
+    private int compressionThreshold = 1024;
+
+    /**
+     * 是否缓存POST、PUT这类带请求体的请求，开启后缓存KEY中会包含请求方式以及请求体的哈希值
+     */
+    private boolean hashRequestBody;
+
+    /**
+     * 从网络加载失败时是否使用过期的缓存（stale-if-error）
+     */
+    private boolean staleIfError;
+
     /**
      * 这是一个私有的构造函数，主要是为了让你使用其Builder来创建ResponseCache
      */
@@ -87,13 +129,145 @@ public class ResponseCache {
 	}
 
 	/**
-	 * 设置缓存目录
+	 * 设置缓存目录，也就是缓存分区名，为空时使用默认分区；每个分区有自己的大小限制和淘汰策略，可通过Configuration.addCachePartition()配置
 	 * @param cacheDirectory
 	 */
 	public void setCacheDirectory(String cacheDirectory) {
 		this.cacheDirectory = cacheDirectory;
 	}
 
+	/**
+	 * 是否使用内存缓存
+	 * @return
+	 */
+	public boolean isMemoryCache() {
+		return memoryCache;
+	}
+
+	/**
+	 * 设置是否使用内存缓存，默认为true，对于较大的或者很少重复读取的响应可以关闭
+	 * @param memoryCache
+	 */
+	public void setMemoryCache(boolean memoryCache) {
+		this.memoryCache = memoryCache;
+	}
+
+	/**
+	 * 是否按照Http缓存语义（RFC 7234）使用缓存
+	 * @return
+	 */
+	public boolean isHttpCacheMode() {
+		return httpCacheMode;
+	}
+
+	/**
+	 * 设置是否按照Http缓存语义（RFC 7234）使用缓存，开启后将根据响应头中的Cache-Control、Expires、Date以及Last-Modified来判断缓存是否新鲜，periodOfValidity将不再起作用；
+	 * 缓存不新鲜的时候会带上If-None-Match、If-Modified-Since请求头向服务器验证，如果服务器返回304就直接使用缓存的响应体
+	 * @param httpCacheMode
+	 */
+	public void setHttpCacheMode(boolean httpCacheMode) {
+		this.httpCacheMode = httpCacheMode;
+	}
+
+	/**
+	 * 刷新缓存时是否在后台进行（stale-while-revalidate）
+	 * @return
+	 */
+	public boolean isStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	/**
+	 * 设置刷新缓存时是否在后台进行（stale-while-revalidate），只在refreshCache为true时起作用；
+	 * 开启后返回缓存的响应后请求线程立即结束，刷新交给低优先级的后台线程池，并且同一个缓存同一时间只会有一个刷新，refreshCallback的含义保持不变
+	 * @param staleWhileRevalidate
+	 */
+	public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+		this.staleWhileRevalidate = staleWhileRevalidate;
+	}
+
+	/**
+	 * 获取缓存KEY策略
+	 * @return 缓存KEY策略，为null时使用Configuration中的默认策略
+	 */
+	public CacheKeyStrategy getCacheKeyStrategy() {
+		return cacheKeyStrategy;
+	}
+
+	/**
+	 * 设置缓存KEY策略，决定哪些请求共用同一个缓存，例如忽略时间戳参数，为null时使用Configuration中的默认策略
+	 * @param cacheKeyStrategy
+	 */
+	public void setCacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
+		this.cacheKeyStrategy = cacheKeyStrategy;
+	}
+
+	/**
+	 * 获取磁盘缓存的压缩方式
+	 * @return
+	 */
+	public CacheCompression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * 设置磁盘缓存的压缩方式，默认为NONE；JSON、HTML这类文本压缩后通常只有原来的五分之一，可以显著减少闪存读写以及缓存空间，读取时自动解压，图片、音视频以及压缩包不会压缩
+	 * @param compression
+	 */
+	public void setCompression(CacheCompression compression) {
+		this.compression = compression != null ? compression : CacheCompression.NONE;
+	}
+
+	/**
+	 * 获取压缩阈值
+	 * @return 压缩阈值，单位字节
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * 设置压缩阈值，响应体小于此值时不值得压缩，原样保存，默认为1024
+	 * @param compressionThreshold 压缩阈值，单位字节
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * 是否缓存POST、PUT这类带请求体的请求
+	 * @return
+	 */
+	public boolean isHashRequestBody() {
+		return hashRequestBody;
+	}
+
+	/**
+	 * 设置是否缓存POST、PUT这类带请求体的请求，默认为false，此时带请求体的请求不使用缓存；
+	 * 开启后缓存KEY中会包含请求方式以及请求体的SHA-1（边读边计算，不会整个读到内存中），适合用POST查询的搜索接口，请求体不能重复读取（例如上传文件）的请求依然不使用缓存
+	 * @param hashRequestBody
+	 */
+	public void setHashRequestBody(boolean hashRequestBody) {
+		this.hashRequestBody = hashRequestBody;
+	}
+
+	/**
+	 * 从网络加载失败时是否使用过期的缓存（stale-if-error）
+	 * @return
+	 */
+	public boolean isStaleIfError() {
+		return staleIfError;
+	}
+
+	/**
+	 * 设置从网络加载失败（发生异常、服务器返回5xx或者命中负缓存）时是否使用过期的缓存（stale-if-error），默认为false；
+	 * 开启后过期的缓存不会立即删除，而是留到下次从网络加载成功时被覆盖，后台清理也不会删除它们，交给LRU淘汰
+	 * @param staleIfError
+	 */
+	public void setStaleIfError(boolean staleIfError) {
+		this.staleIfError = staleIfError;
+	}
+
 	/**
      * ResponseCache构建器
      */
@@ -145,7 +319,7 @@ public class ResponseCache {
         }
 
     	/**
-    	 * 设置缓存目录
+    	 * 设置缓存目录，也就是缓存分区名，为空时使用默认分区；每个分区有自己的大小限制和淘汰策略，可通过Configuration.addCachePartition()配置
     	 * @param cacheDirectory
     	 */
     	public Builder setCacheDirectory(String cacheDirectory) {
@@ -153,6 +327,82 @@ public class ResponseCache {
     		return this;
     	}
 
+    	/**
+    	 * 设置是否使用内存缓存，默认为true，对于较大的或者很少重复读取的响应可以关闭
+    	 * @param memoryCache
+    	 */
+    	public Builder setMemoryCache(boolean memoryCache) {
+    		responseCache.setMemoryCache(memoryCache);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置是否按照Http缓存语义（RFC 7234）使用缓存，开启后将根据响应头中的Cache-Control、Expires、Date以及Last-Modified来判断缓存是否新鲜，periodOfValidity将不再起作用；
+    	 * 缓存不新鲜的时候会带上If-None-Match、If-Modified-Since请求头向服务器验证，如果服务器返回304就直接使用缓存的响应体
+    	 * @param httpCacheMode
+    	 */
+    	public Builder setHttpCacheMode(boolean httpCacheMode) {
+    		responseCache.setHttpCacheMode(httpCacheMode);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置刷新缓存时是否在后台进行（stale-while-revalidate），只在refreshCache为true时起作用；
+    	 * 开启后返回缓存的响应后请求线程立即结束，刷新交给低优先级的后台线程池，并且同一个缓存同一时间只会有一个刷新，refreshCallback的含义保持不变
+    	 * @param staleWhileRevalidate
+    	 */
+    	public Builder setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+    		responseCache.setStaleWhileRevalidate(staleWhileRevalidate);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置缓存KEY策略，决定哪些请求共用同一个缓存，例如忽略时间戳参数，为null时使用Configuration中的默认策略
+    	 * @param cacheKeyStrategy
+    	 */
+    	public Builder setCacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
+    		responseCache.setCacheKeyStrategy(cacheKeyStrategy);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置磁盘缓存的压缩方式，默认为NONE；JSON、HTML这类文本压缩后通常只有原来的五分之一，可以显著减少闪存读写以及缓存空间，读取时自动解压，图片、音视频以及压缩包不会压缩
+    	 * @param compression
+    	 */
+    	public Builder setCompression(CacheCompression compression) {
+    		responseCache.setCompression(compression);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置压缩阈值，响应体小于此值时不值得压缩，原样保存，默认为1024
+    	 * @param compressionThreshold 压缩阈值，单位字节
+    	 */
+    	public Builder setCompressionThreshold(int compressionThreshold) {
+    		responseCache.setCompressionThreshold(compressionThreshold);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置是否缓存POST、PUT这类带请求体的请求，默认为false，此时带请求体的请求不使用缓存；
+    	 * 开启后缓存KEY中会包含请求方式以及请求体的SHA-1（边读边计算，不会整个读到内存中），适合用POST查询的搜索接口，请求体不能重复读取（例如上传文件）的请求依然不使用缓存
+    	 * @param hashRequestBody
+    	 */
+    	public Builder setHashRequestBody(boolean hashRequestBody) {
+    		responseCache.setHashRequestBody(hashRequestBody);
+    		return this;
+    	}
+
+    	/**
+    	 * 设置从网络加载失败（发生异常、服务器返回5xx或者命中负缓存）时是否使用过期的缓存（stale-if-error），默认为false；
+    	 * 开启后过期的缓存不会立即删除，而是留到下次从网络加载成功时被覆盖，后台清理也不会删除它们，交给LRU淘汰
+    	 * @param staleIfError
+    	 */
+    	public Builder setStaleIfError(boolean staleIfError) {
+    		responseCache.setStaleIfError(staleIfError);
+    		return this;
+    	}
+
         /**
          * 创建并返回ResponseCache
          * @return
@@ -29,21 +29,34 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLException;
 
+import me.xiaopan.android.easynetwork.http.headers.Date;
+import me.xiaopan.android.easynetwork.http.headers.RetryAfter;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.MalformedChunkCodingException;
 import org.apache.http.NoHttpResponseException;
-import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.protocol.ExecutionContext;
 import org.apache.http.protocol.HttpContext;
 
-import android.os.SystemClock;
-
-class RetryHandler implements HttpRequestRetryHandler {
-    private static final int RETRY_SLEEP_TIME_MILLIS = 1500;
+/**
+ * 重试调度器，请求失败后不在工作线程中等待，而是交给定时器，等到退避时间之后再重新提交到线程池，等待期间不占用线程
+ * <br>退避时间使用指数退避加完全抖动，也就是在0到min(最大退避时间, 基础退避时间 * 2^重试次数)之间随机取值，服务器返回了Retry-After的话至少等待那么久
+ * <br>另外还有全局的重试预算：最近10秒内的重试次数不能超过请求次数的一定比例（请求很少的时候始终允许少量重试），防止服务器出问题时所有请求一起重试形成重试风暴
+ */
+class RetryHandler {
+    private static final int MIN_RETRIES = 10;  //每个统计窗口内始终允许的重试次数
     private static HashSet<Class<?>> exceptionWhitelist = new HashSet<Class<?>>();
     private static HashSet<Class<?>> exceptionBlacklist = new HashSet<Class<?>>();
+    private static HashSet<Integer> retryStatusCodes = new HashSet<Integer>();
 
     static {
         // Retry if the server dropped connection on us
@@ -57,49 +70,123 @@ class RetryHandler implements HttpRequestRetryHandler {
         exceptionBlacklist.add(InterruptedIOException.class);
         // never retry SSL handshake failures
         exceptionBlacklist.add(SSLException.class);
+        // never retry protocol errors, the server will answer the same way again
+        exceptionBlacklist.add(ClientProtocolException.class);
+        exceptionBlacklist.add(MalformedChunkCodingException.class);
+
+        // 服务器过载或者网关暂时不可用，稍后重试通常能成功
+        retryStatusCodes.add(429);
+        retryStatusCodes.add(502);
+        retryStatusCodes.add(503);
+        retryStatusCodes.add(504);
+    }
+
+    private final Configuration configuration;
+    private final Random random = new Random();
+    private final LoadBudget retryBudget = new LoadBudget(MIN_RETRIES); //重试预算
+    private ScheduledThreadPoolExecutor timer;  //定时器，只负责在退避时间之后把请求重新提交到线程池
+
+    RetryHandler(Configuration configuration) {
+        this.configuration = configuration;
     }
 
-    private final int maxRetries;
+    /**
+     * 判断发生异常之后是否可以重试，服务器断开连接、找不到主机以及Socket异常（例如Wi-Fi切换到3G）可以重试，其它IOException只有请求还没有完整发出的时候才重试，超时、SSL握手失败以及协议错误不重试
+     * <br>POST请求以及请求体不能重复读取的请求不重试
+     * @param throwable 异常
+     * @param httpUriRequest 请求
+     * @param httpContext 请求使用的Http上下文，用来判断请求是否已经发出
+     * @return 是否可以重试
+     */
+    boolean isRetryException(Throwable throwable, HttpUriRequest httpUriRequest, HttpContext httpContext) {
+        if(!(throwable instanceof IOException) || !isRetryRequest(httpUriRequest)){
+            return false;
+        }else if(isInList(exceptionBlacklist, throwable)){
+            return false;
+        }else if(isInList(exceptionWhitelist, throwable)){
+            return true;
+        }else{
+            Boolean sent = (Boolean) httpContext.getAttribute(ExecutionContext.HTTP_REQ_SENT);
+            return sent == null || !sent.booleanValue();
+        }
+    }
 
-    public RetryHandler(int maxRetries) {
-        this.maxRetries = maxRetries;
+    /**
+     * 判断服务器返回的状态码是否可以重试，只有429、502、503和504可以重试，POST请求以及请求体不能重复读取的请求不重试
+     * @param statusCode 状态码
+     * @param httpUriRequest 请求
+     * @return 是否可以重试
+     */
+    boolean isRetryStatus(int statusCode, HttpUriRequest httpUriRequest) {
+        return retryStatusCodes.contains(statusCode) && isRetryRequest(httpUriRequest);
     }
 
-    @Override
-    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-        boolean retry = true;
-
-        Boolean b = (Boolean) context.getAttribute(ExecutionContext.HTTP_REQ_SENT);
-        boolean sent = (b != null && b.booleanValue());
-
-        if(executionCount > maxRetries) {
-            // Do not retry if over max retry count
-            retry = false;
-        } else if (isInList(exceptionBlacklist, exception)) {
-            // immediately cancel retry if the error is blacklisted
-            retry = false;
-        } else if (isInList(exceptionWhitelist, exception)) {
-            // immediately retry if error is whitelisted
-            retry = true;
-        } else if (!sent) {
-            // for most other errors, retry only if request hasn't been fully sent yet
-            retry = true;
+    private boolean isRetryRequest(HttpUriRequest httpUriRequest) {
+        if("POST".equals(httpUriRequest.getMethod())){
+            return false;
+        }
+        if(httpUriRequest instanceof HttpEntityEnclosingRequest){
+            HttpEntityEnclosingRequest httpEntityEnclosingRequest = (HttpEntityEnclosingRequest) httpUriRequest;
+            return httpEntityEnclosingRequest.getEntity() == null || httpEntityEnclosingRequest.getEntity().isRepeatable();
         }
+        return true;
+    }
 
-        if(retry) {
-            // resend all idempotent requests
-            HttpUriRequest currentReq = (HttpUriRequest) context.getAttribute( ExecutionContext.HTTP_REQUEST );
-            String requestType = currentReq.getMethod();
-            retry = !requestType.equals("POST");
+    /**
+     * 计算退避时间
+     * @param retryCount 已经重试的次数
+     * @param httpResponse 服务器返回的响应，会参考其中的Retry-After，发生异常时为null
+     * @return 退避时间，单位毫秒，-1：Retry-After超过了最大退避时间，不应该再重试
+     */
+    long getDelay(int retryCount, HttpResponse httpResponse) {
+        long maxDelay = configuration.getRetryMaxDelay();
+        long ceiling = configuration.getRetryBaseDelay() << Math.min(retryCount, 30);
+        if(ceiling <= 0 || ceiling > maxDelay){
+            ceiling = maxDelay;
+        }
+        long delay;
+        synchronized(random){
+            delay = (long) (random.nextDouble() * ceiling);
         }
 
-        if(retry) {
-            SystemClock.sleep(RETRY_SLEEP_TIME_MILLIS);
-        } else {
-            exception.printStackTrace();
+        RetryAfter retryAfter = httpResponse != null ? RetryAfter.getRetryAfter(httpResponse) : null;
+        if(retryAfter != null){
+            Date date = Date.getDate(httpResponse);
+            long now = date != null && date.getTime() >= 0 ? date.getTime() : System.currentTimeMillis();
+            long retryAfterDelay = retryAfter.getDelay(now);
+            if(retryAfterDelay > maxDelay){
+                return -1;
+            }
+            delay = Math.max(delay, retryAfterDelay);
         }
+        return delay;
+    }
+
+    /**
+     * 记录一次请求，重试预算按请求次数的比例计算
+     */
+    void recordRequest() {
+        retryBudget.recordRequest();
+    }
+
+    /**
+     * 从重试预算中申请一次重试
+     * @return 是否申请成功，失败说明最近重试得太多了，不应该再重试
+     */
+    boolean acquireRetry() {
+        return retryBudget.acquire(configuration.getRetryBudgetPercent());
+    }
 
-        return retry;
+    /**
+     * 在指定的时间之后执行任务
+     * @param task 任务，应当尽快返回，例如把请求重新提交到线程池
+     * @param delay 延迟时间，单位毫秒
+     */
+    synchronized void schedule(Runnable task, long delay) {
+        if(timer == null){
+            timer = new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory("EasyNetwork-retry"));
+        }
+        timer.schedule(task, delay, TimeUnit.MILLISECONDS);
     }
     
     protected boolean isInList(HashSet<Class<?>> list, Throwable error) {
@@ -111,4 +198,4 @@ class RetryHandler implements HttpRequestRetryHandler {
     	}
     	return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http;
+
+import org.apache.http.HttpResponse;
+
+import android.os.Handler;
+
+/**
+ * 共享解析结果，多个相同的请求合并成一个执行的时候，共享标识相同的处理器只会解析一次响应体，然后通过deliverResponse()把同一个解析结果分发给每个处理器
+ * <br>由HttpResponseHandler的子类按需实现，没有实现此接口的处理器会单独回调handleResponse()
+ */
+public interface SharedResponseParser {
+    /**
+     * 获取解析结果的共享标识
+     * @return 共享标识，返回null的话不共享，会单独回调handleResponse()
+     */
+    public Object getParseKey();
+
+    /**
+     * 解析响应
+     * @param httpResponse Http响应
+     * @return 解析结果
+     * @throws Throwable 当发生异常时会进入exception()方法
+     */
+    public Object parseResponse(HttpResponse httpResponse) throws Throwable;
+
+    /**
+     * 分发解析结果
+     * @param handler 消息处理器
+     * @param responseObject parseResponse()的解析结果，多个处理器共享同一个对象，请不要修改它
+     * @param isCache 是否是缓存数据
+     * @param isRefreshCacheAndCallback 是否还要刷新本地缓存并回调
+     */
+    public void deliverResponse(Handler handler, Object responseObject, boolean isCache, boolean isRefreshCacheAndCallback);
+}
@@ -19,15 +19,13 @@ package me.xiaopan.android.easynetwork.http;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.entity.BufferedHttpEntity;
-import org.apache.http.util.EntityUtils;
 
 import android.os.Handler;
 
 /**
  * 默认的字符串Http响应处理器
  */
-public abstract class StringHttpResponseHandler extends HttpResponseHandler {
+public abstract class StringHttpResponseHandler extends HttpResponseHandler implements SharedResponseParser {
 
 	@Override
 	public void start(final Handler handler) {
@@ -41,17 +39,21 @@ public abstract class StringHttpResponseHandler extends HttpResponseHandler {
 
 	@Override
 	public void handleResponse(final Handler handler, final HttpResponse httpResponse, final boolean isCache, final boolean isRefreshCacheAndCallback) throws Throwable {
+		deliverResponse(handler, parseResponse(httpResponse), isCache, isRefreshCacheAndCallback);
+	}
+
+	@Override
+	public Object getParseKey() {
+		return getClass();
+	}
+
+	@Override
+	public Object parseResponse(final HttpResponse httpResponse) throws Throwable {
 		if(httpResponse.getStatusLine().getStatusCode() > 100 && httpResponse.getStatusLine().getStatusCode() < 300 ){
 			/* 读取内容并转换成字符串 */
 			HttpEntity httpEntity = httpResponse.getEntity();
 			if(httpEntity != null){
-                final String responseContent = EntityUtils.toString(new BufferedHttpEntity(httpEntity), HttpUtils.getResponseCharset(httpResponse));
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        onSuccess(responseContent, isCache, isRefreshCacheAndCallback);
-                    }
-                });
+                return HttpUtils.toString(httpEntity, HttpUtils.getResponseCharset(httpResponse));
 			}else{
                 throw new Exception("没有响应体");
 			}
@@ -60,6 +62,16 @@ public abstract class StringHttpResponseHandler extends HttpResponseHandler {
 		}
 	}
 
+	@Override
+	public void deliverResponse(final Handler handler, final Object responseObject, final boolean isCache, final boolean isRefreshCacheAndCallback) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                onSuccess((String) responseObject, isCache, isRefreshCacheAndCallback);
+            }
+        });
+	}
+
 	@Override
 	public void exception(final Handler handler, final Throwable e) {
         handler.post(new Runnable() {
@@ -0,0 +1,16 @@
+package me.xiaopan.android.easynetwork.http.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 延迟敏感的请求，迟迟收不到响应的话会再发一个相同的对冲请求，先收到的响应胜出，只对Get请求有效
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface LatencyCritical {
+}
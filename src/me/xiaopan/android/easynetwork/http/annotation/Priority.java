@@ -0,0 +1,17 @@
+package me.xiaopan.android.easynetwork.http.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 请求优先级，默认为NORMAL
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface Priority {
+    public me.xiaopan.android.easynetwork.http.enums.Priority value();
+}
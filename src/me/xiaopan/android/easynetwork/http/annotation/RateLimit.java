@@ -0,0 +1,27 @@
+package me.xiaopan.android.easynetwork.http.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 限流注解，注解所在的Request类以及它的子类共用一个令牌桶，只有设置了RateLimiter才会起作用
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface RateLimit {
+    /**
+     * 每秒允许的请求数，可以是小数，例如0.5表示每2秒一个
+     * @return
+     */
+    public double value();
+
+    /**
+     * 允许的突发请求数，也就是令牌桶的容量，小于等于0时等于每秒允许的请求数（至少为1）
+     * @return
+     */
+    public int burst() default 0;
+}
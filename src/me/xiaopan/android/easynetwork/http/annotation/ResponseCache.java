@@ -6,6 +6,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import me.xiaopan.android.easynetwork.http.enums.CacheCompression;
+
 /**
  * 响应缓存配置注解
  * Created by xiaopan on 13-11-27.
@@ -33,8 +35,68 @@ public @interface ResponseCache {
     public boolean isRefreshCallback() default false;
     
     /**
-     * 缓存目录
+     * 缓存目录，也就是缓存分区名，为空时使用默认分区
      * @return
      */
     public String cacheDirectory() default "";
+
+    /**
+     * 是否使用内存缓存
+     * @return
+     */
+    public boolean isMemoryCache() default true;
+
+    /**
+     * 是否按照Http缓存语义（RFC 7234）使用缓存，开启后将根据响应头判断缓存是否新鲜并在过期后向服务器验证，periodOfValidity将不再起作用
+     * @return
+     */
+    public boolean isHttpCacheMode() default false;
+
+    /**
+     * 刷新缓存时是否在后台进行（stale-while-revalidate），只在isRefreshCache为true时起作用
+     * @return
+     */
+    public boolean isStaleWhileRevalidate() default false;
+
+    /**
+     * 生成缓存KEY时忽略的参数，例如时间戳、随机数这种每次请求都不一样、但不影响响应内容的参数
+     * @return
+     */
+    public String[] ignoredParams() default {};
+
+    /**
+     * 生成缓存KEY时是否将参数按名字排序
+     * @return
+     */
+    public boolean isSortParams() default false;
+
+    /**
+     * 需要加入缓存KEY中的请求头，例如Accept-Language，请求头不同的请求会使用不同的缓存
+     * @return
+     */
+    public String[] varyHeaders() default {};
+
+    /**
+     * 磁盘缓存的压缩方式，读取时自动解压，图片、音视频以及压缩包不会压缩
+     * @return
+     */
+    public CacheCompression compression() default CacheCompression.NONE;
+
+    /**
+     * 压缩阈值，单位字节，响应体小于此值时不压缩
+     * @return
+     */
+    public int compressionThreshold() default 1024;
+
+    /**
+     * 是否缓存POST、PUT这类带请求体的请求，开启后缓存KEY中会包含请求方式以及请求体的哈希值，请求体不能重复读取的请求依然不使用缓存
+     * @return
+     */
+    public boolean isHashRequestBody() default false;
+
+    /**
+     * 从网络加载失败（发生异常、服务器返回5xx或者命中负缓存）时是否使用过期的缓存（stale-if-error）
+     * @return
+     */
+    public boolean isStaleIfError() default false;
 }
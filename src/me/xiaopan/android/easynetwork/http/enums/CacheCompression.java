@@ -0,0 +1,21 @@
+package me.xiaopan.android.easynetwork.http.enums;
+
+/**
+ * 磁盘缓存的压缩方式
+ */
+public enum CacheCompression {
+    /**
+     * 不压缩
+     */
+    NONE,
+
+    /**
+     * gzip格式压缩
+     */
+    GZIP,
+
+    /**
+     * deflate（zlib）格式压缩，比gzip少了文件头和校验，稍微小一些
+     */
+    DEFLATE;
+}
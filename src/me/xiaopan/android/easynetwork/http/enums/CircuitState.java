@@ -0,0 +1,21 @@
+package me.xiaopan.android.easynetwork.http.enums;
+
+/**
+ * 熔断器的状态
+ */
+public enum CircuitState {
+    /**
+     * 关闭，请求正常执行，同时统计失败率以及慢请求比例
+     */
+    CLOSED,
+
+    /**
+     * 打开，请求不访问网络直接以CircuitBreakerOpenException失败，等待一段时间后进入半开状态
+     */
+    OPEN,
+
+    /**
+     * 半开，只放行少量试探请求，都成功的话关闭，有一个失败或者太慢的话重新打开
+     */
+    HALF_OPEN;
+}
@@ -0,0 +1,16 @@
+package me.xiaopan.android.easynetwork.http.enums;
+
+/**
+ * 磁盘缓存的淘汰策略
+ */
+public enum EvictionPolicy {
+    /**
+     * 最久没有使用的先淘汰
+     */
+    LRU,
+
+    /**
+     * 最早放入的先淘汰，读取不会改变顺序
+     */
+    FIFO;
+}
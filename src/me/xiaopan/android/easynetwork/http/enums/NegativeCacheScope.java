@@ -0,0 +1,16 @@
+package me.xiaopan.android.easynetwork.http.enums;
+
+/**
+ * 负缓存的范围，也就是失败记录按什么来区分
+ */
+public enum NegativeCacheScope {
+    /**
+     * 按缓存KEY（没有缓存配置时按请求地址）记录，只影响完全相同的请求
+     */
+    KEY,
+
+    /**
+     * 按主机记录，同一个主机的所有请求都会快速失败，适合整个服务器宕机的情况
+     */
+    HOST;
+}
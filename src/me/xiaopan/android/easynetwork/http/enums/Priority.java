@@ -0,0 +1,26 @@
+package me.xiaopan.android.easynetwork.http.enums;
+
+/**
+ * 请求优先级，优先级高的请求先执行，相同优先级的按提交的顺序执行
+ */
+public enum Priority {
+    /**
+     * 交互，用户正在等待结果的请求，例如点击按钮之后的请求
+     */
+    INTERACTIVE,
+
+    /**
+     * 普通，默认的优先级
+     */
+    NORMAL,
+
+    /**
+     * 后台，不着急的请求，例如统计上报
+     */
+    BACKGROUND,
+
+    /**
+     * 预取，最低的优先级，只有没有其它请求在排队的时候才会执行
+     */
+    PREFETCH;
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http.headers;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+public class Age extends HttpHeader{
+	/**
+	 * 名字
+	 */
+	public static final String NAME = "Age";
+	/**
+	 * 值
+	 */
+	private String value;
+	
+	public Age(String value) {
+		setValue(value);
+	}
+	
+	public Age() {
+		setValue("0");
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+	/**
+	 * 获取秒数
+	 * @return 秒数，-1：格式不正确
+	 */
+	public long getSeconds() {
+		try{
+			return Long.parseLong(value.trim());
+		}catch(Exception exception){
+			return -1;
+		}
+	}
+
+	/**
+	 * 从给定的Http响应中获取Age
+	 * @param httpResponse Http响应
+	 * @return Age，null：没有此响应头
+	 */
+	public static Age getAge(HttpResponse httpResponse){
+		Header header = httpResponse.getFirstHeader(NAME);
+		if(header != null){
+			return new Age(header.getValue());
+		}else{
+			return null;
+		}
+	}
+}
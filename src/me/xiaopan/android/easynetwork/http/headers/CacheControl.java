@@ -15,6 +15,11 @@
  */
 package me.xiaopan.android.easynetwork.http.headers;
 
+import java.util.Locale;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
 public class CacheControl extends HttpHeader{
 	/**
 	 * 名字
@@ -28,6 +33,22 @@ public class CacheControl extends HttpHeader{
 	 * 值 - 不缓存
 	 */
 	public static final String VALUE_NO_CACHE_MUST_REVALIDATE = "no-cache, must-revalidate"; 
+	/**
+	 * 指令 - 使用缓存前必须先向服务器验证
+	 */
+	public static final String DIRECTIVE_NO_CACHE = "no-cache";
+	/**
+	 * 指令 - 不允许缓存
+	 */
+	public static final String DIRECTIVE_NO_STORE = "no-store";
+	/**
+	 * 指令 - 过期后必须向服务器验证
+	 */
+	public static final String DIRECTIVE_MUST_REVALIDATE = "must-revalidate";
+	/**
+	 * 指令 - 最大有效期，单位秒
+	 */
+	public static final String DIRECTIVE_MAX_AGE = "max-age";
 	/**
 	 * 值
 	 */
@@ -55,4 +76,99 @@ public class CacheControl extends HttpHeader{
 	public void setValue(String value) {
 		this.value = value;
 	}
+
+	/**
+	 * 判断是否包含给定的指令
+	 * @param directive 指令，例如：no-cache
+	 * @return 是否包含
+	 */
+	public boolean hasDirective(String directive) {
+		return getDirectiveValue(directive) != null;
+	}
+
+	/**
+	 * 获取给定指令的值
+	 * @param directive 指令，例如：max-age
+	 * @return 指令的值，没有值的指令返回""，null：不包含此指令
+	 */
+	public String getDirectiveValue(String directive) {
+		if(value == null){
+			return null;
+		}
+		for(String item : GeneralUtils.split(value, ',')){
+			String[] parts = GeneralUtils.split(item, '=');
+			if(parts.length > 0 && parts[0].trim().toLowerCase(Locale.US).equals(directive)){
+				if(parts.length > 1){
+					String directiveValue = parts[1].trim();
+					if(directiveValue.length() > 1 && directiveValue.startsWith("\"") && directiveValue.endsWith("\"")){
+						directiveValue = directiveValue.substring(1, directiveValue.length() - 1);
+					}
+					return directiveValue;
+				}else{
+					return "";
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 是否包含no-cache指令
+	 * @return 是否包含no-cache指令
+	 */
+	public boolean isNoCache() {
+		return hasDirective(DIRECTIVE_NO_CACHE);
+	}
+
+	/**
+	 * 是否包含no-store指令
+	 * @return 是否包含no-store指令
+	 */
+	public boolean isNoStore() {
+		return hasDirective(DIRECTIVE_NO_STORE);
+	}
+
+	/**
+	 * 是否包含must-revalidate指令
+	 * @return 是否包含must-revalidate指令
+	 */
+	public boolean isMustRevalidate() {
+		return hasDirective(DIRECTIVE_MUST_REVALIDATE);
+	}
+
+	/**
+	 * 获取max-age指令的值
+	 * @return 最大有效期，单位秒，-1：没有max-age指令或者格式不正确
+	 */
+	public long getMaxAge() {
+		String maxAge = getDirectiveValue(DIRECTIVE_MAX_AGE);
+		if(maxAge == null){
+			return -1;
+		}
+		try{
+			return Long.parseLong(maxAge);
+		}catch(NumberFormatException exception){
+			return -1;
+		}
+	}
+
+	/**
+	 * 从给定的Http响应中获取CacheControl，多个Cache-Control响应头会合并成一个
+	 * @param httpResponse Http响应
+	 * @return CacheControl，null：没有此响应头
+	 */
+	public static CacheControl getCacheControl(HttpResponse httpResponse){
+		Header[] headers = httpResponse.getHeaders(NAME);
+		if(headers.length == 0){
+			return null;
+		}
+		StringBuilder stringBuilder = new StringBuilder();
+		for(Header header : headers){
+			if(stringBuilder.length() > 0){
+				stringBuilder.append(',');
+			}
+			stringBuilder.append(header.getValue());
+		}
+		return new CacheControl(stringBuilder.toString());
+	}
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http.headers;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+public class ETag extends HttpHeader{
+	/**
+	 * 名字
+	 */
+	public static final String NAME = "ETag";
+	/**
+	 * 值
+	 */
+	private String value;
+	
+	public ETag(String value) {
+		setValue(value);
+	}
+	
+	public ETag() {
+		setValue("");
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+	/**
+	 * 从给定的Http响应中获取ETag
+	 * @param httpResponse Http响应
+	 * @return ETag，null：没有此响应头
+	 */
+	public static ETag getETag(HttpResponse httpResponse){
+		Header header = httpResponse.getFirstHeader(NAME);
+		if(header != null){
+			return new ETag(header.getValue());
+		}else{
+			return null;
+		}
+	}
+}
@@ -2,6 +2,8 @@ package me.xiaopan.android.easynetwork.http.headers;
 
 import java.util.ArrayList;
 
+import org.apache.http.impl.cookie.DateUtils;
+
 class GeneralUtils {
 	
 	/**
@@ -28,4 +30,29 @@ class GeneralUtils {
 		}
 		return stringList.toArray(new String[stringList.size()]);
 	}
+	
+	/**
+	 * 解析Http日期，支持RFC 1123、RFC 1036以及ANSI C asctime()三种格式
+	 * @param value 日期字符串
+	 * @return 毫秒数，-1：格式不正确
+	 */
+	static long parseHttpDate(String value) {
+		if(value == null){
+			return -1;
+		}
+		try{
+			return DateUtils.parseDate(value.trim()).getTime();
+		}catch(Exception exception){
+			return -1;
+		}
+	}
+	
+	/**
+	 * 将毫秒数格式化为RFC 1123格式的Http日期
+	 * @param time 毫秒数
+	 * @return Http日期
+	 */
+	static String formatHttpDate(long time) {
+		return DateUtils.formatDate(new java.util.Date(time));
+	}
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http.headers;
+
+public class IfModifiedSince extends HttpHeader{
+	/**
+	 * 名字
+	 */
+	public static final String NAME = "If-Modified-Since";
+	/**
+	 * 值
+	 */
+	private String value;
+	
+	public IfModifiedSince(String value) {
+		setValue(value);
+	}
+	
+	public IfModifiedSince() {
+		setValue("");
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+	/**
+	 * 创建一个If-Modified-Since请求头
+	 * @param time 日期的毫秒数
+	 */
+	public IfModifiedSince(long time) {
+		setValue(GeneralUtils.formatHttpDate(time));
+	}
+}
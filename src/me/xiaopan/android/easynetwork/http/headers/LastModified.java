@@ -15,6 +15,9 @@
  */
 package me.xiaopan.android.easynetwork.http.headers;
 
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
 public class LastModified extends HttpHeader{
 	/**
 	 * 名字
@@ -47,4 +50,26 @@ public class LastModified extends HttpHeader{
 	public void setValue(String value) {
 		this.value = value;
 	}
+
+	/**
+	 * 获取日期的毫秒数
+	 * @return 毫秒数，-1：格式不正确
+	 */
+	public long getTime() {
+		return GeneralUtils.parseHttpDate(value);
+	}
+
+	/**
+	 * 从给定的Http响应中获取LastModified
+	 * @param httpResponse Http响应
+	 * @return LastModified，null：没有此响应头
+	 */
+	public static LastModified getLastModified(HttpResponse httpResponse){
+		Header header = httpResponse.getFirstHeader(NAME);
+		if(header != null){
+			return new LastModified(header.getValue());
+		}else{
+			return null;
+		}
+	}
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Peng fei Pan
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.xiaopan.android.easynetwork.http.headers;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+public class RetryAfter extends HttpHeader{
+	/**
+	 * 名字
+	 */
+	public static final String NAME = "Retry-After";
+	/**
+	 * 值，可以是秒数也可以是日期
+	 */
+	private String value;
+	
+	public RetryAfter(String value) {
+		setValue(value);
+	}
+	
+	public RetryAfter() {
+		setValue("0");
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+	/**
+	 * 获取需要等待的毫秒数
+	 * @param now 当前时间，值是日期的时候用来计算时间差，应当使用服务器的时间（Date响应头）
+	 * @return 需要等待的毫秒数，-1：格式不正确
+	 */
+	public long getDelay(long now) {
+		try{
+			long seconds = Long.parseLong(value.trim());
+			return seconds >= 0 ? seconds * 1000 : -1;
+		}catch(Exception exception){
+			long time = GeneralUtils.parseHttpDate(value);
+			return time >= 0 ? Math.max(0, time - now) : -1;
+		}
+	}
+
+	/**
+	 * 从给定的Http响应中获取Retry-After
+	 * @param httpResponse Http响应
+	 * @return Retry-After，null：没有此响应头
+	 */
+	public static RetryAfter getRetryAfter(HttpResponse httpResponse){
+		Header header = httpResponse.getFirstHeader(NAME);
+		if(header != null){
+			return new RetryAfter(header.getValue());
+		}else{
+			return null;
+		}
+	}
+}